@@ -0,0 +1,83 @@
+/*
+ * Copyright 2023 Casterlabs
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+package co.casterlabs.smt.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+import java.util.zip.CRC32C;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The cost of checksumming a header (~270 bytes) and payloads of various
+ * sizes.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ChecksumBenchmark {
+
+    @Param({
+            "16",
+            "271",
+            "4096",
+            "32000"
+    })
+    public int length;
+
+    private byte[] data;
+    private final CRC32 crc32 = new CRC32();
+    private final CRC32C crc32c = new CRC32C();
+
+    @Setup
+    public void setup() {
+        this.data = new byte[this.length];
+        new Random(0).nextBytes(this.data);
+    }
+
+    @Benchmark
+    public long crc32() {
+        this.crc32.reset();
+        this.crc32.update(this.data, 0, this.data.length);
+        return this.crc32.getValue();
+    }
+
+    @Benchmark
+    public long crc32c() {
+        this.crc32c.reset();
+        this.crc32c.update(this.data, 0, this.data.length);
+        return this.crc32c.getValue();
+    }
+
+    @Benchmark
+    public long crc32Fresh() {
+        // What PacketIO used to do, a new instance for every checksum.
+        CRC32 crc = new CRC32();
+        crc.update(this.data, 0, this.data.length);
+        return crc.getValue();
+    }
+
+}
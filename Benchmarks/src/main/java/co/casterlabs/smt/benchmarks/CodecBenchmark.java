@@ -0,0 +1,155 @@
+/*
+ * Copyright 2023 Casterlabs
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+package co.casterlabs.smt.benchmarks;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import co.casterlabs.smt.packeteer.io.BufferPool;
+import co.casterlabs.smt.packeteer.io.ChecksumType;
+import co.casterlabs.smt.packeteer.io.PacketIO;
+import co.casterlabs.smt.packeteer.io.PacketIO.DeserializationResult;
+import co.casterlabs.smt.packeteer.io.PooledDeserializationResult;
+
+/**
+ * Serialize and deserialize throughput of a single frame, across payload sizes
+ * and header formats.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CodecBenchmark {
+
+    @Param({
+            "16",
+            "256",
+            "4096",
+            "32000"
+    })
+    public int payloadSize;
+
+    @Param({
+            "false",
+            "true"
+    })
+    public boolean compactHeader;
+
+    @Param({
+            "CRC32",
+            "CRC32C",
+            "NONE"
+    })
+    public ChecksumType checksumType;
+
+    private PacketIO io;
+    private BufferPool pool;
+
+    private byte[] payload;
+    private ByteBuffer payloadBuffer;
+    private byte[] frame;
+
+    private ByteArrayOutputStream outputStream;
+    private ByteBuffer outputBuffer;
+    private ByteBuffer outputDirectBuffer;
+    private ByteBuffer inputBuffer;
+    private ByteBuffer inputDirectBuffer;
+
+    @Setup
+    public void setup() throws IOException {
+        this.io = new PacketIO();
+        this.io.getFlags().set(PacketIO.FLAG_COMPACT_HEADER, this.compactHeader);
+        this.io.setChecksumType(this.checksumType);
+        this.pool = new BufferPool();
+
+        this.payload = new byte[this.payloadSize];
+        new Random(0).nextBytes(this.payload);
+        this.payloadBuffer = ByteBuffer.wrap(this.payload);
+
+        this.outputStream = new ByteArrayOutputStream(PacketIO.frameMaxLength);
+        this.io.serialize(1, "benchmark", this.payload, 0, this.outputStream);
+        this.frame = this.outputStream.toByteArray();
+
+        this.outputBuffer = ByteBuffer.allocate(PacketIO.frameMaxLength);
+        this.outputDirectBuffer = ByteBuffer.allocateDirect(PacketIO.frameMaxLength);
+        this.inputBuffer = ByteBuffer.wrap(this.frame);
+        this.inputDirectBuffer = ByteBuffer.allocateDirect(this.frame.length).put(this.frame).flip();
+    }
+
+    @Benchmark
+    public int serializeStream() throws IOException {
+        this.outputStream.reset();
+        this.io.serialize(1, "benchmark", this.payload, 0, this.outputStream);
+        return this.outputStream.size();
+    }
+
+    @Benchmark
+    public int serializeHeapBuffer() throws IOException {
+        this.outputBuffer.clear();
+        this.io.serialize(1, "benchmark", this.payloadBuffer, 0, this.outputBuffer);
+        return this.outputBuffer.position();
+    }
+
+    @Benchmark
+    public int serializeDirectBuffer() throws IOException {
+        this.outputDirectBuffer.clear();
+        this.io.serialize(1, "benchmark", this.payloadBuffer, 0, this.outputDirectBuffer);
+        return this.outputDirectBuffer.position();
+    }
+
+    @Benchmark
+    public DeserializationResult deserializeStream() throws IOException {
+        // Note that this includes the cost of the streams themselves.
+        return this.io.deserialize(new BufferedInputStream(new ByteArrayInputStream(this.frame)));
+    }
+
+    @Benchmark
+    public DeserializationResult deserializeHeapBuffer() {
+        this.inputBuffer.clear();
+        return this.io.deserialize(this.inputBuffer);
+    }
+
+    @Benchmark
+    public DeserializationResult deserializeDirectBuffer() {
+        this.inputDirectBuffer.clear();
+        return this.io.deserialize(this.inputDirectBuffer);
+    }
+
+    @Benchmark
+    public int deserializePooled() {
+        this.inputBuffer.clear();
+        PooledDeserializationResult result = this.io.deserialize(this.inputBuffer, this.pool);
+        int packetId = result.getPacketId();
+        result.release();
+        return packetId;
+    }
+
+}
@@ -0,0 +1,209 @@
+/*
+ * Copyright 2023 Casterlabs
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+package co.casterlabs.smt.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import co.casterlabs.smt.packeteer.io.PacketeerInput;
+import co.casterlabs.smt.packeteer.io.PacketeerOutput;
+
+/**
+ * Throughput of the primitive reads and writes that packets use to encode their
+ * payloads, reported per primitive.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PrimitivesBenchmark {
+    private static final int COUNT = 1024;
+
+    private ByteArrayOutputStream outputStream;
+    private ByteBuffer outputBuffer;
+    private byte[] ints;
+    private byte[] longs;
+    private byte[] strings;
+    private byte[] varInts;
+
+    @Setup
+    public void setup() throws IOException {
+        this.outputStream = new ByteArrayOutputStream(COUNT * 64);
+        this.outputBuffer = ByteBuffer.allocate(COUNT * 64);
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        PacketeerOutput out = new PacketeerOutput(baos);
+        for (int i = 0; i < COUNT; i++) {
+            out.writeInt(i);
+        }
+        this.ints = baos.toByteArray();
+
+        baos = new ByteArrayOutputStream();
+        out = new PacketeerOutput(baos);
+        for (int i = 0; i < COUNT; i++) {
+            out.writeLong(i);
+        }
+        this.longs = baos.toByteArray();
+
+        baos = new ByteArrayOutputStream();
+        out = new PacketeerOutput(baos);
+        for (int i = 0; i < COUNT; i++) {
+            out.writeString("stream-" + i);
+        }
+        this.strings = baos.toByteArray();
+
+        out = new PacketeerOutput();
+        for (int i = 0; i < COUNT; i++) {
+            out.writeVarInt(i);
+        }
+        this.varInts = out.toByteArray();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(COUNT)
+    public int writeInt() throws IOException {
+        this.outputStream.reset();
+        PacketeerOutput out = new PacketeerOutput(this.outputStream);
+        for (int i = 0; i < COUNT; i++) {
+            out.writeInt(i);
+        }
+        return this.outputStream.size();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(COUNT)
+    public int writeLong() throws IOException {
+        this.outputStream.reset();
+        PacketeerOutput out = new PacketeerOutput(this.outputStream);
+        for (int i = 0; i < COUNT; i++) {
+            out.writeLong(i);
+        }
+        return this.outputStream.size();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(COUNT)
+    public int writeString() throws IOException {
+        this.outputStream.reset();
+        PacketeerOutput out = new PacketeerOutput(this.outputStream);
+        for (int i = 0; i < COUNT; i++) {
+            out.writeString("stream");
+        }
+        return this.outputStream.size();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(COUNT)
+    public int writeIntInPlace() throws IOException {
+        this.outputBuffer.clear();
+        PacketeerOutput out = new PacketeerOutput(this.outputBuffer);
+        for (int i = 0; i < COUNT; i++) {
+            out.writeInt(i);
+        }
+        return this.outputBuffer.position();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(COUNT)
+    public int writeVarInt() throws IOException {
+        this.outputBuffer.clear();
+        PacketeerOutput out = new PacketeerOutput(this.outputBuffer);
+        for (int i = 0; i < COUNT; i++) {
+            out.writeVarInt(i);
+        }
+        return this.outputBuffer.position();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(COUNT)
+    public int writeStringInPlace() throws IOException {
+        this.outputBuffer.clear();
+        PacketeerOutput out = new PacketeerOutput(this.outputBuffer);
+        for (int i = 0; i < COUNT; i++) {
+            out.writeString("stream");
+        }
+        return this.outputBuffer.position();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(COUNT)
+    public void readInt(Blackhole bh) throws IOException {
+        PacketeerInput in = new PacketeerInput(new ByteArrayInputStream(this.ints));
+        for (int i = 0; i < COUNT; i++) {
+            bh.consume(in.readInt());
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(COUNT)
+    public void readLong(Blackhole bh) throws IOException {
+        PacketeerInput in = new PacketeerInput(new ByteArrayInputStream(this.longs));
+        for (int i = 0; i < COUNT; i++) {
+            bh.consume(in.readLong());
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(COUNT)
+    public void readString(Blackhole bh) throws IOException {
+        PacketeerInput in = new PacketeerInput(new ByteArrayInputStream(this.strings));
+        for (int i = 0; i < COUNT; i++) {
+            bh.consume(in.readString());
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(COUNT)
+    public void readIntInPlace(Blackhole bh) throws IOException {
+        PacketeerInput in = new PacketeerInput(this.ints);
+        for (int i = 0; i < COUNT; i++) {
+            bh.consume(in.readInt());
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(COUNT)
+    public void readVarInt(Blackhole bh) throws IOException {
+        PacketeerInput in = new PacketeerInput(this.varInts);
+        for (int i = 0; i < COUNT; i++) {
+            bh.consume(in.readVarInt());
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(COUNT)
+    public void readStringInPlace(Blackhole bh) throws IOException {
+        PacketeerInput in = new PacketeerInput(this.strings);
+        for (int i = 0; i < COUNT; i++) {
+            bh.consume(in.readString());
+        }
+    }
+
+}
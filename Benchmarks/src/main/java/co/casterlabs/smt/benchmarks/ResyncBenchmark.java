@@ -0,0 +1,115 @@
+/*
+ * Copyright 2023 Casterlabs
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+package co.casterlabs.smt.benchmarks;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import co.casterlabs.smt.packeteer.io.PacketIO;
+import co.casterlabs.smt.packeteer.io.PacketIO.DeserializationResult;
+
+/**
+ * Decodes a whole stream of frames where a fraction of the bytes have been
+ * corrupted, which exercises the resync (magic search) and the CRC checks.
+ * Reported as time per stream of {@link #FRAMES} frames.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ResyncBenchmark {
+    private static final int FRAMES = 256;
+
+    /**
+     * The chance of any given byte being corrupted.
+     */
+    @Param({
+            "0",
+            "0.0001",
+            "0.001",
+            "0.01"
+    })
+    public double corruption;
+
+    @Param({
+            "128",
+            "4096"
+    })
+    public int payloadSize;
+
+    private PacketIO io;
+    private byte[] stream;
+
+    @Setup
+    public void setup() throws IOException {
+        this.io = new PacketIO();
+
+        Random random = new Random(0);
+        byte[] payload = new byte[this.payloadSize];
+        random.nextBytes(payload);
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        for (int i = 0; i < FRAMES; i++) {
+            this.io.serialize(1, null, payload, i, baos);
+        }
+        this.stream = baos.toByteArray();
+
+        for (int i = 0; i < this.stream.length; i++) {
+            if (random.nextDouble() < this.corruption) {
+                this.stream[i] ^= 1 << random.nextInt(8);
+            }
+        }
+    }
+
+    @Benchmark
+    public void buffer(Blackhole bh) {
+        ByteBuffer buffer = ByteBuffer.wrap(this.stream);
+        DeserializationResult result;
+        while ((result = this.io.deserialize(buffer)) != null) {
+            bh.consume(result);
+        }
+    }
+
+    @Benchmark
+    public void stream(Blackhole bh) throws IOException {
+        InputStream in = new BufferedInputStream(new ByteArrayInputStream(this.stream));
+        try {
+            while (true) {
+                bh.consume(this.io.deserialize(in));
+            }
+        } catch (IOException e) {
+            // End of stream.
+        }
+    }
+
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright 2023 Casterlabs
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+package co.casterlabs.smt.packeteer;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+import org.jetbrains.annotations.Nullable;
+
+import co.casterlabs.smt.packeteer.codegen.PacketCodec;
+import co.casterlabs.smt.packeteer.io.PacketeerInput;
+import co.casterlabs.smt.packeteer.io.PacketeerOutput;
+
+/**
+ * A packet that is (de)serialized entirely by its {@link #getCodec() codec},
+ * usually one generated from a class marked with
+ * {@link co.casterlabs.smt.packeteer.codegen.GenerateCodec}.
+ */
+public abstract class CodecPacket extends Packet {
+
+    @Override
+    protected abstract PacketCodec<?> getCodec();
+
+    @SuppressWarnings("unchecked")
+    @Override
+    protected final void readIn(@Nullable String extendedId, PacketeerInput in) throws IOException {
+        byte[] payload = in.readRaw(in.available());
+        try {
+            ((PacketCodec<Packet>) this.getCodec()).read(this, ByteBuffer.wrap(payload));
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Payload is too short for " + this.getClass().getName(), e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    protected final void writeOut(PacketeerOutput out) throws IOException {
+        PacketCodec<Packet> codec = (PacketCodec<Packet>) this.getCodec();
+        byte[] payload = new byte[codec.sizeOf(this)];
+        codec.write(this, ByteBuffer.wrap(payload));
+        out.writeRaw(payload);
+    }
+
+}
@@ -11,12 +11,13 @@
  */
 package co.casterlabs.smt.packeteer;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
 
 import org.jetbrains.annotations.Nullable;
 
+import co.casterlabs.smt.packeteer.codegen.PacketCodec;
 import co.casterlabs.smt.packeteer.io.PacketeerInput;
 import co.casterlabs.smt.packeteer.io.PacketeerOutput;
 
@@ -26,6 +27,17 @@ public abstract class Packet {
 
     protected abstract void writeOut(PacketeerOutput out) throws IOException;
 
+    /**
+     * @return the codec used to (de)serialize this packet, or null to use
+     *         {@link #readIn(String, PacketeerInput)} and
+     *         {@link #writeOut(PacketeerOutput)}.
+     * 
+     * @see    CodecPacket
+     */
+    protected @Nullable PacketCodec<?> getCodec() {
+        return null;
+    }
+
     public abstract int getId();
 
     /**
@@ -36,13 +48,72 @@ public abstract class Packet {
     }
 
     public final byte[] serialize() throws IOException {
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        this.writeOut(new PacketeerOutput(baos));
-        return baos.toByteArray();
+        PacketCodec<Packet> codec = this.codec();
+        if (codec != null) {
+            byte[] payload = new byte[codec.sizeOf(this)];
+            codec.write(this, ByteBuffer.wrap(payload));
+            return payload;
+        }
+
+        PacketeerOutput out = new PacketeerOutput();
+        this.writeOut(out);
+        return out.toByteArray();
+    }
+
+    /**
+     * @return the exact serialized size of the packet, or -1 if it can only be
+     *         found out by serializing (i.e the packet has no codec).
+     */
+    public final int serializedSize() {
+        PacketCodec<Packet> codec = this.codec();
+        return codec == null ? -1 : codec.sizeOf(this);
+    }
+
+    /**
+     * Serializes the packet straight into the buffer at its position, advancing
+     * it. The buffer must be big-endian.
+     * 
+     * @throws java.nio.BufferOverflowException if the buffer is too small.
+     */
+    public final void serialize(ByteBuffer out) throws IOException {
+        PacketCodec<Packet> codec = this.codec();
+        if (codec == null) {
+            this.writeOut(new PacketeerOutput(out));
+        } else {
+            codec.write(this, out);
+        }
     }
 
     public final void deserialize(@Nullable String extendedId, byte[] payload) throws IOException {
-        this.readIn(extendedId, new PacketeerInput(new ByteArrayInputStream(payload)));
+        if (this.getCodec() != null) {
+            this.deserialize(extendedId, ByteBuffer.wrap(payload));
+            return;
+        }
+
+        this.readIn(extendedId, new PacketeerInput(payload));
+    }
+
+    /**
+     * Reads the remaining bytes of the payload, the payload's position is left
+     * untouched.
+     */
+    public final void deserialize(@Nullable String extendedId, ByteBuffer payload) throws IOException {
+        PacketCodec<Packet> codec = this.codec();
+        if (codec == null) {
+            this.readIn(extendedId, new PacketeerInput(payload.duplicate()));
+            return;
+        }
+
+        try {
+            codec.read(this, payload.duplicate());
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Payload is too short for " + this.getClass().getName(), e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private @Nullable PacketCodec<Packet> codec() {
+        return (PacketCodec<Packet>) this.getCodec();
     }
 
 }
@@ -0,0 +1,28 @@
+/*
+ * Copyright 2023 Casterlabs
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+package co.casterlabs.smt.packeteer;
+
+import java.io.IOException;
+
+import org.jetbrains.annotations.Nullable;
+
+@FunctionalInterface
+public interface PacketHandler<T extends Packet> {
+
+    /**
+     * @implNote If the packet was registered as reusable, the instance will be
+     *           handed out again for the next packet on this thread. So don't
+     *           hold onto it.
+     */
+    public void handle(T packet, @Nullable String extendedId, long timestamp) throws IOException;
+
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright 2023 Casterlabs
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+package co.casterlabs.smt.packeteer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import org.jetbrains.annotations.Nullable;
+
+import co.casterlabs.smt.packeteer.io.PacketIO.DeserializationResult;
+import co.casterlabs.smt.packeteer.io.PooledDeserializationResult;
+import co.casterlabs.smt.packeteer.util.IntObjectMap;
+import lombok.NonNull;
+
+/**
+ * Maps packet IDs (and optionally extended IDs) to a factory and a handler, so
+ * that decoded frames can be dispatched without a switch statement. Lookups
+ * are done on the primitive ID, there's no boxing or reflection involved.
+ * 
+ * <p>
+ * Packets registered as reusable are instantiated once per thread and then
+ * deserialized into over and over again, which takes the packet allocation
+ * off of the dispatch path entirely.
+ * 
+ * @implNote Registration is not thread safe, register everything before you
+ *           start dispatching. Dispatching itself is thread safe.
+ */
+public class PacketRegistry {
+    private final IntObjectMap<Registrations> registrations = new IntObjectMap<>();
+
+    public <T extends Packet> PacketRegistry register(int id, @NonNull Supplier<T> factory, @NonNull PacketHandler<T> handler) {
+        return this.register(id, null, factory, handler, false);
+    }
+
+    public <T extends Packet> PacketRegistry register(int id, @Nullable String extendedId, @NonNull Supplier<T> factory, @NonNull PacketHandler<T> handler) {
+        return this.register(id, extendedId, factory, handler, false);
+    }
+
+    /**
+     * @param extendedId    the extended ID to match, or null to match any extended
+     *                      ID that doesn't have its own registration.
+     * @param reuseInstance whether or not to reuse a single packet instance per
+     *                      thread, see {@link PacketHandler}.
+     * 
+     * @return this instance, for chaining.
+     */
+    public <T extends Packet> PacketRegistry register(int id, @Nullable String extendedId, @NonNull Supplier<T> factory, @NonNull PacketHandler<T> handler, boolean reuseInstance) {
+        Registrations forId = this.registrations.computeIfAbsent(id, (unused) -> new Registrations());
+        Registration<T> registration = new Registration<>(factory, handler, reuseInstance);
+
+        if (extendedId == null) {
+            forId.fallback = registration;
+        } else {
+            if (forId.byExtendedId == null) {
+                forId.byExtendedId = new HashMap<>();
+            }
+            forId.byExtendedId.put(extendedId, registration);
+        }
+        return this;
+    }
+
+    public boolean isRegistered(int id) {
+        return this.registrations.containsKey(id);
+    }
+
+    /**
+     * @return true if a handler was found for the packet.
+     */
+    public boolean dispatch(@NonNull DeserializationResult result) throws IOException {
+        return this.dispatch(result.packetId, result.extendedId, result.timestamp, result.payloadBuffer);
+    }
+
+    /**
+     * @return true if a handler was found for the packet. The result is not
+     *         released, that's still up to you.
+     */
+    public boolean dispatch(@NonNull PooledDeserializationResult result) throws IOException {
+        return this.dispatch(result.getPacketId(), result.getExtendedId(), result.getTimestamp(), result.getPayloadBuffer());
+    }
+
+    /**
+     * @return true if a handler was found for the packet.
+     */
+    public boolean dispatch(int id, @Nullable String extendedId, long timestamp, @NonNull ByteBuffer payload) throws IOException {
+        Registrations forId = this.registrations.get(id);
+        if (forId == null) return false;
+
+        Registration<?> registration = forId.fallback;
+        if ((extendedId != null) && (forId.byExtendedId != null)) {
+            Registration<?> specific = forId.byExtendedId.get(extendedId);
+            if (specific != null) {
+                registration = specific;
+            }
+        }
+
+        if (registration == null) return false;
+
+        registration.dispatch(extendedId, timestamp, payload);
+        return true;
+    }
+
+    private static class Registrations {
+        private @Nullable Registration<?> fallback;
+        private @Nullable Map<String, Registration<?>> byExtendedId;
+    }
+
+    private static class Registration<T extends Packet> {
+        private final Supplier<T> factory;
+        private final PacketHandler<T> handler;
+        private final @Nullable ThreadLocal<T> instances;
+
+        private Registration(Supplier<T> factory, PacketHandler<T> handler, boolean reuseInstance) {
+            this.factory = factory;
+            this.handler = handler;
+            this.instances = reuseInstance ? ThreadLocal.withInitial(factory) : null;
+        }
+
+        private void dispatch(@Nullable String extendedId, long timestamp, ByteBuffer payload) throws IOException {
+            T packet = this.instances == null ? this.factory.get() : this.instances.get();
+            packet.deserialize(extendedId, payload);
+            this.handler.handle(packet, extendedId, timestamp);
+        }
+    }
+
+}
@@ -48,4 +48,17 @@ public class ReservedPacketIDs {
     public static final int IRB_VIDEO_TYPE = 2 | IRB_MARKER;
     public static final int IRB_CONTAINER_TYPE = 3 | IRB_MARKER;
 
+    // Multiplexer control packets, the extended ID is that of the stream they
+    // apply to.
+    public static final int IRB_STREAM_CREDIT_TYPE = 4 | IRB_MARKER; // Payload: int credit (bytes).
+    public static final int IRB_STREAM_CLOSE_TYPE = 5 | IRB_MARKER;
+
+    // Forward error correction, the payload is the XOR parity of a group of
+    // frames. See co.casterlabs.smt.packeteer.transport.FecEncoder.
+    public static final int IRB_FEC_PARITY_TYPE = 6 | IRB_MARKER;
+
+    // Asks the peer to start over with full headers, no payload. See
+    // co.casterlabs.smt.packeteer.io.HeaderDeltaDecoder.
+    public static final int IRB_HEADER_RESET_TYPE = 7 | IRB_MARKER;
+
 }
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2023 Casterlabs
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+package co.casterlabs.smt.packeteer.codegen;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import org.jetbrains.annotations.Nullable;
+
+import co.casterlabs.smt.packeteer.io.Utf8IOUtil;
+
+/**
+ * Helpers for the variable-width fields of generated codecs. Each field is
+ * prefixed with its length as an int, -1 meaning null.
+ */
+public class CodecUtil {
+    /**
+     * @return the encoded size of the string, including its length prefix.
+     */
+    public static int sizeOf(@Nullable String str) {
+        return 4 + (str == null ? 0 : Utf8IOUtil.utf8Length(str));
+    }
+
+    /**
+     * @return the encoded size of the array, including its length prefix.
+     */
+    public static int sizeOf(@Nullable byte[] bytes) {
+        return 4 + (bytes == null ? 0 : bytes.length);
+    }
+
+    /**
+     * Encodes the string as UTF-8 straight into the buffer, without an
+     * intermediate array.
+     */
+    public static void putString(ByteBuffer out, @Nullable String str) {
+        if (str == null) {
+            out.putInt(-1);
+            return;
+        }
+
+        out.putInt(Utf8IOUtil.utf8Length(str));
+        Utf8IOUtil.putUtf8(out, str);
+    }
+
+    public static @Nullable String getString(ByteBuffer in) {
+        int length = getLength(in);
+        if (length == -1) return null;
+
+        String str;
+        if (in.hasArray()) {
+            str = new String(in.array(), in.arrayOffset() + in.position(), length, StandardCharsets.UTF_8);
+        } else {
+            byte[] bytes = new byte[length];
+            in.duplicate().get(bytes);
+            str = new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        in.position(in.position() + length);
+        return str;
+    }
+
+    public static void putBytes(ByteBuffer out, @Nullable byte[] bytes) {
+        if (bytes == null) {
+            out.putInt(-1);
+        } else {
+            out.putInt(bytes.length);
+            out.put(bytes);
+        }
+    }
+
+    public static @Nullable byte[] getBytes(ByteBuffer in) {
+        int length = getLength(in);
+        if (length == -1) return null;
+
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return bytes;
+    }
+
+    private static int getLength(ByteBuffer in) {
+        int length = in.getInt();
+        if (length < -1 || length > in.remaining()) throw new BufferUnderflowException();
+        return length;
+    }
+
+}
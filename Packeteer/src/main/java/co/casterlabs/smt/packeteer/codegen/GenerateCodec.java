@@ -0,0 +1,46 @@
+/*
+ * Copyright 2023 Casterlabs
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+package co.casterlabs.smt.packeteer.codegen;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a {@link co.casterlabs.smt.packeteer.CodecPacket} subclass for which the
+ * Packeteer-Processor should generate a {@link PacketCodec}, covering every
+ * field annotated with {@link PacketField}. The codec is generated into the
+ * same package, named after the class with a {@code Codec} suffix (nested
+ * classes are joined with an underscore, e.g {@code Outer_InnerCodec}). Hook it
+ * up by implementing {@link co.casterlabs.smt.packeteer.CodecPacket#getCodec()}:
+ * 
+ * <pre>
+ * &#64;GenerateCodec
+ * public class ChatPacket extends CodecPacket {
+ *     &#64;PacketField long sentAt;
+ *     &#64;PacketField String message;
+ * 
+ *     &#64;Override
+ *     protected PacketCodec&lt;?&gt; getCodec() {
+ *         return ChatPacketCodec.INSTANCE;
+ *     }
+ * 
+ *     ...
+ * }
+ * </pre>
+ */
+@Retention(RetentionPolicy.CLASS)
+@Target(ElementType.TYPE)
+public @interface GenerateCodec {
+
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright 2023 Casterlabs
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+package co.casterlabs.smt.packeteer.codegen;
+
+import java.nio.ByteBuffer;
+
+import co.casterlabs.smt.packeteer.Packet;
+
+/**
+ * Encodes a packet's payload directly to and from a {@link ByteBuffer}, usually
+ * generated from a class marked with {@link GenerateCodec}.
+ */
+public interface PacketCodec<T extends Packet> {
+
+    /**
+     * @return the exact amount of bytes {@link #write(Packet, ByteBuffer)} will
+     *         produce for the packet.
+     */
+    public int sizeOf(T packet);
+
+    /**
+     * Writes the packet at the buffer's position, advancing it.
+     * 
+     * @throws java.nio.BufferOverflowException if the buffer is too small.
+     */
+    public void write(T packet, ByteBuffer out);
+
+    /**
+     * Reads the packet from the buffer's position, advancing it.
+     * 
+     * @throws java.nio.BufferUnderflowException if the buffer is too small.
+     */
+    public void read(T packet, ByteBuffer in);
+
+}
@@ -0,0 +1,34 @@
+/*
+ * Copyright 2023 Casterlabs
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+package co.casterlabs.smt.packeteer.codegen;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Includes a field in the generated {@link PacketCodec}. The field must not be
+ * private, static or final, and must be a primitive, a {@link String} or a
+ * {@code byte[]}.
+ * 
+ * <p>
+ * Fixed-width fields (primitives) are laid out first, at fixed offsets in
+ * declaration order. They are followed by the variable-width fields, also in
+ * declaration order, each prefixed with its length as an int (-1 for null).
+ * Strings are encoded as UTF-8.
+ */
+@Retention(RetentionPolicy.CLASS)
+@Target(ElementType.FIELD)
+public @interface PacketField {
+
+}
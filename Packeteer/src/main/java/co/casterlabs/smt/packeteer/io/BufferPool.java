@@ -0,0 +1,186 @@
+/*
+ * Copyright 2023 Casterlabs
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+package co.casterlabs.smt.packeteer.io;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import lombok.Getter;
+import lombok.Setter;
+import lombok.experimental.Accessors;
+
+/**
+ * A size-classed pool of {@link PooledBuffer}s (and the
+ * {@link PooledDeserializationResult}s that carry them). Classes are powers of
+ * two from 64 bytes up to 64kb, so that even a whole frame (see
+ * {@link PacketIO#frameMaxLength}) is pooled. Larger requests are served but
+ * never pooled. Each class holds onto a bounded amount of idle buffers, both by
+ * count and by bytes, so that the large classes don't keep megabytes around.
+ * 
+ * <p>
+ * Every lease is counted, so {@link #getOutstandingBuffers()} should drop back
+ * to zero once everything has been released. Turn on
+ * {@link #setLeakDetection(boolean)} in tests to also capture where each
+ * outstanding buffer was leased.
+ * 
+ * @implNote This class is thread safe.
+ */
+@Accessors(chain = true)
+public class BufferPool {
+    private static final int MIN_CLASS_SHIFT = 6; // 64b
+    private static final int MAX_CLASS_SHIFT = 16; // 64kb
+
+    public static final int DEFAULT_MAX_POOLED_PER_CLASS = 64;
+    public static final int DEFAULT_MAX_RETAINED_BYTES_PER_CLASS = 1024 * 1024;
+
+    private final ArrayBlockingQueue<PooledBuffer>[] classes;
+    private final ArrayBlockingQueue<PooledDeserializationResult> results;
+
+    private final AtomicInteger outstandingBuffers = new AtomicInteger();
+    private final AtomicInteger outstandingResults = new AtomicInteger();
+
+    private final Map<PooledBuffer, Throwable> leaseSites = Collections.synchronizedMap(new IdentityHashMap<>());
+
+    /**
+     * Records a stack trace for every lease, this is expensive.
+     */
+    @Getter
+    @Setter
+    private volatile boolean leakDetection = false;
+
+    public BufferPool() {
+        this(DEFAULT_MAX_POOLED_PER_CLASS);
+    }
+
+    /**
+     * @param maxPooledPerClass how many idle buffers to hold onto per size class.
+     */
+    public BufferPool(int maxPooledPerClass) {
+        this(maxPooledPerClass, DEFAULT_MAX_RETAINED_BYTES_PER_CLASS);
+    }
+
+    /**
+     * @param maxPooledPerClass        how many idle buffers to hold onto per size
+     *                                 class.
+     * @param maxRetainedBytesPerClass how many bytes of idle buffers to hold onto
+     *                                 per size class, though at least one buffer
+     *                                 is always kept.
+     */
+    @SuppressWarnings({
+            "unchecked",
+            "rawtypes"
+    })
+    public BufferPool(int maxPooledPerClass, int maxRetainedBytesPerClass) {
+        if (maxPooledPerClass < 1) throw new IllegalArgumentException("maxPooledPerClass must be positive.");
+
+        this.classes = new ArrayBlockingQueue[MAX_CLASS_SHIFT - MIN_CLASS_SHIFT + 1];
+        for (int i = 0; i < this.classes.length; i++) {
+            int byBytes = Math.max(1, maxRetainedBytesPerClass >>> (i + MIN_CLASS_SHIFT));
+            this.classes[i] = new ArrayBlockingQueue<>(Math.min(maxPooledPerClass, byBytes));
+        }
+        this.results = new ArrayBlockingQueue<>(maxPooledPerClass);
+    }
+
+    /**
+     * @return a buffer with a reference count of 1 and a {@link PooledBuffer#length()}
+     *         of {@code length}.
+     */
+    public PooledBuffer lease(int length) {
+        int sizeClass = sizeClassOf(length);
+
+        PooledBuffer buffer;
+        if (sizeClass == -1) {
+            buffer = new PooledBuffer(this, length);
+        } else {
+            buffer = this.classes[sizeClass].poll();
+            if (buffer == null) {
+                buffer = new PooledBuffer(this, 1 << (sizeClass + MIN_CLASS_SHIFT));
+            }
+        }
+
+        buffer.lease(length);
+        this.outstandingBuffers.incrementAndGet();
+
+        if (this.leakDetection) {
+            this.leaseSites.put(buffer, new Throwable("Buffer leased here"));
+        }
+
+        return buffer;
+    }
+
+    void recycle(PooledBuffer buffer) {
+        this.outstandingBuffers.decrementAndGet();
+        this.leaseSites.remove(buffer);
+
+        int sizeClass = sizeClassOf(buffer.capacity());
+        if (sizeClass == -1) return; // Oversized, left for the GC.
+
+        this.classes[sizeClass].offer(buffer); // Dropped if the class is full.
+    }
+
+    PooledDeserializationResult leaseResult() {
+        PooledDeserializationResult result = this.results.poll();
+        if (result == null) {
+            result = new PooledDeserializationResult(this);
+        }
+
+        this.outstandingResults.incrementAndGet();
+        return result;
+    }
+
+    void recycle(PooledDeserializationResult result) {
+        this.outstandingResults.decrementAndGet();
+        this.results.offer(result);
+    }
+
+    /**
+     * @return the amount of buffers that have been leased but not yet released.
+     */
+    public int getOutstandingBuffers() {
+        return this.outstandingBuffers.get();
+    }
+
+    /**
+     * @return the amount of results that have been handed out but not yet
+     *         released.
+     */
+    public int getOutstandingResults() {
+        return this.outstandingResults.get();
+    }
+
+    /**
+     * @return where each outstanding buffer was leased, empty unless
+     *         {@link #setLeakDetection(boolean)} was on at the time.
+     */
+    public List<Throwable> getLeaks() {
+        synchronized (this.leaseSites) {
+            return new ArrayList<>(this.leaseSites.values());
+        }
+    }
+
+    /**
+     * @return the size class index, or -1 if the length is too big to be pooled.
+     */
+    private static int sizeClassOf(int length) {
+        if (length <= (1 << MIN_CLASS_SHIFT)) return 0;
+
+        int shift = 32 - Integer.numberOfLeadingZeros(length - 1);
+        if (shift > MAX_CLASS_SHIFT) return -1;
+        return shift - MIN_CLASS_SHIFT;
+    }
+
+}
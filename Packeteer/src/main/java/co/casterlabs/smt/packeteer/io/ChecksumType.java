@@ -0,0 +1,72 @@
+/*
+ * Copyright 2023 Casterlabs
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+package co.casterlabs.smt.packeteer.io;
+
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * The checksum used for a frame's header and body CRC fields, signalled in the
+ * frame's flags so that the receiving end always knows what to check against.
+ */
+public enum ChecksumType {
+    /**
+     * The original checksum, understood by every version of Packeteer.
+     */
+    CRC32,
+
+    /**
+     * Castagnoli CRC32, which is hardware accelerated on most modern CPUs.
+     */
+    CRC32C,
+
+    /**
+     * No checksum at all, the CRC fields are left zeroed. Only use this on links
+     * you trust, corruption will go unnoticed and resynchronization after a
+     * corrupt frame becomes a lot less reliable.
+     */
+    NONE;
+
+    private static final int MASK = (1 << PacketIO.FLAG_CHECKSUM_CRC32C) | (1 << PacketIO.FLAG_CHECKSUM_NONE);
+
+    /**
+     * @return the type signalled by the flags, or null if the combination is
+     *         invalid.
+     */
+    public static @Nullable ChecksumType fromFlags(int flags) {
+        switch (flags & MASK) {
+            case 0:
+                return CRC32;
+            case 1 << PacketIO.FLAG_CHECKSUM_CRC32C:
+                return CRC32C;
+            case 1 << PacketIO.FLAG_CHECKSUM_NONE:
+                return NONE;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * @return the flags, with this type's bits set (and the others cleared).
+     */
+    public int applyTo(int flags) {
+        flags &= ~MASK;
+        switch (this) {
+            case CRC32C:
+                return flags | (1 << PacketIO.FLAG_CHECKSUM_CRC32C);
+            case NONE:
+                return flags | (1 << PacketIO.FLAG_CHECKSUM_NONE);
+            default:
+                return flags;
+        }
+    }
+
+}
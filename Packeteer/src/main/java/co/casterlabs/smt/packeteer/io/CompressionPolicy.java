@@ -0,0 +1,60 @@
+/*
+ * Copyright 2023 Casterlabs
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+package co.casterlabs.smt.packeteer.io;
+
+import java.util.zip.Deflater;
+
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * Decides which payloads {@link PacketIO} compresses. A payload is only
+ * compressed if it is at least {@link #minLength} bytes long, and the
+ * compressed form is only sent if it is at most {@link #maxRatio} of the
+ * original's size. Compression is abandoned as soon as the output grows past
+ * that, so incompressible payloads (e.g already encoded media) are cheap to
+ * reject.
+ */
+@Getter
+@ToString
+public class CompressionPolicy {
+    public static final CompressionPolicy DEFAULT = new CompressionPolicy(128, .9f, Deflater.DEFAULT_COMPRESSION);
+
+    private final int minLength;
+    private final float maxRatio;
+    private final int level;
+
+    /**
+     * @param level a {@link Deflater} compression level.
+     */
+    public CompressionPolicy(int minLength, float maxRatio, int level) {
+        if (minLength < 0) throw new IllegalArgumentException("minLength cannot be negative.");
+        if (maxRatio <= 0 || maxRatio > 1) throw new IllegalArgumentException("maxRatio must be within (0, 1].");
+        if ((level < Deflater.BEST_SPEED || level > Deflater.BEST_COMPRESSION) && level != Deflater.DEFAULT_COMPRESSION) {
+            throw new IllegalArgumentException("Invalid compression level: " + level);
+        }
+
+        this.minLength = minLength;
+        this.maxRatio = maxRatio;
+        this.level = level;
+    }
+
+    /**
+     * @return the largest compressed size that is still worth sending, or -1 if
+     *         the payload shouldn't be compressed at all.
+     */
+    int maxCompressedLength(int length) {
+        if (length < this.minLength || length == 0) return -1;
+        return (int) (length * this.maxRatio);
+    }
+
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright 2023 Casterlabs
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+package co.casterlabs.smt.packeteer.io;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * A bounded cache of decoded extended IDs, keyed by their raw bytes. A
+ * connection typically only ever sees a handful of distinct extended IDs, so
+ * this saves an allocation and a UTF-8 decode per frame and hands back the same
+ * String instance every time. Entries are evicted using the clock (second
+ * chance) algorithm once the cache is full.
+ * 
+ * @implNote This class is not thread safe, PacketIO keeps one per thread.
+ */
+public class ExtendedIdCache {
+    public static final int DEFAULT_CAPACITY = 64;
+
+    private final byte[][] keys;
+    private final String[] values;
+    private final int[] hashes;
+    private final boolean[] referenced;
+
+    private final int[] buckets; // Head of each bucket's chain, -1 = empty.
+    private final int[] next; // Next entry in the chain, -1 = end.
+    private final int mask;
+
+    private int size = 0;
+    private int hand = 0;
+
+    public ExtendedIdCache() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public ExtendedIdCache(int capacity) {
+        if (capacity < 1) throw new IllegalArgumentException("Capacity must be at least 1.");
+
+        this.keys = new byte[capacity][];
+        this.values = new String[capacity];
+        this.hashes = new int[capacity];
+        this.referenced = new boolean[capacity];
+        this.next = new int[capacity];
+
+        int bucketCount = Integer.highestOneBit(capacity * 2 - 1) << 1;
+        this.buckets = new int[bucketCount];
+        this.mask = bucketCount - 1;
+        Arrays.fill(this.buckets, -1);
+    }
+
+    /**
+     * Absolute get, the buffer's position is left untouched.
+     * 
+     * @return the decoded string, or null if the length is 0.
+     */
+    public @Nullable String decode(ByteBuffer buf, int offset, int length) {
+        if (length == 0) return null;
+
+        int hash = hash(buf, offset, length);
+        for (int entry = this.buckets[hash & this.mask]; entry != -1; entry = this.next[entry]) {
+            if (this.hashes[entry] == hash && matches(this.keys[entry], buf, offset, length)) {
+                this.referenced[entry] = true;
+                return this.values[entry];
+            }
+        }
+
+        byte[] key = new byte[length];
+        for (int i = 0; i < length; i++) {
+            key[i] = buf.get(offset + i);
+        }
+        String value = new String(key, StandardCharsets.UTF_8);
+
+        int entry = this.claim();
+        this.keys[entry] = key;
+        this.values[entry] = value;
+        this.hashes[entry] = hash;
+        this.referenced[entry] = false;
+
+        int bucket = hash & this.mask;
+        this.next[entry] = this.buckets[bucket];
+        this.buckets[bucket] = entry;
+        return value;
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    public void clear() {
+        Arrays.fill(this.keys, null);
+        Arrays.fill(this.values, null);
+        Arrays.fill(this.buckets, -1);
+        this.size = 0;
+        this.hand = 0;
+    }
+
+    /**
+     * @return a free entry, evicting one if needed.
+     */
+    private int claim() {
+        if (this.size < this.keys.length) {
+            return this.size++;
+        }
+
+        // Sweep, giving recently used entries a second chance.
+        while (this.referenced[this.hand]) {
+            this.referenced[this.hand] = false;
+            this.hand = (this.hand + 1) % this.keys.length;
+        }
+
+        int victim = this.hand;
+        this.hand = (this.hand + 1) % this.keys.length;
+        this.unlink(victim);
+        return victim;
+    }
+
+    private void unlink(int entry) {
+        int bucket = this.hashes[entry] & this.mask;
+        if (this.buckets[bucket] == entry) {
+            this.buckets[bucket] = this.next[entry];
+            return;
+        }
+
+        for (int prev = this.buckets[bucket]; prev != -1; prev = this.next[prev]) {
+            if (this.next[prev] == entry) {
+                this.next[prev] = this.next[entry];
+                return;
+            }
+        }
+    }
+
+    private static int hash(ByteBuffer buf, int offset, int length) {
+        int hash = 1;
+        if (buf.hasArray()) {
+            byte[] array = buf.array();
+            int start = buf.arrayOffset() + offset;
+            for (int i = start; i < start + length; i++) {
+                hash = 31 * hash + array[i];
+            }
+        } else {
+            for (int i = offset; i < offset + length; i++) {
+                hash = 31 * hash + buf.get(i);
+            }
+        }
+        return hash ^ (hash >>> 16);
+    }
+
+    private static boolean matches(byte[] key, ByteBuffer buf, int offset, int length) {
+        if (key.length != length) return false;
+
+        if (buf.hasArray()) {
+            int start = buf.arrayOffset() + offset;
+            return Arrays.equals(key, 0, length, buf.array(), start, start + length);
+        }
+
+        for (int i = 0; i < length; i++) {
+            if (key[i] != buf.get(offset + i)) return false;
+        }
+        return true;
+    }
+
+}
@@ -14,11 +14,12 @@ package co.casterlabs.smt.packeteer.io;
 import lombok.AllArgsConstructor;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
+import lombok.Setter;
 
 @NoArgsConstructor
 @AllArgsConstructor
 public class Flags {
-    private @Getter int rawValue;
+    private @Getter @Setter int rawValue;
 
     /**
      * @return this instance, for chaining.
@@ -33,7 +34,7 @@ public class Flags {
     }
 
     public boolean get(int flag) {
-        return (this.rawValue & (1 << 0)) != 0;
+        return (this.rawValue & (1 << flag)) != 0;
     }
 
     @Override
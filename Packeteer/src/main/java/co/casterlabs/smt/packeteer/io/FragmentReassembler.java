@@ -0,0 +1,279 @@
+/*
+ * Copyright 2023 Casterlabs
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+package co.casterlabs.smt.packeteer.io;
+
+import java.nio.ByteBuffer;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+
+import org.jetbrains.annotations.Nullable;
+
+import co.casterlabs.smt.packeteer.io.PacketIO.DeserializationResult;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Puts messages sent with
+ * {@link PacketIO#serializeFragmented(int, String, byte[], long, java.io.OutputStream)}
+ * back together. Each message is copied into a single contiguous array as its
+ * fragments arrive, in whatever order they arrive. Fragments that fall outside
+ * of their message or overlap one already received are dropped, so a message
+ * is only ever handed out with every byte of it filled in.
+ * 
+ * <p>
+ * The table is bounded: incomplete messages are evicted once they are older
+ * than the timeout, or (oldest first) when there are too many in flight or
+ * they take up too much memory. A message's array is allocated as soon as its
+ * first fragment arrives, sized after the (untrusted) total length, so the
+ * memory bound is what keeps a peer from pinning a lot of it with a handful of
+ * fragments.
+ * 
+ * @implNote This class is not thread safe.
+ */
+public class FragmentReassembler {
+    static final int FRAGMENT_HEADER_LENGTH = 0
+        + 4 // Message ID
+        + 2 // Fragment Index
+        + 2 // Fragment Count
+        + 4 // Total Length
+        + 4 // Offset
+    ;
+
+    static final int FRAGMENT_BODY_MAX_LENGTH = PacketIO.bodyMaxLength - FRAGMENT_HEADER_LENGTH;
+    static final int MAX_FRAGMENTS = 0xFFFF;
+
+    public static final int DEFAULT_MAX_MESSAGES = 16;
+    public static final long DEFAULT_TIMEOUT_MILLIS = 5000;
+    public static final int DEFAULT_MAX_MESSAGE_LENGTH = 1024 * 1024;
+    public static final long DEFAULT_MAX_PENDING_BYTES = 4 * 1024 * 1024;
+
+    private final LinkedHashMap<MessageKey, PartialMessage> messages = new LinkedHashMap<>();
+    private final MessageKey lookupKey = new MessageKey(0, null, 0);
+
+    private final int maxMessages;
+    private final long timeoutNanos;
+    private final int maxMessageLength;
+    private final long maxPendingBytes;
+
+    private long pendingBytes = 0;
+
+    /**
+     * How many fragments were dropped, either because they were malformed or
+     * because their message was evicted.
+     */
+    private @Getter long droppedFragments = 0;
+
+    public FragmentReassembler() {
+        this(DEFAULT_MAX_MESSAGES, DEFAULT_TIMEOUT_MILLIS, DEFAULT_MAX_MESSAGE_LENGTH, DEFAULT_MAX_PENDING_BYTES);
+    }
+
+    /**
+     * @param maxMessages      how many incomplete messages to hold onto.
+     * @param timeoutMillis    how long to wait for the rest of a message.
+     * @param maxMessageLength the largest message to accept, in bytes.
+     * @param maxPendingBytes  how many bytes the incomplete messages may take up
+     *                         altogether.
+     */
+    public FragmentReassembler(int maxMessages, long timeoutMillis, int maxMessageLength, long maxPendingBytes) {
+        if (maxPendingBytes < maxMessageLength) throw new IllegalArgumentException("maxPendingBytes must be able to hold at least one message.");
+
+        this.maxMessages = maxMessages;
+        this.timeoutNanos = timeoutMillis * 1_000_000;
+        this.maxMessageLength = maxMessageLength;
+        this.maxPendingBytes = maxPendingBytes;
+    }
+
+    /**
+     * @return the result as-is if it isn't a fragment, the reassembled message if
+     *         this was its last missing fragment, or null otherwise.
+     */
+    public @Nullable DeserializationResult accept(DeserializationResult result) {
+        if (!result.flags.get(PacketIO.FLAG_FRAGMENT)) {
+            return result;
+        }
+
+        long now = System.nanoTime();
+        this.evictExpired(now);
+
+        ByteBuffer payload = result.payloadBuffer;
+        int chunkLength = payload.limit() - FRAGMENT_HEADER_LENGTH;
+        if (chunkLength <= 0) {
+            this.droppedFragments++;
+            return null;
+        }
+
+        int messageId = payload.getInt(0);
+        int index = payload.getShort(4) & 0xFFFF;
+        int count = payload.getShort(6) & 0xFFFF;
+        int totalLength = payload.getInt(8);
+        int offset = payload.getInt(12);
+
+        if ((index >= count) ||
+            (totalLength < 0) ||
+            (totalLength > this.maxMessageLength) ||
+            ((long) count * FRAGMENT_BODY_MAX_LENGTH < totalLength) || // The fragments couldn't possibly cover it.
+            (offset < 0) ||
+            (offset > totalLength - chunkLength)) {
+            this.droppedFragments++;
+            return null;
+        }
+
+        this.lookupKey.packetId = result.packetId;
+        this.lookupKey.extendedId = result.extendedId;
+        this.lookupKey.messageId = messageId;
+
+        PartialMessage message = this.messages.get(this.lookupKey);
+        if (message == null) {
+            while (!this.messages.isEmpty() && (this.messages.size() >= this.maxMessages || this.pendingBytes + totalLength > this.maxPendingBytes)) {
+                this.evictEldest();
+            }
+
+            this.pendingBytes += totalLength;
+            message = new PartialMessage(now, result.flags.getRawValue(), result.timestamp, count, new byte[totalLength], new BitSet(count), new TreeMap<>());
+            this.messages.put(new MessageKey(result.packetId, result.extendedId, messageId), message);
+        } else if ((message.count != count) || (message.data.length != totalLength)) {
+            this.droppedFragments++;
+            return null;
+        }
+
+        if (message.received.get(index)) {
+            return null; // Duplicate.
+        }
+
+        if (message.overlaps(offset, chunkLength)) {
+            this.droppedFragments++;
+            return null;
+        }
+
+        payload.duplicate().position(FRAGMENT_HEADER_LENGTH).get(message.data, offset, chunkLength);
+        message.received.set(index);
+        message.ranges.put(offset, offset + chunkLength);
+        message.receivedBytes += chunkLength;
+
+        if (message.received.cardinality() < count) {
+            return null;
+        }
+
+        this.messages.remove(this.lookupKey);
+        this.pendingBytes -= totalLength;
+
+        if (message.receivedBytes != totalLength) {
+            // Every fragment is in, yet there are gaps. It'll never be complete.
+            this.droppedFragments += count;
+            return null;
+        }
+
+        return new DeserializationResult(
+            new Flags(message.flags).set(PacketIO.FLAG_FRAGMENT, false),
+            result.packetId,
+            result.extendedId,
+            message.timestamp,
+            message.data,
+            ByteBuffer.wrap(message.data).asReadOnlyBuffer(),
+            result.discardedBytes
+        );
+    }
+
+    /**
+     * @return the amount of incomplete messages currently held onto.
+     */
+    public int getPendingMessages() {
+        return this.messages.size();
+    }
+
+    /**
+     * @return the amount of bytes currently allocated for incomplete messages.
+     */
+    public long getPendingBytes() {
+        return this.pendingBytes;
+    }
+
+    private void evictExpired(long now) {
+        Iterator<PartialMessage> it = this.messages.values().iterator();
+        while (it.hasNext()) {
+            PartialMessage message = it.next();
+            if (now - message.firstSeen < this.timeoutNanos) break; // Insertion ordered, so the rest are newer.
+
+            this.droppedFragments += message.received.cardinality();
+            this.pendingBytes -= message.data.length;
+            it.remove();
+        }
+    }
+
+    private void evictEldest() {
+        Iterator<PartialMessage> it = this.messages.values().iterator();
+        PartialMessage message = it.next();
+        this.droppedFragments += message.received.cardinality();
+        this.pendingBytes -= message.data.length;
+        it.remove();
+    }
+
+    static void encodeFragmentHeader(ByteBuffer buf, int messageId, int index, int count, int totalLength, int offset) {
+        buf.putInt(0, messageId);
+        buf.putShort(4, (short) index);
+        buf.putShort(6, (short) count);
+        buf.putInt(8, totalLength);
+        buf.putInt(12, offset);
+    }
+
+    @AllArgsConstructor
+    private static class MessageKey {
+        private int packetId;
+        private @Nullable String extendedId;
+        private int messageId;
+
+        @Override
+        public int hashCode() {
+            return (31 * ((31 * this.packetId) + Objects.hashCode(this.extendedId))) + this.messageId;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof MessageKey)) return false;
+            MessageKey other = (MessageKey) obj;
+            return (this.packetId == other.packetId) && (this.messageId == other.messageId) && Objects.equals(this.extendedId, other.extendedId);
+        }
+    }
+
+    @AllArgsConstructor
+    private static class PartialMessage {
+        private final long firstSeen;
+        private final int flags;
+        private final long timestamp;
+        private final int count;
+        private final byte[] data;
+        private final BitSet received;
+        private final TreeMap<Integer, Integer> ranges; // Start -> End, of each fragment written.
+        private int receivedBytes;
+
+        private PartialMessage(long firstSeen, int flags, long timestamp, int count, byte[] data, BitSet received, TreeMap<Integer, Integer> ranges) {
+            this(firstSeen, flags, timestamp, count, data, received, ranges, 0);
+        }
+
+        /**
+         * @return whether {@code [offset, offset + length)} overlaps with a fragment
+         *         that has already been written.
+         */
+        private boolean overlaps(int offset, int length) {
+            Map.Entry<Integer, Integer> before = this.ranges.floorEntry(offset);
+            if (before != null && before.getValue() > offset) return true;
+
+            Integer after = this.ranges.ceilingKey(offset);
+            return after != null && after < offset + length;
+        }
+    }
+
+}
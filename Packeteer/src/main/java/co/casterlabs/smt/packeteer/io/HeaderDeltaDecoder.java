@@ -0,0 +1,298 @@
+/*
+ * Copyright 2023 Casterlabs
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+package co.casterlabs.smt.packeteer.io;
+
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32C;
+
+import org.jetbrains.annotations.Nullable;
+
+import co.casterlabs.smt.packeteer.ReservedPacketIDs;
+import co.casterlabs.smt.packeteer.io.PacketIO.DeserializationResult;
+import lombok.Getter;
+import lombok.NonNull;
+
+/**
+ * Reads frames written by a {@link HeaderDeltaEncoder}, for a single
+ * connection. Frames with a full header are passed through as-is (so a peer
+ * that doesn't compress its headers can be read just the same), and those with
+ * a delta header are filled in from their stream's last full header.
+ * 
+ * <p>
+ * A delta frame that doesn't check out, either because it's corrupt or because
+ * the full header it builds on was lost, is dropped and the decoder scans ahead
+ * for the next frame of either kind. It also asks for a reset, see
+ * {@link #takeResetRequest()}.
+ * 
+ * @implNote This class is not thread safe.
+ */
+public class HeaderDeltaDecoder {
+    private static final int NEED_MORE_DATA = -1;
+    private static final int CORRUPT = -2;
+
+    private final PacketIO io;
+
+    private final Context[] slots = new Context[HeaderDeltaEncoder.MAX_CONTEXTS];
+    private final CRC32C crc = new CRC32C();
+
+    private boolean resetRequested = false;
+
+    // Filled in by decodeDelta().
+    private int timestampDelta;
+    private int payloadLength;
+    private int frameEnd;
+
+    /**
+     * How many delta frames were dropped, not counting false starts whilst
+     * scanning for the next frame.
+     */
+    private @Getter long droppedFrames = 0;
+
+    public HeaderDeltaDecoder(@NonNull PacketIO io) {
+        this.io = io;
+    }
+
+    /**
+     * Decodes the next frame from the given buffer without copying the payload.
+     * The buffer's position is handled exactly like in
+     * {@link PacketIO#deserialize(ByteBuffer)}.
+     * 
+     * @return the decoded frame, or null if the buffer does not contain a complete
+     *         frame.
+     */
+    public @Nullable DeserializationResult deserialize(ByteBuffer in) {
+        int initialPosition = in.position();
+        boolean scanning = false;
+
+        // Full frames are only looked for at a magic, and every candidate is only
+        // tried once: when PacketIO skips ahead to a later frame, the candidates it
+        // skipped over are bad and the frame it found is kept for when we get there.
+        int nextMagic = -1;
+        int invalidUntil = initialPosition;
+        DeserializationResult found = null;
+        int foundStart = -1;
+        int foundEnd = -1;
+
+        for (int start = initialPosition; in.limit() - start >= 2; start++) {
+            if (in.get(start) != 0) continue;
+
+            byte kind = in.get(start + 1);
+            if (kind == HeaderDeltaEncoder.DELTA_MARKER) {
+                int result = this.decodeDelta(in, start);
+
+                if (result == NEED_MORE_DATA) {
+                    in.position(start);
+                    return null;
+                } else if (result == CORRUPT) {
+                    this.resetRequested = true;
+                    if (scanning) continue;
+
+                    this.droppedFrames++;
+
+                    // If another frame starts right after this one then only this one is bad, and
+                    // we can skip it as a whole. Otherwise fall back to scanning.
+                    int end = this.frameEnd;
+                    if (end != -1 && (end == in.limit() || isFrameStart(in, end))) {
+                        start = end - 1;
+                    } else {
+                        scanning = true;
+                    }
+                    continue;
+                }
+
+                Context context = this.slots[in.get(start + 2) & 0xFF];
+                DeserializationResult frame = new DeserializationResult(
+                    new Flags(context.flags),
+                    context.id,
+                    context.extendedId,
+                    context.timestamp + this.timestampDelta,
+                    null,
+                    region(in, result, this.payloadLength).slice().asReadOnlyBuffer(),
+                    start - initialPosition
+                );
+                in.position(result + this.payloadLength);
+                return frame;
+            } else if (kind == PacketIO.headerMagic[1]) {
+                if (in.limit() - start < MagicScanner.MAGIC_LENGTH) {
+                    in.position(start);
+                    return null; // May be the start of a magic, need more data.
+                }
+
+                if (nextMagic < start) {
+                    nextMagic = MagicScanner.indexOf(in, start, in.limit());
+                    if (nextMagic == -1) nextMagic = in.limit();
+                }
+                if (start != nextMagic || start < invalidUntil) continue;
+
+                DeserializationResult frame;
+                int end;
+                if (start == foundStart) {
+                    frame = found;
+                    end = foundEnd;
+                } else {
+                    // Only accept a frame right where we are, PacketIO would happily skip
+                    // over any delta frames in between otherwise.
+                    ByteBuffer view = in.duplicate();
+                    view.position(start);
+                    frame = this.io.deserialize(view);
+                    end = view.position();
+
+                    if (frame == null && end == start) {
+                        in.position(start);
+                        return null; // Need more data.
+                    } else if (frame == null) {
+                        invalidUntil = end;
+                        scanning = true;
+                        continue;
+                    } else if (frame.discardedBytes > 0) {
+                        found = frame;
+                        foundStart = start + (int) frame.discardedBytes;
+                        foundEnd = end;
+                        invalidUntil = foundStart;
+                        scanning = true;
+                        continue;
+                    }
+                }
+
+                if (frame.flags.get(PacketIO.FLAG_DELTA_BASE)) {
+                    frame = this.rebase(frame);
+                    if (frame == null) {
+                        invalidUntil = end;
+                        scanning = true;
+                        continue;
+                    }
+                }
+                if (start > initialPosition) {
+                    frame = new DeserializationResult(frame.flags, frame.packetId, frame.extendedId, frame.timestamp, frame.payload, frame.payloadBuffer, start - initialPosition);
+                }
+                in.position(end);
+                return frame;
+            }
+        }
+
+        // Keep the last byte around, it may be the start of a frame.
+        in.position(Math.max(initialPosition, in.limit() - 1));
+        return null;
+    }
+
+    /**
+     * @return the offset of the payload, {@link #NEED_MORE_DATA} or
+     *         {@link #CORRUPT}. {@link #frameEnd} is set if the frame was complete,
+     *         even if corrupt.
+     */
+    private int decodeDelta(ByteBuffer in, int start) {
+        int limit = in.limit();
+        this.frameEnd = -1;
+        if (limit - start < HeaderDeltaEncoder.DELTA_PREFIX_LENGTH) return NEED_MORE_DATA;
+
+        Context context = this.slots[in.get(start + 2) & 0xFF];
+        int offset = start + HeaderDeltaEncoder.DELTA_PREFIX_LENGTH;
+
+        // Timestamp Delta
+        int length = VarIntIOUtil.varIntLength(in, offset, limit);
+        if (length == -1) return NEED_MORE_DATA;
+        if (length == -2) return CORRUPT;
+        this.timestampDelta = VarIntIOUtil.unZigZag(VarIntIOUtil.getVarInt(in, offset));
+        offset += length;
+
+        // Payload Length
+        length = VarIntIOUtil.varIntLength(in, offset, limit);
+        if (length == -1) return NEED_MORE_DATA;
+        if (length == -2) return CORRUPT;
+        this.payloadLength = VarIntIOUtil.getVarInt(in, offset);
+        offset += length;
+
+        if (this.payloadLength < 0 || this.payloadLength > PacketIO.bodyMaxLength) return CORRUPT;
+        if (limit - offset < 4 + this.payloadLength) return NEED_MORE_DATA;
+
+        this.frameEnd = offset + 4 + this.payloadLength;
+        if (context == null) return CORRUPT;
+
+        // Checksum
+        this.crc.reset();
+        this.crc.update(region(in, start, offset - start));
+        this.crc.update(region(in, offset + 4, this.payloadLength));
+        if (in.getInt(offset) != ((int) this.crc.getValue() ^ context.fingerprint)) return CORRUPT;
+
+        return offset + 4;
+    }
+
+    /**
+     * @return the frame with the slot stripped from its payload, or null if it
+     *         doesn't have one.
+     */
+    private @Nullable DeserializationResult rebase(DeserializationResult frame) {
+        if (!frame.payloadBuffer.hasRemaining()) return null;
+
+        int rawFlags = frame.flags.getRawValue();
+        ByteBuffer payload = frame.payloadBuffer.duplicate();
+        int slot = payload.get() & 0xFF;
+
+        Context context = this.slots[slot];
+        if (context == null) {
+            context = new Context();
+            this.slots[slot] = context;
+        }
+
+        context.id = frame.packetId;
+        context.extendedId = frame.extendedId;
+        context.flags = HeaderDeltaEncoder.baseFlags(rawFlags);
+        context.timestamp = frame.timestamp;
+        context.fingerprint = HeaderDeltaEncoder.fingerprint(slot, frame.packetId, frame.extendedId, context.flags, frame.timestamp);
+
+        return new DeserializationResult(frame.flags, frame.packetId, frame.extendedId, frame.timestamp, null, payload.slice(), frame.discardedBytes);
+    }
+
+    /**
+     * @return whether any frames were dropped since the last call. If so, ask the
+     *         peer to {@link HeaderDeltaEncoder#reset()} by sending it a
+     *         {@link ReservedPacketIDs#IRB_HEADER_RESET_TYPE} packet.
+     */
+    public boolean takeResetRequest() {
+        boolean requested = this.resetRequested;
+        this.resetRequested = false;
+        return requested;
+    }
+
+    /**
+     * Forgets every stream's full header, e.g after a reconnect.
+     */
+    public void reset() {
+        for (int i = 0; i < this.slots.length; i++) {
+            this.slots[i] = null;
+        }
+        this.resetRequested = false;
+    }
+
+    private static boolean isFrameStart(ByteBuffer in, int offset) {
+        if (in.limit() - offset < 2 || in.get(offset) != 0) return false;
+
+        byte kind = in.get(offset + 1);
+        return kind == HeaderDeltaEncoder.DELTA_MARKER || kind == PacketIO.headerMagic[1];
+    }
+
+    private static ByteBuffer region(ByteBuffer buf, int offset, int length) {
+        ByteBuffer dup = buf.duplicate();
+        dup.limit(offset + length).position(offset);
+        return dup;
+    }
+
+    private static class Context {
+        private int id;
+        private @Nullable String extendedId;
+
+        private int flags;
+        private long timestamp;
+        private int fingerprint;
+    }
+
+}
@@ -0,0 +1,228 @@
+/*
+ * Copyright 2023 Casterlabs
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+package co.casterlabs.smt.packeteer.io;
+
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.zip.CRC32C;
+
+import org.jetbrains.annotations.Nullable;
+
+import co.casterlabs.smt.packeteer.ReservedPacketIDs;
+import co.casterlabs.smt.packeteer.util.IntObjectMap;
+import lombok.Getter;
+import lombok.NonNull;
+
+/**
+ * Writes frames with stateful header compression, for a single connection.
+ * Consecutive frames of a stream almost always repeat the same packet ID,
+ * extended ID and flags, so only the first frame (and every
+ * {@link #fullHeaderInterval}th after it) gets a full header. The frames in
+ * between get a delta header of a few bytes:
+ * 
+ * <pre>
+ * [byte 0] [byte 'd'] [byte slot] [varint timestamp delta] [varint payload length] [int checksum] [payload]
+ * </pre>
+ * 
+ * where the slot identifies the stream's full header (see
+ * {@link PacketIO#FLAG_DELTA_BASE}), the timestamp delta is relative to that
+ * full header rather than the previous frame so that lost frames don't throw
+ * it off, and the checksum is a CRC32C of the delta header and payload, mixed
+ * with a fingerprint of the full header so that a delta can't be applied to
+ * the wrong stream. Delta frames are never compressed.
+ * 
+ * <p>
+ * Read the frames with a {@link HeaderDeltaDecoder}. Whenever it drops a frame
+ * it asks for a reset, which the owner relays as an
+ * {@link ReservedPacketIDs#IRB_HEADER_RESET_TYPE} packet, and upon receiving
+ * one the other end calls {@link #reset()}. The periodic full headers get
+ * things back on track eventually regardless.
+ * 
+ * @implNote This class is not thread safe.
+ */
+public class HeaderDeltaEncoder {
+    public static final int DEFAULT_FULL_HEADER_INTERVAL = 32;
+    public static final int MAX_CONTEXTS = 256;
+
+    static final byte DELTA_MARKER = 'd';
+    static final int DELTA_PREFIX_LENGTH = 3; // Zero, marker and slot.
+
+    private static final int MAX_TIMESTAMP_DELTA = 1 << 30;
+
+    private final PacketIO io;
+    private final @Getter int fullHeaderInterval;
+
+    private final IntObjectMap<Map<String, Context>> contexts = new IntObjectMap<>();
+    private final Context[] slots = new Context[MAX_CONTEXTS];
+    private int nextSlot = 0;
+
+    private final CRC32C crc = new CRC32C();
+    private final ByteBuffer basePayload = ByteBuffer.allocate(PacketIO.bodyMaxLength);
+
+    private @Getter long fullHeaders = 0;
+    private @Getter long deltaHeaders = 0;
+
+    public HeaderDeltaEncoder(@NonNull PacketIO io) {
+        this(io, DEFAULT_FULL_HEADER_INTERVAL);
+    }
+
+    /**
+     * @param fullHeaderInterval how many frames a stream may send before its full
+     *                           header is repeated, 1 disables delta headers.
+     */
+    public HeaderDeltaEncoder(@NonNull PacketIO io, int fullHeaderInterval) {
+        if (fullHeaderInterval < 1) throw new IllegalArgumentException("fullHeaderInterval must be positive.");
+
+        this.io = io;
+        this.fullHeaderInterval = fullHeaderInterval;
+    }
+
+    /**
+     * Encodes the frame directly into the given buffer, with either a full or a
+     * delta header. The buffer's position is advanced past the frame and the
+     * payload's position is left untouched.
+     * 
+     * @throws BufferOverflowException if the frame does not fit in the remaining
+     *                                 space of the buffer, in which case the
+     *                                 buffer's position is left untouched.
+     */
+    public void serialize(int id, @Nullable String extendedId, @NonNull ByteBuffer payload, long timestamp, @NonNull ByteBuffer out) throws IOException {
+        int payloadLength = payload.remaining();
+        if (payloadLength > PacketIO.bodyMaxLength) throw new IOException("Payload cannot be larger than " + PacketIO.bodyMaxLength);
+
+        int flags = baseFlags(this.io.getFlags().getRawValue());
+        Map<String, Context> streams = this.contexts.computeIfAbsent(id, (key) -> new HashMap<>());
+        Context context = streams.get(extendedId);
+
+        long timestampDelta = context == null ? 0 : timestamp - context.timestamp;
+        if (context == null ||
+            context.flags != flags ||
+            context.deltas >= this.fullHeaderInterval - 1 ||
+            timestampDelta >= MAX_TIMESTAMP_DELTA ||
+            timestampDelta < -MAX_TIMESTAMP_DELTA) {
+            this.serializeFull(streams, context, id, extendedId, payload, timestamp, flags, out);
+            return;
+        }
+
+        int zigZagDelta = VarIntIOUtil.zigZag((int) timestampDelta);
+        int start = out.position();
+        int headerLength = DELTA_PREFIX_LENGTH + VarIntIOUtil.varIntSize(zigZagDelta) + VarIntIOUtil.varIntSize(payloadLength);
+        if (out.remaining() < headerLength + 4 + payloadLength) {
+            throw new BufferOverflowException();
+        }
+
+        out.put(start, (byte) 0);
+        out.put(start + 1, DELTA_MARKER);
+        out.put(start + 2, (byte) context.slot);
+        int offset = start + DELTA_PREFIX_LENGTH;
+        offset += VarIntIOUtil.putVarInt(out, offset, zigZagDelta);
+        offset += VarIntIOUtil.putVarInt(out, offset, payloadLength);
+
+        ByteBuffer header = out.duplicate();
+        header.limit(offset).position(start);
+        this.crc.reset();
+        this.crc.update(header);
+        this.crc.update(payload.duplicate());
+        out.putInt(offset, (int) this.crc.getValue() ^ context.fingerprint);
+
+        out.position(offset + 4);
+        out.put(payload.duplicate());
+
+        context.deltas++;
+        this.deltaHeaders++;
+    }
+
+    private void serializeFull(Map<String, Context> streams, @Nullable Context context, int id, @Nullable String extendedId, ByteBuffer payload, long timestamp, int flags, ByteBuffer out) throws IOException {
+        if (payload.remaining() >= PacketIO.bodyMaxLength) {
+            // No room for the slot, send it as a plain frame. The stream keeps whatever
+            // base it had and tries again with its next frame.
+            this.io.serialize(id, extendedId, payload, timestamp, 0, out);
+            this.fullHeaders++;
+            return;
+        }
+
+        int slot = context == null ? this.nextSlot : context.slot;
+        this.basePayload.clear();
+        this.basePayload.put((byte) slot).put(payload.duplicate()).flip();
+        this.io.serialize(id, extendedId, this.basePayload, timestamp, 1 << PacketIO.FLAG_DELTA_BASE, out);
+
+        if (context == null) {
+            // Take over the slot, the stream that had it goes back to full headers.
+            context = this.slots[slot];
+            if (context == null) {
+                context = new Context();
+                this.slots[slot] = context;
+            } else {
+                this.contexts.get(context.id).remove(context.extendedId);
+            }
+            this.nextSlot = (slot + 1) % MAX_CONTEXTS;
+
+            context.slot = slot;
+            context.id = id;
+            context.extendedId = extendedId;
+            streams.put(extendedId, context);
+        }
+
+        context.flags = flags;
+        context.timestamp = timestamp;
+        context.fingerprint = fingerprint(slot, id, extendedId, flags, timestamp);
+        context.deltas = 0;
+        this.fullHeaders++;
+    }
+
+    /**
+     * Forgets every stream, so that they all start over with a full header. Call
+     * this when the peer sends {@link ReservedPacketIDs#IRB_HEADER_RESET_TYPE}.
+     */
+    public void reset() {
+        for (int i = 0; i < MAX_CONTEXTS; i++) {
+            Context context = this.slots[i];
+            if (context == null) continue;
+
+            this.contexts.get(context.id).remove(context.extendedId);
+            this.slots[i] = null;
+        }
+        this.nextSlot = 0;
+    }
+
+    /**
+     * @return the flags that a full header shares with its delta headers.
+     */
+    static int baseFlags(int flags) {
+        return flags & 0xFFFF & ~(1 << PacketIO.FLAG_COMPRESSED) & ~(1 << PacketIO.FLAG_DELTA_BASE);
+    }
+
+    static int fingerprint(int slot, int id, @Nullable String extendedId, int flags, long timestamp) {
+        int hash = slot;
+        hash = 31 * hash + id;
+        hash = 31 * hash + Objects.hashCode(extendedId); // String#hashCode is specified, so both ends agree.
+        hash = 31 * hash + flags;
+        hash = 31 * hash + Long.hashCode(timestamp);
+        return hash;
+    }
+
+    private static class Context {
+        private int slot;
+        private int id;
+        private @Nullable String extendedId;
+
+        private int flags;
+        private long timestamp;
+        private int fingerprint;
+        private int deltas;
+    }
+
+}
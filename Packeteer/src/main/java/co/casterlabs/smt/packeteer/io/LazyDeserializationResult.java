@@ -0,0 +1,162 @@
+/*
+ * Copyright 2023 Casterlabs
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+package co.casterlabs.smt.packeteer.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.jetbrains.annotations.Nullable;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+
+/**
+ * A frame whose header has been validated, but whose body hasn't been looked at
+ * yet, see {@link PacketIO#deserializeLazy(ByteBuffer)}. The body CRC, the
+ * payload (including inflating it) and the extended ID are only dealt with when
+ * asked for, so a relay that routes on {@link #getPacketId()} and forwards
+ * {@link #getFrame()} as-is does next to no work per frame.
+ * <p>
+ * Like {@link PacketIO.DeserializationResult#payloadBuffer}, this is a view of
+ * the buffer it was decoded from and is therefore only valid for as long as the
+ * buffer's contents are left alone.
+ * 
+ * @implNote This class is not thread safe.
+ */
+@Getter
+public class LazyDeserializationResult {
+    private final @Getter(AccessLevel.NONE) PacketIO io;
+    private final @Getter(AccessLevel.NONE) ByteBuffer frame;
+
+    private final Flags flags;
+    private final int packetId;
+    private final long timestamp;
+    private final long discardedBytes;
+
+    /**
+     * The length of the payload on the wire, i.e before inflating it.
+     */
+    private final int payloadLength;
+
+    private final @Getter(AccessLevel.NONE) int extendedIdOffset;
+    private final @Getter(AccessLevel.NONE) int extendedIdLength;
+    private final @Getter(AccessLevel.NONE) int headerLength;
+    private final @Getter(AccessLevel.NONE) long bodyCrc;
+
+    private @Getter(AccessLevel.NONE) boolean extendedIdDecoded = false;
+    private @Getter(AccessLevel.NONE) @Nullable String extendedId;
+    private @Getter(AccessLevel.NONE) @Nullable Boolean bodyValid;
+    private @Getter(AccessLevel.NONE) @Nullable ByteBuffer payload;
+
+    LazyDeserializationResult(PacketIO io, ByteBuffer frame, int flags, int packetId, long timestamp, long discardedBytes, int payloadLength, int extendedIdOffset, int extendedIdLength, int headerLength, long bodyCrc) {
+        this.io = io;
+        this.frame = frame;
+        this.flags = new Flags(flags);
+        this.packetId = packetId;
+        this.timestamp = timestamp;
+        this.discardedBytes = discardedBytes;
+        this.payloadLength = payloadLength;
+        this.extendedIdOffset = extendedIdOffset;
+        this.extendedIdLength = extendedIdLength;
+        this.headerLength = headerLength;
+        this.bodyCrc = bodyCrc;
+    }
+
+    /**
+     * @return a read-only view of the whole frame (header included), exactly as
+     *         it was on the wire.
+     */
+    public ByteBuffer getFrame() {
+        return this.frame.duplicate();
+    }
+
+    /**
+     * Decoded on first call.
+     */
+    public @Nullable String getExtendedId() {
+        if (!this.extendedIdDecoded) {
+            this.extendedId = this.io.decodeExtendedId(this.frame, this.extendedIdOffset, this.extendedIdLength);
+            this.extendedIdDecoded = true;
+        }
+        return this.extendedId;
+    }
+
+    /**
+     * Checks the body CRC on first call. Bodies that fail it are still accepted if
+     * the frame has {@link PacketIO#FLAG_IGNORE_PAYLOAD_CRC} set.
+     */
+    public boolean isBodyValid() {
+        if (this.bodyValid == null) {
+            this.bodyValid = this.io.checkBody(this.flags.getRawValue(), this.bodyCrc, this.rawPayload());
+        }
+        return this.bodyValid;
+    }
+
+    /**
+     * Checks the body CRC and inflates compressed payloads on first call.
+     * 
+     * @return a read-only view of the payload.
+     * 
+     * @throws IOException if the body is corrupt.
+     */
+    public ByteBuffer getPayload() throws IOException {
+        if (this.payload == null) {
+            if (!this.isBodyValid()) throw new IOException("Corrupt packet received! (Body CRC failed)");
+
+            if (this.flags.get(PacketIO.FLAG_COMPRESSED)) {
+                byte[] inflated = this.io.inflate(this.flags.getRawValue(), this.rawPayload());
+                if (inflated == null) throw new IOException("Corrupt packet received! (Malformed compressed payload)");
+                this.payload = ByteBuffer.wrap(inflated).asReadOnlyBuffer();
+            } else {
+                this.payload = this.rawPayload();
+            }
+        }
+        return this.payload.duplicate();
+    }
+
+    /**
+     * @return the equivalent of what {@link PacketIO#deserialize(ByteBuffer)}
+     *         would have returned.
+     * 
+     * @throws IOException if the body is corrupt.
+     */
+    public PacketIO.DeserializationResult toResult() throws IOException {
+        ByteBuffer payload = this.getPayload();
+        return new PacketIO.DeserializationResult(
+            this.flags,
+            this.packetId,
+            this.getExtendedId(),
+            this.timestamp,
+            null,
+            payload,
+            this.discardedBytes
+        );
+    }
+
+    private ByteBuffer rawPayload() {
+        ByteBuffer payload = this.frame.duplicate();
+        payload.position(this.headerLength);
+        return payload.slice();
+    }
+
+    @Override
+    public String toString() {
+        return String.format(
+            "LazyDeserializationResult(flags=%s, packetId=%d, timestamp=%d, payloadLength=%d)",
+            this.flags.toString(16),
+            this.packetId,
+            this.timestamp,
+            this.payloadLength
+        );
+    }
+
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2023 Casterlabs
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+package co.casterlabs.smt.packeteer.io;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Finds the SMT magic ({@code \0SMT}) in bulk, using a Horspool skip table.
+ * None of the magic's bytes repeat, so most mismatches skip ahead by the full
+ * magic length instead of a single byte.
+ */
+public class MagicScanner {
+    public static final int MAGIC_LENGTH = 4;
+
+    private static final byte M0 = 0;
+    private static final byte M1 = 'S';
+    private static final byte M2 = 'M';
+    private static final byte M3 = 'T';
+
+    /**
+     * @return the index of the first magic in {@code buf[from, to)}, or -1 if
+     *         there isn't one.
+     */
+    public static int indexOf(byte[] buf, int from, int to) {
+        int i = from;
+        while (i <= to - MAGIC_LENGTH) {
+            byte last = buf[i + 3];
+            if ((last == M3) && (buf[i] == M0) && (buf[i + 1] == M1) && (buf[i + 2] == M2)) {
+                return i;
+            }
+            i += skip(last);
+        }
+        return -1;
+    }
+
+    /**
+     * Uses absolute gets, the buffer's position and limit are ignored.
+     * 
+     * @return the index of the first magic in {@code buf[from, to)}, or -1 if
+     *         there isn't one.
+     */
+    public static int indexOf(ByteBuffer buf, int from, int to) {
+        if (buf.hasArray()) {
+            int offset = buf.arrayOffset();
+            int index = indexOf(buf.array(), offset + from, offset + to);
+            return index == -1 ? -1 : index - offset;
+        }
+
+        int i = from;
+        while (i <= to - MAGIC_LENGTH) {
+            byte last = buf.get(i + 3);
+            if ((last == M3) && (buf.get(i) == M0) && (buf.get(i + 1) == M1) && (buf.get(i + 2) == M2)) {
+                return i;
+            }
+            i += skip(last);
+        }
+        return -1;
+    }
+
+    /**
+     * @return how far we can safely advance, given the byte that lined up with the
+     *         end of the magic.
+     */
+    private static int skip(byte b) {
+        switch (b) {
+            case M0:
+                return 3;
+            case M1:
+                return 2;
+            case M2:
+                return 1;
+            default:
+                return MAGIC_LENGTH;
+        }
+    }
+
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright 2023 Casterlabs
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+package co.casterlabs.smt.packeteer.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.function.Consumer;
+
+import co.casterlabs.smt.packeteer.io.PacketIO.DeserializationResult;
+import lombok.NonNull;
+
+/**
+ * A stateful, non-blocking decoder that can be fed arbitrary fragments of a
+ * stream (e.g from a {@link java.nio.channels.Selector} loop). Partial frames
+ * are held onto between calls, and each call emits zero or more results.
+ * 
+ * <p>
+ * Emitted results own a copy of their payload, so they remain valid after the
+ * call returns.
+ * 
+ * @implNote This class is not thread safe.
+ */
+public class PacketDecoder {
+    private final PacketIO io;
+    private final ByteBuffer buffer; // Always in "write" mode between calls.
+
+    private long discarded = 0; // Carried over between calls until the next frame.
+
+    public PacketDecoder(@NonNull PacketIO io) {
+        this(io, false);
+    }
+
+    /**
+     * @param direct whether or not to use a direct buffer internally, useful if
+     *               you plan on using {@link #read(ReadableByteChannel, Consumer)}.
+     */
+    public PacketDecoder(@NonNull PacketIO io, boolean direct) {
+        this.io = io;
+        // Needs to hold at least one full frame, otherwise we could stall.
+        this.buffer = direct ? ByteBuffer.allocateDirect(PacketIO.frameMaxLength * 2) : ByteBuffer.allocate(PacketIO.frameMaxLength * 2);
+    }
+
+    /**
+     * @return the amount of results emitted.
+     */
+    public int feed(byte[] b, int off, int len, @NonNull Consumer<DeserializationResult> consumer) {
+        return this.feed(ByteBuffer.wrap(b, off, len), consumer);
+    }
+
+    /**
+     * Consumes all of the remaining bytes in {@code src}.
+     * 
+     * @return the amount of results emitted.
+     */
+    public int feed(@NonNull ByteBuffer src, @NonNull Consumer<DeserializationResult> consumer) {
+        int emitted = 0;
+
+        while (src.hasRemaining()) {
+            int len = Math.min(src.remaining(), this.buffer.remaining());
+
+            ByteBuffer chunk = src.duplicate();
+            chunk.limit(chunk.position() + len);
+            this.buffer.put(chunk);
+            src.position(src.position() + len);
+
+            emitted += this.drain(consumer);
+        }
+
+        return emitted;
+    }
+
+    /**
+     * Performs a single read from the channel directly into the decoder's buffer.
+     * Works with both blocking and non-blocking channels.
+     * 
+     * @return the result of {@link ReadableByteChannel#read(ByteBuffer)}, -1 on
+     *         end of stream.
+     */
+    public int read(@NonNull ReadableByteChannel channel, @NonNull Consumer<DeserializationResult> consumer) throws IOException {
+        int read = channel.read(this.buffer);
+        if (read > 0) {
+            this.drain(consumer);
+        }
+        return read;
+    }
+
+    /**
+     * @return the amount of bytes currently held onto, waiting for the rest of a
+     *         frame.
+     */
+    public int getBufferedBytes() {
+        return this.buffer.position();
+    }
+
+    /**
+     * Discards any partially received frame, e.g after a reconnect.
+     */
+    public void reset() {
+        this.buffer.clear();
+        this.discarded = 0;
+    }
+
+    private int drain(Consumer<DeserializationResult> consumer) {
+        int emitted = 0;
+        this.buffer.flip();
+
+        try {
+            while (true) {
+                int position = this.buffer.position();
+                DeserializationResult result = this.io.deserialize(this.buffer);
+
+                if (result == null) {
+                    this.discarded += this.buffer.position() - position;
+                    break;
+                }
+
+                // The view points into our buffer, which gets compacted. So we copy.
+                byte[] payload = new byte[result.payloadBuffer.remaining()];
+                result.payloadBuffer.duplicate().get(payload);
+
+                consumer.accept(
+                    new DeserializationResult(
+                        result.flags,
+                        result.packetId,
+                        result.extendedId,
+                        result.timestamp,
+                        payload,
+                        ByteBuffer.wrap(payload).asReadOnlyBuffer(),
+                        this.discarded + result.discardedBytes
+                    )
+                );
+                this.discarded = 0;
+                emitted++;
+            }
+        } finally {
+            this.buffer.compact();
+        }
+
+        return emitted;
+    }
+
+}
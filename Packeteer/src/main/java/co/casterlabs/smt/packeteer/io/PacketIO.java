@@ -14,8 +14,16 @@ package co.casterlabs.smt.packeteer.io;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.zip.CRC32;
+import java.util.zip.CRC32C;
+import java.util.zip.Checksum;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
 
 import org.jetbrains.annotations.Nullable;
 
@@ -32,7 +40,7 @@ import xyz.e3ndr.fastloggingframework.logging.LogLevel;
 
 @Accessors(chain = true)
 public class PacketIO {
-    private static final byte[] headerMagic = {
+    static final byte[] headerMagic = {
             0,
             'S',
             'M',
@@ -50,10 +58,75 @@ public class PacketIO {
         + 4   // CRC32 (Payload)
     ;
 
+    private static final int compactHeaderMaxLength = 0
+        + 4   // Magic
+        + 2   // Flags
+        + 4   // ID
+        + 1   // Extended ID Length
+        + 255 // Extended ID (UTF-8, only as long as specified)
+        + 8   // Timestamp
+        + 3   // Payload Length (VarInt)
+        + 4   // CRC32 (Flags + ID + Extended ID + Timestamp + Payload Length)
+        + 4   // CRC32 (Payload)
+    ;
+
+    public static final int headerMaxLength = Math.max(headerLength, compactHeaderMaxLength);
+
+    // Offsets of each header field, relative to the start of the magic.
+    private static final int OFFSET_FLAGS = 4;
+    private static final int OFFSET_ID = OFFSET_FLAGS + 2;
+    private static final int OFFSET_EXTENDED_ID = OFFSET_ID + 4;
+    private static final int OFFSET_TIMESTAMP = OFFSET_EXTENDED_ID + 255;
+    private static final int OFFSET_PAYLOAD_LENGTH = OFFSET_TIMESTAMP + 8;
+    private static final int OFFSET_HEADER_CRC = OFFSET_PAYLOAD_LENGTH + 2;
+
+    // The compact header is variable length after the extended ID.
+    private static final int OFFSET_COMPACT_EXTENDED_ID_LENGTH = OFFSET_ID + 4;
+    private static final int OFFSET_COMPACT_EXTENDED_ID = OFFSET_COMPACT_EXTENDED_ID_LENGTH + 1;
+
     public static final int bodyMaxLength = Short.MAX_VALUE - headerLength; // Just shy of 32kb
+    public static final int frameMaxLength = headerMaxLength + bodyMaxLength;
 
     public static final int FLAG_UNRELIABLE = 0; // Not used directly by packeteer, just defined here for other frameworks.
     public static final int FLAG_IGNORE_PAYLOAD_CRC = 1;
+    /**
+     * Uses a length-prefixed extended ID and a varint payload length instead of
+     * the fixed 255 byte extended ID, which makes for a much smaller header. Frames
+     * of either format can be decoded at any time.
+     */
+    public static final int FLAG_COMPACT_HEADER = 2;
+    /**
+     * The payload is one piece of a larger message, see
+     * {@link #serializeFragmented(int, String, byte[], long, OutputStream)} and
+     * {@link FragmentReassembler}.
+     */
+    public static final int FLAG_FRAGMENT = 3;
+    /**
+     * Together with {@link #FLAG_CHECKSUM_NONE}, selects the frame's
+     * {@link ChecksumType}. Use {@link #setChecksumType(ChecksumType)} rather than
+     * setting these directly.
+     */
+    public static final int FLAG_CHECKSUM_CRC32C = 4;
+    public static final int FLAG_CHECKSUM_NONE = 5;
+    /**
+     * Marks a deflated payload, prefixed with its original length as a varint.
+     * This is set per frame according to the
+     * {@link #setCompressionPolicy(CompressionPolicy) compression policy}, don't
+     * set it yourself.
+     */
+    public static final int FLAG_COMPRESSED = 6;
+    /**
+     * Marks a full header that also serves as the base for the delta headers that
+     * follow it. The payload is prefixed with the context slot (a single byte),
+     * which {@link HeaderDeltaDecoder} strips again. See
+     * {@link HeaderDeltaEncoder}.
+     */
+    public static final int FLAG_DELTA_BASE = 7;
+
+    private static final int scanBlockSize = 4096;
+
+    private static final int HEADER_NEED_MORE_DATA = -1;
+    private static final int HEADER_CORRUPT = -2;
 
     @Getter
     @Setter
@@ -65,225 +138,1194 @@ public class PacketIO {
     @NonNull
     private FastLogger logger = new FastLogger(LogLevel.NONE);
 
+    /**
+     * Which payloads to compress, or null to never compress (the default).
+     * Compressed frames are always understood when reading, regardless of this.
+     * Fragmented frames and those written with
+     * {@link #serializeHeader(int, String, ByteBuffer, long, ByteBuffer)} are
+     * never compressed.
+     */
+    @Getter
+    @Setter
+    private @Nullable CompressionPolicy compressionPolicy;
+
+    /**
+     * Whether decoded extended IDs are cached (per thread), see
+     * {@link ExtendedIdCache}. Enabled by default.
+     */
+    @Getter
+    @Setter
+    private boolean extendedIdCacheEnabled = true;
+
+    /**
+     * Receives frame, corruption and latency events, or null for none (the
+     * default). Costs next to nothing when unset.
+     * 
+     * @see co.casterlabs.smt.packeteer.metrics.PacketIOMetrics
+     */
+    @Getter
+    @Setter
+    private @Nullable PacketIOListener listener;
+
+    private final ThreadLocal<Scratch> scratch = ThreadLocal.withInitial(Scratch::new);
+    private final AtomicInteger fragmentedMessageId = new AtomicInteger();
+
+    public ChecksumType getChecksumType() {
+        return ChecksumType.fromFlags(this.flags.getRawValue());
+    }
+
+    /**
+     * Selects the checksum used for frames written by this instance, the
+     * receiving end picks it up from the frame's flags.
+     * 
+     * @return this instance, for chaining.
+     */
+    public PacketIO setChecksumType(@NonNull ChecksumType type) {
+        this.flags.setRawValue(type.applyTo(this.flags.getRawValue()));
+        return this;
+    }
+
     public void serialize(Packet packet, OutputStream out) throws IOException {
-        this.serialize(packet.getId(), packet.getExtendedId(), packet.serialize(), System.currentTimeMillis(), out);
+        ByteBuffer payload = this.payloadOf(packet);
+        this.serialize(packet.getId(), packet.getExtendedId(), payload.array(), payload.arrayOffset(), payload.remaining(), System.currentTimeMillis(), out);
     }
 
     public void serialize(int id, @Nullable String extendedId, byte[] payload, long timestamp, OutputStream out) throws IOException {
-        if (payload.length > bodyMaxLength) throw new IOException("Payload cannot be larger than " + bodyMaxLength);
-        if ((extendedId != null) && extendedId.length() > 255) throw new IOException("Extended ID cannot be longer than 255 characters");
+        this.serialize(id, extendedId, payload, 0, payload.length, timestamp, out);
+    }
+
+    private void serialize(int id, @Nullable String extendedId, byte[] payload, int offset, int length, long timestamp, OutputStream out) throws IOException {
+        if (length > bodyMaxLength) throw new IOException("Payload cannot be larger than " + bodyMaxLength);
+        byte[] extendedIdBytes = encodeExtendedId(extendedId);
+
+        Scratch scratch = this.scratch.get();
+        int compressedLength = this.compress(ByteBuffer.wrap(payload, offset, length), scratch);
+        if (compressedLength == -1) {
+            this.writeFrame(this.flags.getRawValue(), id, extendedIdBytes, timestamp, null, payload, offset, length, out);
+        } else {
+            int flags = this.flags.getRawValue() | (1 << FLAG_COMPRESSED);
+            this.writeFrame(flags, id, extendedIdBytes, timestamp, null, scratch.compressBuffer, 0, compressedLength, out);
+        }
+    }
+
+    /**
+     * Like {@link #serialize(int, String, byte[], long, OutputStream)}, except
+     * that payloads larger than {@link #bodyMaxLength} are split into multiple
+     * frames marked with {@link #FLAG_FRAGMENT}. Use a {@link FragmentReassembler}
+     * on the receiving end to put them back together.
+     */
+    public void serializeFragmented(int id, @Nullable String extendedId, byte[] payload, long timestamp, OutputStream out) throws IOException {
+        if (payload.length <= bodyMaxLength) {
+            this.serialize(id, extendedId, payload, timestamp, out);
+            return;
+        }
+
+        if (payload.length > FragmentReassembler.MAX_FRAGMENTS * FragmentReassembler.FRAGMENT_BODY_MAX_LENGTH) {
+            throw new IOException("Payload is too large to be fragmented.");
+        }
+
+        byte[] extendedIdBytes = encodeExtendedId(extendedId);
+        int flags = this.flags.getRawValue() | (1 << FLAG_FRAGMENT);
+        int messageId = this.fragmentedMessageId.getAndIncrement();
+
+        int chunkLength = FragmentReassembler.FRAGMENT_BODY_MAX_LENGTH;
+        int fragmentCount = (payload.length + chunkLength - 1) / chunkLength;
+
+        ByteBuffer fragmentHeader = this.scratch.get().fragmentHeader;
+        for (int index = 0; index < fragmentCount; index++) {
+            int offset = index * chunkLength;
+            int length = Math.min(chunkLength, payload.length - offset);
+
+            FragmentReassembler.encodeFragmentHeader(fragmentHeader, messageId, index, fragmentCount, payload.length, offset);
+            this.writeFrame(flags, id, extendedIdBytes, timestamp, fragmentHeader, payload, offset, length, out);
+        }
+    }
+
+    /**
+     * @param prefix optional bytes to place in front of the payload, they count
+     *               towards the payload length and body CRC.
+     */
+    private void writeFrame(int flags, int id, @Nullable byte[] extendedIdBytes, long timestamp, @Nullable ByteBuffer prefix, byte[] payload, int offset, int length, OutputStream out) throws IOException {
+        int prefixLength = prefix == null ? 0 : prefix.limit();
+
+        // The header is built in one go, so we only need one write for it.
+        Scratch scratch = this.scratch.get();
+        ByteBuffer header = scratch.encodeBuffer;
+        int headerLength = this.encodeHeader(header, flags, id, extendedIdBytes, timestamp, prefixLength + length, scratch);
+
+        // CRC32 (Body)
+        Checksum bodyCrc = scratch.checksum(flags);
+        if (prefix != null) {
+            updateChecksum(bodyCrc, prefix, 0, prefixLength);
+            for (int i = 0; i < prefixLength; i++) {
+                header.put(headerLength + i, prefix.get(i));
+            }
+        }
+        bodyCrc.update(payload, offset, length);
+        header.putInt(headerLength - 4, (int) bodyCrc.getValue());
+
+        out.write(header.array(), 0, headerLength + prefixLength);
+
+        // Payload
+        out.write(payload, offset, length);
+
+        PacketIOListener listener = this.listener;
+        if (listener != null) listener.onFrameEncoded(id, headerLength + prefixLength + length);
+    }
+
+    public void serialize(Packet packet, ByteBuffer out) throws IOException {
+        this.serialize(packet.getId(), packet.getExtendedId(), this.payloadOf(packet), System.currentTimeMillis(), out);
+    }
+
+    /**
+     * Packets are serialized into the scratch's packet buffer, so that they don't
+     * need a payload array of their own.
+     * 
+     * @return a heap buffer (with an accessible array) containing the payload.
+     */
+    private ByteBuffer payloadOf(Packet packet) throws IOException {
+        ByteBuffer payload = ByteBuffer.wrap(this.scratch.get().packetBuffer, 0, bodyMaxLength);
+        try {
+            packet.serialize(payload);
+        } catch (BufferOverflowException e) {
+            throw new IOException("Payload cannot be larger than " + bodyMaxLength, e);
+        }
+        payload.flip();
+        return payload;
+    }
+
+    /**
+     * Encodes the frame directly into the given buffer using absolute puts. The
+     * buffer's position is advanced past the frame and the payload's position is
+     * left untouched.
+     * 
+     * @throws BufferOverflowException if the frame does not fit in the remaining
+     *                                 space of the buffer, in which case the
+     *                                 buffer's position is left untouched.
+     */
+    public void serialize(int id, @Nullable String extendedId, ByteBuffer payload, long timestamp, ByteBuffer out) throws IOException {
+        this.encodeFrame(id, extendedId, payload, timestamp, 0, out, true);
+    }
+
+    /**
+     * Like {@link #serialize(int, String, ByteBuffer, long, ByteBuffer)}, except
+     * that {@code extraFlags} are OR'd into this PacketIO's flags for this frame
+     * only, e.g {@code 1 << FLAG_UNRELIABLE}.
+     */
+    public void serialize(int id, @Nullable String extendedId, ByteBuffer payload, long timestamp, int extraFlags, ByteBuffer out) throws IOException {
+        this.encodeFrame(id, extendedId, payload, timestamp, extraFlags & 0xFFFF, out, true);
+    }
+
+    /**
+     * Like {@link #serialize(int, String, ByteBuffer, long, ByteBuffer)}, except
+     * that only the header (including the body CRC) is written. The payload must
+     * then be written straight after it, which lets callers doing gathering writes
+     * avoid copying it.
+     */
+    public void serializeHeader(int id, @Nullable String extendedId, ByteBuffer payload, long timestamp, ByteBuffer out) throws IOException {
+        this.encodeFrame(id, extendedId, payload, timestamp, 0, out, false);
+    }
+
+    private void encodeFrame(int id, @Nullable String extendedId, ByteBuffer payload, long timestamp, int extraFlags, ByteBuffer out, boolean includePayload) throws IOException {
+        if (payload.remaining() > bodyMaxLength) throw new IOException("Payload cannot be larger than " + bodyMaxLength);
+        byte[] extendedIdBytes = encodeExtendedId(extendedId);
+
+        Scratch scratch = this.scratch.get();
+        int flags = this.flags.getRawValue() | extraFlags;
+
+        if (includePayload) {
+            int compressedLength = this.compress(payload, scratch);
+            if (compressedLength != -1) {
+                flags |= 1 << FLAG_COMPRESSED;
+                payload = ByteBuffer.wrap(scratch.compressBuffer, 0, compressedLength);
+            }
+        }
+
+        int payloadLength = payload.remaining();
+        int start = out.position();
+        int headerLength = this.headerLengthOf(flags, extendedIdBytes, payloadLength);
+        int frameLength = includePayload ? headerLength + payloadLength : headerLength;
+        if (out.remaining() < frameLength) {
+            throw new BufferOverflowException();
+        }
+
+        ByteBuffer frame = out.slice();
+        this.encodeHeader(frame, flags, id, extendedIdBytes, timestamp, payloadLength, scratch);
+
+        // CRC32 (Body)
+        Checksum bodyCrc = scratch.checksum(flags);
+        updateChecksum(bodyCrc, payload, payload.position(), payloadLength);
+        frame.putInt(headerLength - 4, (int) bodyCrc.getValue());
+
+        // Payload
+        if (includePayload) {
+            frame.position(headerLength);
+            frame.put(payload.duplicate());
+        }
+
+        out.position(start + frameLength);
+
+        PacketIOListener listener = this.listener;
+        if (listener != null) listener.onFrameEncoded(id, headerLength + payloadLength);
+    }
+
+    /**
+     * Compresses the payload into the scratch's compress buffer, if the policy
+     * says it's worth it. The payload's position is left untouched.
+     * 
+     * @return the length of the compressed payload (including the original length
+     *         prefix), or -1 if the payload should be sent as-is.
+     */
+    private int compress(ByteBuffer payload, Scratch scratch) {
+        CompressionPolicy policy = this.compressionPolicy;
+        if (policy == null) return -1;
+
+        int length = payload.remaining();
+        int limit = policy.maxCompressedLength(length);
+        if (limit == -1) return -1;
+
+        byte[] out = scratch.compressBuffer;
+        int offset = VarIntIOUtil.putVarInt(ByteBuffer.wrap(out), 0, length);
+
+        Deflater deflater = scratch.deflater();
+        deflater.reset();
+        deflater.setLevel(policy.getLevel());
+        deflater.setInput(payload.duplicate());
+        deflater.finish();
+
+        while (!deflater.finished()) {
+            if (offset >= limit) return -1; // Not worth it.
+            offset += deflater.deflate(out, offset, limit - offset);
+        }
+
+        return offset;
+    }
+
+    /**
+     * Inflates a compressed payload into either a fresh array
+     * ({@link FrameHeader#payloadArray}) or a lease from the pool
+     * ({@link FrameHeader#payloadLease}).
+     * 
+     * @return false if the payload was malformed.
+     */
+    private boolean decompress(FrameHeader header, ByteBuffer payload, Scratch scratch, @Nullable BufferPool pool) {
+        int lengthSize = VarIntIOUtil.varIntLength(payload, payload.position(), payload.limit());
+        int originalLength = lengthSize < 0 ? -1 : VarIntIOUtil.getVarInt(payload, payload.position());
+
+        if (originalLength < 0 || originalLength > bodyMaxLength) {
+            this.logger.severe("Corrupt packet received! (Malformed compressed length)");
+            if (this.listener != null) this.listener.onBodyCorrupt();
+            return false;
+        }
+
+        byte[] out;
+        PooledBuffer lease = null;
+        if (pool == null) {
+            out = new byte[originalLength];
+        } else {
+            lease = pool.lease(originalLength);
+            out = lease.array();
+        }
+
+        Inflater inflater = scratch.inflater();
+        inflater.reset();
+        inflater.setInput(region(payload, payload.position() + lengthSize, payload.remaining() - lengthSize));
+
+        int inflated = 0;
+        try {
+            while (inflated < originalLength) {
+                int read = inflater.inflate(out, inflated, originalLength - inflated);
+                if (read == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) break;
+                inflated += read;
+            }
+        } catch (DataFormatException e) {
+            inflated = -1;
+        }
+
+        if (inflated != originalLength) {
+            if (lease != null) lease.release();
+            this.logger.severe("Corrupt packet received! (Malformed compressed payload)");
+            if (this.listener != null) this.listener.onBodyCorrupt();
+            return false;
+        }
+
+        header.payloadArray = lease == null ? out : null;
+        header.payloadLease = lease;
+        return true;
+    }
+
+    /**
+     * Writes the header (everything but the body CRC) at the start of the buffer.
+     * 
+     * @return the length of the header, including the body CRC.
+     */
+    private int encodeHeader(ByteBuffer out, int flags, int id, @Nullable byte[] extendedIdBytes, long timestamp, int payloadLength, Scratch scratch) {
+        int extendedIdLength = extendedIdBytes == null ? 0 : extendedIdBytes.length;
+        boolean compact = (flags & (1 << FLAG_COMPACT_HEADER)) != 0;
 
         // Magic
-        out.write(headerMagic);
+        for (int i = 0; i < headerMagic.length; i++) {
+            out.put(i, headerMagic[i]);
+        }
 
         // Flags
-        byte[] flagsBytes = BigEndianIOUtil.shortToBytes((short) this.flags.getRawValue());
-        out.write(flagsBytes);
+        out.putShort(OFFSET_FLAGS, (short) flags);
 
         // ID
-        byte[] idBytes = BigEndianIOUtil.intToBytes(id);
-        out.write(idBytes);
-
-        // Extended ID
-        byte[] extendedIdBytes = new byte[255];
-        if (extendedId != null) {
-            byte[] utf8 = extendedId.getBytes(StandardCharsets.UTF_8);
-            System.arraycopy(utf8, 0, extendedIdBytes, 0, utf8.length); // Leaves the rest of the bytes `null`.
-        }
-        out.write(extendedIdBytes);
-
-        // Timestamp
-        byte[] timestampBytes = BigEndianIOUtil.longToBytes(timestamp);
-        out.write(timestampBytes);
-
-        // Payload Length
-        byte[] payloadLengthBytes = BigEndianIOUtil.shortToBytes((short) payload.length);
-        out.write(payloadLengthBytes);
-
-        // CRC32 (Flags + ID + Payload Length + Timestamp)
-        CRC32 headerCrc = new CRC32();
-        headerCrc.update(flagsBytes);
-        headerCrc.update(idBytes);
-        headerCrc.update(extendedIdBytes);
-        headerCrc.update(timestampBytes);
-        headerCrc.update(payloadLengthBytes);
-        out.write(BigEndianIOUtil.intToBytes((int) headerCrc.getValue()));
+        out.putInt(OFFSET_ID, id);
 
-        // CRC32 (Body)
-        CRC32 bodyCrc = new CRC32();
-        bodyCrc.update(payload);
-        out.write(BigEndianIOUtil.intToBytes((int) bodyCrc.getValue()));
+        int offset;
+        if (compact) {
+            // Extended ID (Length prefixed)
+            out.put(OFFSET_COMPACT_EXTENDED_ID_LENGTH, (byte) extendedIdLength);
+            for (int i = 0; i < extendedIdLength; i++) {
+                out.put(OFFSET_COMPACT_EXTENDED_ID + i, extendedIdBytes[i]);
+            }
+            offset = OFFSET_COMPACT_EXTENDED_ID + extendedIdLength;
 
-        // Payload
-        out.write(payload);
+            // Timestamp
+            out.putLong(offset, timestamp);
+            offset += 8;
+
+            // Payload Length
+            offset += VarIntIOUtil.putVarInt(out, offset, payloadLength);
+        } else {
+            // Extended ID (Zero padded)
+            for (int i = 0; i < extendedIdLength; i++) {
+                out.put(OFFSET_EXTENDED_ID + i, extendedIdBytes[i]);
+            }
+            for (int i = extendedIdLength; i < 255; i++) {
+                out.put(OFFSET_EXTENDED_ID + i, (byte) 0);
+            }
+
+            // Timestamp
+            out.putLong(OFFSET_TIMESTAMP, timestamp);
+
+            // Payload Length
+            out.putShort(OFFSET_PAYLOAD_LENGTH, (short) payloadLength);
+            offset = OFFSET_HEADER_CRC;
+        }
+
+        // CRC32 (Flags + ID + Extended ID + Timestamp + Payload Length), these are
+        // contiguous so we can do it in one pass.
+        Checksum headerCrc = scratch.checksum(flags);
+        updateChecksum(headerCrc, out, OFFSET_FLAGS, offset - OFFSET_FLAGS);
+        out.putInt(offset, (int) headerCrc.getValue());
+
+        return offset + 8;
+    }
+
+    private int headerLengthOf(int flags, @Nullable byte[] extendedIdBytes, int payloadLength) {
+        if ((flags & (1 << FLAG_COMPACT_HEADER)) == 0) {
+            return headerLength;
+        }
+
+        int extendedIdLength = extendedIdBytes == null ? 0 : extendedIdBytes.length;
+        return OFFSET_COMPACT_EXTENDED_ID + extendedIdLength + 8 + VarIntIOUtil.varIntSize(payloadLength) + 8;
+    }
+
+    private static @Nullable byte[] encodeExtendedId(@Nullable String extendedId) throws IOException {
+        if (extendedId == null) return null;
+
+        byte[] extendedIdBytes = extendedId.getBytes(StandardCharsets.UTF_8);
+        if (extendedIdBytes.length > 255) throw new IOException("Extended ID cannot be longer than 255 bytes");
+        return extendedIdBytes;
+    }
+
+    /**
+     * Decodes the next frame from the given buffer without copying the payload,
+     * the returned {@link DeserializationResult#payloadBuffer} is a slice of the
+     * input buffer. On success the buffer's position is advanced past the frame.
+     * 
+     * <p>
+     * If no complete frame is available the buffer's position is left at the start
+     * of the partial frame (or at the tail that may still contain a partial magic),
+     * so that the caller can compact the buffer, read more data, and try again.
+     * Corrupt frames are skipped over, just like in
+     * {@link #deserialize(InputStream)}. Note that
+     * {@link DeserializationResult#discardedBytes} only counts what was skipped
+     * during this call.
+     * 
+     * @return the decoded frame, or null if the buffer does not contain a complete
+     *         frame.
+     */
+    public @Nullable DeserializationResult deserialize(ByteBuffer in) {
+        Scratch scratch = this.scratch.get();
+        FrameHeader header = scratch.header;
+
+        int start = this.decodeFrame(in, header, scratch, null, true);
+        if (start == -1) return null;
+
+        byte[] payloadArray = header.payloadArray; // Only set for compressed frames.
+        header.payloadArray = null;
+
+        ByteBuffer payload;
+        if (payloadArray == null) {
+            payload = region(in, start + header.headerLength, header.payloadLength).slice().asReadOnlyBuffer();
+        } else {
+            payload = ByteBuffer.wrap(payloadArray).asReadOnlyBuffer();
+        }
+        String extendedId = this.decodeExtendedId(scratch, in, start + header.extendedIdOffset, header.extendedIdLength);
+
+        return new DeserializationResult(
+            new Flags(header.flags),
+            header.packetId,
+            extendedId,
+            header.timestamp,
+            payloadArray,
+            payload,
+            header.discardedBytes
+        );
+    }
+
+    /**
+     * Decodes the next frame from the given buffer, copying the payload into a
+     * buffer leased from the pool. Behaves exactly like
+     * {@link #deserialize(ByteBuffer)} otherwise.
+     * 
+     * @return the decoded frame, or null if the buffer does not contain a complete
+     *         frame. Make sure to {@link PooledDeserializationResult#release()} it.
+     */
+    public @Nullable PooledDeserializationResult deserialize(ByteBuffer in, @NonNull BufferPool pool) {
+        Scratch scratch = this.scratch.get();
+        FrameHeader header = scratch.header;
+
+        int start = this.decodeFrame(in, header, scratch, pool, true);
+        if (start == -1) return null;
+
+        PooledBuffer payload = header.payloadLease; // Only set for compressed frames.
+        header.payloadLease = null;
+
+        if (payload == null) {
+            payload = pool.lease(header.payloadLength);
+            if (in.hasArray()) {
+                System.arraycopy(in.array(), in.arrayOffset() + start + header.headerLength, payload.array(), 0, header.payloadLength);
+            } else {
+                region(in, start + header.headerLength, header.payloadLength).get(payload.array(), 0, header.payloadLength);
+            }
+        }
+        String extendedId = this.decodeExtendedId(scratch, in, start + header.extendedIdOffset, header.extendedIdLength);
+
+        PooledDeserializationResult result = pool.leaseResult();
+        result.init(header.flags, header.packetId, extendedId, header.timestamp, payload, header.discardedBytes);
+        return result;
+    }
+
+    /**
+     * Like {@link #deserialize(ByteBuffer)}, except that only the header is
+     * validated up front. The body CRC, payload and extended ID are left for the
+     * caller to ask for, see {@link LazyDeserializationResult}. Note that as the
+     * body hasn't been checked, a frame with a corrupt body is consumed as-is
+     * instead of being skipped over.
+     * 
+     * @return the frame, or null if the buffer does not contain a complete frame.
+     */
+    public @Nullable LazyDeserializationResult deserializeLazy(ByteBuffer in) {
+        Scratch scratch = this.scratch.get();
+        FrameHeader header = scratch.header;
+
+        PacketIOListener listener = this.listener;
+        long startNanos = listener == null ? 0 : System.nanoTime();
+
+        int start = this.decodeFrame(in, header, scratch, null, false);
+        if (start == -1) return null;
+
+        int frameLength = header.headerLength + header.payloadLength;
+        if (listener != null) listener.onFrameDecoded(header.packetId, frameLength, System.nanoTime() - startNanos);
+
+        return new LazyDeserializationResult(
+            this,
+            region(in, start, frameLength).slice().asReadOnlyBuffer(),
+            header.flags,
+            header.packetId,
+            header.timestamp,
+            header.discardedBytes,
+            header.payloadLength,
+            header.extendedIdOffset,
+            header.extendedIdLength,
+            header.headerLength,
+            header.bodyCrc
+        );
+    }
+
+    /**
+     * Finds the next frame in the given buffer that has a valid header, without
+     * verifying (or decompressing) its body. This allows a stream to be split into
+     * frames on one thread, with the more expensive
+     * {@link #deserialize(ByteBuffer)} happening elsewhere. The buffer's position
+     * is handled exactly like in {@link #deserialize(ByteBuffer)}.
+     * 
+     * @return a read-only view of the whole frame, or null if the buffer does not
+     *         contain a complete frame.
+     */
+    public @Nullable ByteBuffer nextFrame(ByteBuffer in) {
+        Scratch scratch = this.scratch.get();
+        FrameHeader header = scratch.header;
+
+        int start = this.decodeFrame(in, header, scratch, null, false);
+        if (start == -1) return null;
+
+        return region(in, start, header.headerLength + header.payloadLength).slice().asReadOnlyBuffer();
+    }
+
+    /**
+     * @return the packet ID of a frame returned by {@link #nextFrame(ByteBuffer)}.
+     */
+    public static int peekPacketId(ByteBuffer frame) {
+        return frame.getInt(frame.position() + OFFSET_ID);
     }
 
     /**
      * @return <IO Flags, Packet ID, Packet Body>
      */
     public DeserializationResult deserialize(InputStream in) throws IOException {
+        Scratch scratch = this.scratch.get();
+        FrameHeader header = scratch.header;
+
+        this.readFrame(in, scratch, null);
+
+        byte[] payload = header.payloadArray;
+        header.payloadArray = null;
+
+        return new DeserializationResult(
+            new Flags(header.flags),
+            header.packetId,
+            this.decodeExtendedId(scratch, scratch.headerBuffer, header.extendedIdOffset, header.extendedIdLength),
+            header.timestamp,
+            payload,
+            ByteBuffer.wrap(payload).asReadOnlyBuffer(),
+            header.discardedBytes
+        );
+    }
+
+    /**
+     * Reads the next frame, with the payload going into a buffer leased from the
+     * pool. Behaves exactly like {@link #deserialize(InputStream)} otherwise.
+     * 
+     * @return the decoded frame. Make sure to
+     *         {@link PooledDeserializationResult#release()} it.
+     */
+    public PooledDeserializationResult deserialize(InputStream in, @NonNull BufferPool pool) throws IOException {
+        Scratch scratch = this.scratch.get();
+        FrameHeader header = scratch.header;
+
+        this.readFrame(in, scratch, pool);
+
+        PooledBuffer payload = header.payloadLease;
+        header.payloadLease = null;
+
+        PooledDeserializationResult result = pool.leaseResult();
+        result.init(
+            header.flags,
+            header.packetId,
+            this.decodeExtendedId(scratch, scratch.headerBuffer, header.extendedIdOffset, header.extendedIdLength),
+            header.timestamp,
+            payload,
+            header.discardedBytes
+        );
+        return result;
+    }
+
+    /**
+     * Finds and validates the next complete frame in the buffer. On success the
+     * header is filled in and the buffer's position is advanced past the frame.
+     * Compressed payloads are inflated like in {@link #decompress}, the payload
+     * is left in the buffer otherwise.
+     * 
+     * @param  verifyBody whether to check the body CRC and inflate compressed
+     *                    payloads, or to only validate the header.
+     * 
+     * @return            the start of the frame, or -1 if more data is needed.
+     */
+    private int decodeFrame(ByteBuffer in, FrameHeader header, Scratch scratch, @Nullable BufferPool pool, boolean verifyBody) {
+        int initialPosition = in.position();
+        PacketIOListener listener = this.listener;
+        long startNanos = listener == null ? 0 : System.nanoTime();
+
+        while (true) {
+            int start = MagicScanner.indexOf(in, in.position(), in.limit());
+
+            if (start == -1) {
+                // Keep the tail around, it may be the start of a magic.
+                in.position(Math.max(in.position(), in.limit() - (headerMagic.length - 1)));
+                if (listener != null && in.position() > initialPosition) listener.onBytesSkipped(in.position() - initialPosition);
+                return -1;
+            }
+
+            in.position(start);
+            this.logger.debug("Found start of packet!");
+
+            int headerLength = this.decodeHeader(in, start, in.limit(), header, scratch);
+
+            if (headerLength == HEADER_NEED_MORE_DATA) {
+                if (listener != null && start > initialPosition) listener.onBytesSkipped(start - initialPosition);
+                return -1;
+            } else if (headerLength == HEADER_CORRUPT) {
+                in.position(start + headerMagic.length); // Restart the search.
+                continue;
+            }
+
+            if (in.remaining() < headerLength + header.payloadLength) {
+                if (listener != null && start > initialPosition) listener.onBytesSkipped(start - initialPosition);
+                return -1; // Need more data.
+            }
+
+            if (verifyBody && !this.checkBodyCrc(header, in, start + headerLength, scratch)) {
+                in.position(start + headerMagic.length); // Restart the search.
+                continue;
+            }
+
+            if (verifyBody &&
+                (header.flags & (1 << FLAG_COMPRESSED)) != 0 &&
+                !this.decompress(header, region(in, start + headerLength, header.payloadLength), scratch, pool)) {
+                in.position(start + headerMagic.length); // Restart the search.
+                continue;
+            }
+
+            in.position(start + headerLength + header.payloadLength);
+            header.discardedBytes = start - initialPosition;
+
+            // Success
+            this.logger.debug("Successfully decoded packet.");
+            if (listener != null) {
+                if (header.discardedBytes > 0) listener.onBytesSkipped(header.discardedBytes);
+                if (verifyBody) listener.onFrameDecoded(header.packetId, headerLength + header.payloadLength, System.nanoTime() - startNanos);
+            }
+            return start;
+        }
+    }
+
+    /**
+     * Searches for and reads the next valid frame. The header is left in the
+     * scratch's header buffer, and the payload goes into either a fresh array
+     * ({@link FrameHeader#payloadArray}) or a lease from the pool
+     * ({@link FrameHeader#payloadLease}).
+     */
+    private void readFrame(InputStream in, Scratch scratch, @Nullable BufferPool pool) throws IOException {
         if (!in.markSupported()) throw new IOException("InputStream#mark is unsupported, please pass in a buffered input stream to fix this.");
 
-        int succeedingPosition = 0;
+        byte[] block = scratch.scanBlock;
+        long discarded = 0;
+
         while (true) {
-            int read = in.read();
+            // Scan a whole block at a time, then rewind to wherever the magic was.
+            in.mark(block.length);
+            int read = readAtLeast(in, block, headerMagic.length);
 
-            if (read == -1) {
+            if (read < headerMagic.length) {
                 throw new IOException("End of stream reached whilst searching for packet.");
             }
 
-            byte expectedMagic = headerMagic[succeedingPosition];
-
-            if (expectedMagic == read) {
-                succeedingPosition++;
-
-                if (succeedingPosition == headerMagic.length) {
-                    try {
-                        this.logger.debug("Found start of packet!");
-                        DeserializationResult result = deserializePacket(in);
-
-                        if (result == null) {
-                            succeedingPosition = 0; // Corrupt packet, restart the search.
-                        } else {
-                            return result;
-                        }
-                    } catch (IOException e) {
-                        in.reset(); // Important.
-                        throw e;
-                    }
-                }
-            } else {
+            int start = MagicScanner.indexOf(block, 0, read);
+            in.reset();
+
+            if (start == -1) {
+                // Keep the tail around, it may be the start of a magic.
+                int skip = read - (headerMagic.length - 1);
+                in.skipNBytes(skip);
+                discarded += skip;
                 this.logger.debug("Search failed, whatever.");
-                succeedingPosition = 0; // Restart the search.
+                if (this.listener != null) this.listener.onBytesSkipped(skip);
+                continue;
+            }
+
+            in.skipNBytes(start + headerMagic.length);
+            discarded += start;
+
+            PacketIOListener listener = this.listener;
+            if (listener != null && start > 0) listener.onBytesSkipped(start);
+            long startNanos = listener == null ? 0 : System.nanoTime();
+
+            try {
+                this.logger.debug("Found start of packet!");
+
+                if (this.readPacket(in, scratch, pool)) {
+                    FrameHeader header = scratch.header;
+                    header.discardedBytes = discarded;
+                    if (listener != null) listener.onFrameDecoded(header.packetId, header.headerLength + header.payloadLength, System.nanoTime() - startNanos);
+                    return;
+                } else {
+                    discarded += headerMagic.length; // Corrupt packet, restart the search.
+                    if (listener != null) listener.onBytesSkipped(headerMagic.length);
+                }
+            } catch (IOException e) {
+                in.reset(); // Important.
+                throw e;
             }
         }
     }
 
-    private DeserializationResult deserializePacket(InputStream in) throws IOException {
+    /**
+     * @return true if the packet was valid, false if it was corrupt (and the
+     *         stream has been rewound to just after the magic).
+     */
+    private boolean readPacket(InputStream in, Scratch scratch, @Nullable BufferPool pool) throws IOException {
         // Header Magic has already been consumed irreversibly, but we still want to be
         // able to pick up where we left off.
-        in.mark(bodyMaxLength + headerLength - headerMagic.length);
+        in.mark(frameMaxLength - headerMagic.length);
+
+        // We read the header into a buffer laid out exactly like the frame, that way we
+        // can share the parsing with the ByteBuffer path.
+        FrameHeader header = scratch.header;
+        int headerBytesLength = readHeader(in, scratch.headerBytes);
+        int headerLength = this.decodeHeader(scratch.headerBuffer, 0, headerBytesLength, header, scratch);
+
+        if (headerLength < 0) {
+            in.reset(); // Important.
+            return false;
+        }
+
+        // Body reading, compressed payloads only need to stick around until they're
+        // inflated.
+        boolean compressed = (header.flags & (1 << FLAG_COMPRESSED)) != 0;
+        byte[] payload;
+        PooledBuffer lease = null;
+        if (compressed) {
+            payload = scratch.compressBuffer;
+        } else if (pool == null) {
+            payload = new byte[header.payloadLength];
+        } else {
+            lease = pool.lease(header.payloadLength);
+            payload = lease.array();
+        }
+
+        try {
+            guaranteedRead(payload, 0, header.payloadLength, in);
+        } catch (IOException e) {
+            if (lease != null) lease.release();
+            throw e;
+        }
+
+        if (!this.checkBodyCrc(header, payload, 0, scratch)) {
+            if (lease != null) lease.release();
+            in.reset(); // Important.
+            return false;
+        }
+
+        if (compressed) {
+            if (!this.decompress(header, ByteBuffer.wrap(payload, 0, header.payloadLength), scratch, pool)) {
+                in.reset(); // Important.
+                return false;
+            }
+        } else {
+            header.payloadArray = payload;
+            header.payloadLease = lease;
+        }
+
+        // Skip over this packet, makes subsequent searches faster.
+        in.reset();
+        in.skipNBytes(headerLength - headerMagic.length + header.payloadLength);
+
+        // Success
+        this.logger.debug("Successfully decoded packet.");
+        return true;
+    }
+
+    /**
+     * Reads until at least {@code min} bytes are in the buffer, or the end of
+     * stream is reached.
+     * 
+     * @return the amount of bytes read.
+     */
+    private static int readAtLeast(InputStream in, byte[] buf, int min) throws IOException {
+        int offset = 0;
+        while (offset < min) {
+            int read = in.read(buf, offset, buf.length - offset);
+            if (read == -1) break;
+            offset += read;
+        }
+        return offset;
+    }
+
+    /**
+     * Reads the rest of the header (everything after the magic) into the buffer.
+     * 
+     * @return the amount of bytes in the buffer.
+     */
+    private static int readHeader(InputStream in, byte[] buf) throws IOException {
+        int offset = headerMagic.length;
 
         // Flags
-        byte[] flagsBytes = guaranteedRead(2, in);
-        Flags flags = new Flags(BigEndianIOUtil.bytesToShort(flagsBytes));
-        this.logger.trace("flags=%s", flags.toString(16));
+        guaranteedRead(buf, offset, 2, in);
+        offset += 2;
 
-        // ID
-        byte[] idBytes = guaranteedRead(4, in);
-        int packetId = BigEndianIOUtil.bytesToInt(idBytes);
-        this.logger.trace("packetId=%d", packetId);
+        boolean compact = (buf[OFFSET_FLAGS + 1] & (1 << FLAG_COMPACT_HEADER)) != 0;
+        if (!compact) {
+            guaranteedRead(buf, offset, headerLength - offset, in);
+            return headerLength;
+        }
 
-        // Extended ID
-        byte[] extendedIdBytes = guaranteedRead(255, in);
-        String extendedId = null;
-        {
-            int actualLength = 0;
-            for (byte b : extendedIdBytes) {
-                if (b == 0) {
-                    break;
-                }
-                actualLength++;
+        // ID + Extended ID Length
+        guaranteedRead(buf, offset, 5, in);
+        offset += 5;
+
+        // Extended ID + Timestamp
+        int extendedIdLength = buf[OFFSET_COMPACT_EXTENDED_ID_LENGTH] & 0xFF;
+        guaranteedRead(buf, offset, extendedIdLength + 8, in);
+        offset += extendedIdLength + 8;
+
+        // Payload Length, a malformed one gets caught by decodeHeader().
+        for (int i = 0; i < 3; i++) {
+            guaranteedRead(buf, offset, 1, in);
+            if ((buf[offset++] & 0x80) == 0) break;
+        }
+
+        // CRC32 (Header) + CRC32 (Body)
+        guaranteedRead(buf, offset, 8, in);
+        offset += 8;
+
+        return offset;
+    }
+
+    /**
+     * Parses and validates the header starting at {@code start}, offsets in the
+     * header are relative to {@code start}.
+     * 
+     * @return the length of the header, {@link #HEADER_NEED_MORE_DATA} or
+     *         {@link #HEADER_CORRUPT}.
+     */
+    private int decodeHeader(ByteBuffer in, int start, int limit, FrameHeader header, Scratch scratch) {
+        limit -= start;
+        if (limit < OFFSET_ID) return HEADER_NEED_MORE_DATA;
+
+        // Flags
+        header.flags = in.getShort(start + OFFSET_FLAGS) & 0xFFFF;
+        boolean tracing = this.logger.getCurrentLevel().canLog(LogLevel.TRACE); // Avoid the formatting and boxing otherwise.
+        if (tracing) this.logger.trace("flags=%s", new Flags(header.flags).toString(16));
+
+        int offset;
+        if ((header.flags & (1 << FLAG_COMPACT_HEADER)) != 0) {
+            if (limit < OFFSET_COMPACT_EXTENDED_ID) return HEADER_NEED_MORE_DATA;
+
+            // ID
+            header.packetId = in.getInt(start + OFFSET_ID);
+
+            // Extended ID
+            header.extendedIdOffset = OFFSET_COMPACT_EXTENDED_ID;
+            header.extendedIdLength = in.get(start + OFFSET_COMPACT_EXTENDED_ID_LENGTH) & 0xFF;
+            offset = OFFSET_COMPACT_EXTENDED_ID + header.extendedIdLength;
+
+            // Timestamp
+            if (limit < offset + 8) return HEADER_NEED_MORE_DATA;
+            header.timestamp = in.getLong(start + offset);
+            offset += 8;
+
+            // Payload Length
+            int varIntLength = VarIntIOUtil.varIntLength(in, start + offset, start + limit);
+            if (varIntLength == -1) return HEADER_NEED_MORE_DATA;
+            if (varIntLength == -2) {
+                this.logger.severe("Corrupt packet received! (Malformed payload length)");
+                if (this.listener != null) this.listener.onHeaderCorrupt();
+                return HEADER_CORRUPT;
             }
+            header.payloadLength = VarIntIOUtil.getVarInt(in, start + offset);
+            offset += varIntLength;
+        } else {
+            if (limit < headerLength) return HEADER_NEED_MORE_DATA;
 
-            if (actualLength > 0) {
-                byte[] actualBytes = new byte[actualLength];
-                System.arraycopy(extendedIdBytes, 0, actualBytes, 0, actualLength);
-                extendedId = new String(actualBytes, StandardCharsets.UTF_8);
+            // ID
+            header.packetId = in.getInt(start + OFFSET_ID);
+
+            // Extended ID
+            header.extendedIdOffset = OFFSET_EXTENDED_ID;
+            header.extendedIdLength = 0;
+            while ((header.extendedIdLength < 255) && (in.get(start + OFFSET_EXTENDED_ID + header.extendedIdLength) != 0)) {
+                header.extendedIdLength++;
             }
+
+            // Timestamp
+            header.timestamp = in.getLong(start + OFFSET_TIMESTAMP);
+
+            // Payload Length
+            header.payloadLength = in.getShort(start + OFFSET_PAYLOAD_LENGTH);
+            offset = OFFSET_HEADER_CRC;
         }
 
-        // Timestamp
-        byte[] timestampBytes = guaranteedRead(8, in);
-        long timestamp = BigEndianIOUtil.bytesToLong(timestampBytes);
-        this.logger.trace("timestamp=%d", timestamp);
+        if (tracing) {
+            this.logger.trace("packetId=%d", header.packetId);
+            this.logger.trace("timestamp=%d", header.timestamp);
+            this.logger.trace("payloadLength=%d", header.payloadLength);
+        }
 
-        // Payload Length
-        byte[] payloadLengthBytes = guaranteedRead(2, in);
-        short payloadLength = BigEndianIOUtil.bytesToShort(payloadLengthBytes);
-        this.logger.trace("payloadLength=%d", payloadLength);
+        if (limit < offset + 8) return HEADER_NEED_MORE_DATA;
 
         // Check the header CRC.
-        byte[] headerCrcBytes = guaranteedRead(4, in);
-        long headerCrc = Integer.toUnsignedLong(BigEndianIOUtil.bytesToInt(headerCrcBytes));
+        long headerCrc = Integer.toUnsignedLong(in.getInt(start + offset));
 
-        CRC32 computedHeaderCrc = new CRC32();
-        computedHeaderCrc.update(flagsBytes);
-        computedHeaderCrc.update(idBytes);
-        computedHeaderCrc.update(extendedIdBytes);
-        computedHeaderCrc.update(timestampBytes);
-        computedHeaderCrc.update(payloadLengthBytes);
+        Checksum computedHeaderCrc = scratch.checksum(header.flags);
+        if (computedHeaderCrc == null) {
+            this.logger.severe("Corrupt packet received! (Invalid checksum type)");
+            if (this.listener != null) this.listener.onHeaderCorrupt();
+            return HEADER_CORRUPT;
+        }
+        updateChecksum(computedHeaderCrc, in, start + OFFSET_FLAGS, offset - OFFSET_FLAGS);
 
         long computedHeaderCrcValue = computedHeaderCrc.getValue();
-        this.logger.debug("(Header) Read CRC: %d, Computed CRC: %d", headerCrc, computedHeaderCrcValue);
+        if (this.logger.getCurrentLevel().canLog(LogLevel.DEBUG)) {
+            this.logger.debug("(Header) Read CRC: %d, Computed CRC: %d", headerCrc, computedHeaderCrcValue);
+        }
 
-        if (headerCrc != computedHeaderCrcValue) {
+        if ((headerCrc != computedHeaderCrcValue) || (header.payloadLength < 0) || (header.payloadLength > bodyMaxLength)) {
             this.logger.severe("Corrupt packet received! (Header CRC failed)");
-            in.reset(); // Important.
-            return null;
+            if (this.listener != null) this.listener.onHeaderCorrupt();
+            return HEADER_CORRUPT;
         }
 
-        // Body reading
-        byte[] bodyCrcBytes = guaranteedRead(4, in);
-        long bodyCrc = Integer.toUnsignedLong(BigEndianIOUtil.bytesToInt(bodyCrcBytes));
+        header.bodyCrc = Integer.toUnsignedLong(in.getInt(start + offset + 4));
+        header.headerLength = offset + 8;
 
-        byte[] payload = guaranteedRead(payloadLength, in);
+        return header.headerLength;
+    }
 
-        // Check the body CRC.
-        CRC32 computedBodyCrc = new CRC32();
-        computedBodyCrc.update(payload);
+    /**
+     * @return whether or not the payload should be accepted.
+     */
+    private boolean checkBodyCrc(FrameHeader header, ByteBuffer in, int payloadOffset, Scratch scratch) {
+        Checksum computedBodyCrc = scratch.checksum(header.flags);
+        updateChecksum(computedBodyCrc, in, payloadOffset, header.payloadLength);
+        return this.checkBodyCrc(header, computedBodyCrc.getValue());
+    }
 
-        long computedBodyCrcValue = computedBodyCrc.getValue();
-        this.logger.debug("(Body) Read CRC: %d, Computed CRC: %d", bodyCrc, computedBodyCrcValue);
+    /**
+     * @return whether or not the payload should be accepted.
+     */
+    private boolean checkBodyCrc(FrameHeader header, byte[] in, int payloadOffset, Scratch scratch) {
+        Checksum computedBodyCrc = scratch.checksum(header.flags);
+        computedBodyCrc.update(in, payloadOffset, header.payloadLength);
+        return this.checkBodyCrc(header, computedBodyCrc.getValue());
+    }
 
-        if (bodyCrc != computedBodyCrcValue) {
-            if (flags.get(FLAG_IGNORE_PAYLOAD_CRC)) {
-                this.logger.warn("Body CRC failed, continuing anyway (FLAG_IGNORE_BODY_CRC).");
-            } else {
-                this.logger.severe("Corrupt packet received! (Body CRC failed)");
-                in.reset(); // Important.
-                return null;
-            }
+    private boolean checkBodyCrc(FrameHeader header, long computedBodyCrcValue) {
+        if (this.logger.getCurrentLevel().canLog(LogLevel.DEBUG)) {
+            this.logger.debug("(Body) Read CRC: %d, Computed CRC: %d", header.bodyCrc, computedBodyCrcValue);
         }
 
-        // Skip over this packet, makes subsequent searches faster.
-        in.reset();
-        in.skipNBytes(headerLength - headerMagic.length + payloadLength);
-
-        // Success
-        this.logger.debug("Successfully decoded packet.");
-        return new DeserializationResult(
-            flags,
-            packetId,
-            extendedId,
-            timestamp,
-            payload
-        );
+        if (header.bodyCrc == computedBodyCrcValue) {
+            return true;
+        } else if ((header.flags & (1 << FLAG_IGNORE_PAYLOAD_CRC)) != 0) {
+            this.logger.warn("Body CRC failed, continuing anyway (FLAG_IGNORE_BODY_CRC).");
+            if (this.listener != null) this.listener.onBodyCrcIgnored();
+            return true;
+        } else {
+            this.logger.severe("Corrupt packet received! (Body CRC failed)");
+            if (this.listener != null) this.listener.onBodyCorrupt();
+            return false;
+        }
     }
 
     public static byte[] guaranteedRead(int len, InputStream in) throws IOException {
         byte[] buf = new byte[len];
-        int offset = 0;
-        while (offset < len) {
-            int read = in.read(buf, offset, len - offset);
+        guaranteedRead(buf, 0, len, in);
+        return buf;
+    }
+
+    public static void guaranteedRead(byte[] buf, int offset, int len, InputStream in) throws IOException {
+        int end = offset + len;
+        while (offset < end) {
+            int read = in.read(buf, offset, end - offset);
             if (read == -1) {
                 throw new IOException("End of stream reached whilst reading into buffer.");
             } else {
                 offset += read;
             }
         }
+    }
 
-        return buf;
+    @Nullable String decodeExtendedId(ByteBuffer buf, int offset, int length) {
+        return this.decodeExtendedId(this.scratch.get(), buf, offset, length);
     }
 
-    @AllArgsConstructor(access = AccessLevel.PRIVATE)
+    /**
+     * @return whether or not the payload should be accepted.
+     */
+    boolean checkBody(int flags, long bodyCrc, ByteBuffer payload) {
+        Scratch scratch = this.scratch.get();
+        FrameHeader header = scratch.header;
+        header.flags = flags;
+        header.bodyCrc = bodyCrc;
+        header.payloadLength = payload.remaining();
+        return this.checkBodyCrc(header, payload, payload.position(), scratch);
+    }
+
+    /**
+     * @return the inflated payload, or null if it is malformed.
+     */
+    @Nullable byte[] inflate(int flags, ByteBuffer payload) {
+        Scratch scratch = this.scratch.get();
+        FrameHeader header = scratch.header;
+        header.flags = flags;
+
+        if (!this.decompress(header, payload, scratch, null)) return null;
+
+        byte[] inflated = header.payloadArray;
+        header.payloadArray = null;
+        return inflated;
+    }
+
+    private @Nullable String decodeExtendedId(Scratch scratch, ByteBuffer buf, int offset, int length) {
+        if (this.extendedIdCacheEnabled) {
+            return scratch.extendedIds.decode(buf, offset, length);
+        } else if (length == 0) {
+            return null;
+        } else if (buf.hasArray()) {
+            return new String(buf.array(), buf.arrayOffset() + offset, length, StandardCharsets.UTF_8);
+        } else {
+            byte[] bytes = new byte[length];
+            region(buf, offset, length).get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * @return a view of {@code buf[offset, offset + length)}, independent of the
+     *         buffer's position and limit.
+     */
+    private static ByteBuffer region(ByteBuffer buf, int offset, int length) {
+        ByteBuffer dup = buf.duplicate();
+        dup.limit(offset + length).position(offset);
+        return dup;
+    }
+
+    /**
+     * Feeds {@code buf[offset, offset + length)} to the checksum, without
+     * allocating for heap buffers.
+     */
+    private static void updateChecksum(Checksum checksum, ByteBuffer buf, int offset, int length) {
+        if (buf.hasArray()) {
+            checksum.update(buf.array(), buf.arrayOffset() + offset, length);
+        } else {
+            checksum.update(region(buf, offset, length));
+        }
+    }
+
+    /**
+     * The parsed fields of a header, shared between the decoding paths.
+     */
+    private static class FrameHeader {
+        private int flags;
+        private int packetId;
+        private int extendedIdOffset;
+        private int extendedIdLength;
+        private long timestamp;
+        private int payloadLength;
+        private long bodyCrc;
+        private int headerLength;
+        private long discardedBytes;
+
+        // Only used by the InputStream path and for compressed payloads.
+        private byte[] payloadArray;
+        private PooledBuffer payloadLease;
+    }
+
+    /**
+     * Used for {@link ChecksumType#NONE}, always produces a value of 0.
+     */
+    private static class NoChecksum implements Checksum {
+        private static final NoChecksum INSTANCE = new NoChecksum();
+
+        @Override
+        public void update(int b) {}
+
+        @Override
+        public void update(byte[] b, int off, int len) {}
+
+        @Override
+        public void update(ByteBuffer buffer) {
+            buffer.position(buffer.limit());
+        }
+
+        @Override
+        public long getValue() {
+            return 0;
+        }
+
+        @Override
+        public void reset() {}
+    }
+
+    /**
+     * Per-thread working memory, so that decoding doesn't have to allocate it
+     * every time whilst still allowing a PacketIO to be shared between threads.
+     */
+    private static class Scratch {
+        private final FrameHeader header = new FrameHeader();
+        private final byte[] headerBytes = new byte[headerMaxLength];
+        private final ByteBuffer headerBuffer = ByteBuffer.wrap(this.headerBytes);
+        private final byte[] scanBlock = new byte[scanBlockSize];
+
+        private final ByteBuffer encodeBuffer = ByteBuffer.wrap(new byte[headerMaxLength + FragmentReassembler.FRAGMENT_HEADER_LENGTH]);
+        private final ByteBuffer fragmentHeader = ByteBuffer.wrap(new byte[FragmentReassembler.FRAGMENT_HEADER_LENGTH]);
+
+        private final byte[] compressBuffer = new byte[bodyMaxLength];
+        private final byte[] packetBuffer = new byte[bodyMaxLength];
+        private final ExtendedIdCache extendedIds = new ExtendedIdCache();
+        private Deflater deflater;
+        private Inflater inflater;
+
+        private final CRC32 crc32 = new CRC32();
+        private final CRC32C crc32c = new CRC32C();
+
+        // Created on first use, as they hold onto native memory.
+        private Deflater deflater() {
+            if (this.deflater == null) this.deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+            return this.deflater;
+        }
+
+        private Inflater inflater() {
+            if (this.inflater == null) this.inflater = new Inflater(true);
+            return this.inflater;
+        }
+
+        /**
+         * @return a freshly reset checksum for the type signalled by the flags, or
+         *         null if the flags are invalid.
+         */
+        private @Nullable Checksum checksum(int flags) {
+            ChecksumType type = ChecksumType.fromFlags(flags);
+            if (type == null) return null;
+
+            switch (type) {
+                case CRC32:
+                    this.crc32.reset();
+                    return this.crc32;
+                case CRC32C:
+                    this.crc32c.reset();
+                    return this.crc32c;
+                default:
+                    return NoChecksum.INSTANCE;
+            }
+        }
+
+        {
+            System.arraycopy(headerMagic, 0, this.headerBytes, 0, headerMagic.length);
+        }
+    }
+
+    @AllArgsConstructor(access = AccessLevel.PACKAGE)
     public static class DeserializationResult {
         public final Flags flags;
         public final int packetId;
         public final String extendedId;
         public final long timestamp;
 
-        public final @ToString.Exclude byte[] payload;
+        /**
+         * The payload, this is null for frames decoded from a {@link ByteBuffer}. Use
+         * {@link #payloadBuffer} if you need to handle both.
+         */
+        public final @Nullable @ToString.Exclude byte[] payload;
+
+        /**
+         * A read-only view of the payload. For frames decoded from a
+         * {@link ByteBuffer} this is a slice of that buffer and is therefore only valid
+         * for as long as the buffer's contents are left alone.
+         */
+        public final @ToString.Exclude ByteBuffer payloadBuffer;
+
+        /**
+         * How many bytes were skipped over (junk and corrupt frames) whilst searching
+         * for this frame.
+         */
+        public final long discardedBytes;
 
         @Override
         public String toString() {
@@ -293,7 +1335,7 @@ public class PacketIO {
                 this.packetId,
                 this.extendedId,
                 this.timestamp,
-                this.payload.length
+                this.payloadBuffer.limit()
             );
         }
 
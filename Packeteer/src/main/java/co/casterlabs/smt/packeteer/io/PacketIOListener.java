@@ -0,0 +1,62 @@
+/*
+ * Copyright 2023 Casterlabs
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+package co.casterlabs.smt.packeteer.io;
+
+/**
+ * Receives low level events from a {@link PacketIO}, see
+ * {@link PacketIO#setListener(PacketIOListener)}. All methods default to doing
+ * nothing.
+ * 
+ * @implNote Methods are called inline on whichever thread is encoding or
+ *           decoding, possibly several at once, so implementations must be
+ *           thread safe and fast.
+ * 
+ * @see      co.casterlabs.smt.packeteer.metrics.PacketIOMetrics
+ */
+public interface PacketIOListener {
+
+    /**
+     * @param frameLength the length of the frame on the wire, header included.
+     */
+    default void onFrameEncoded(int packetId, int frameLength) {}
+
+    /**
+     * @param frameLength the length of the frame on the wire, header included.
+     * @param decodeNanos how long it took to find and decode the frame. For
+     *                    streams this includes the time spent reading the rest of
+     *                    the frame after its magic.
+     */
+    default void onFrameDecoded(int packetId, int frameLength, long decodeNanos) {}
+
+    /**
+     * A header failed its CRC or was otherwise malformed.
+     */
+    default void onHeaderCorrupt() {}
+
+    /**
+     * A body failed its CRC or (for compressed frames) could not be inflated.
+     */
+    default void onBodyCorrupt() {}
+
+    /**
+     * A body failed its CRC but was accepted anyway because of
+     * {@link PacketIO#FLAG_IGNORE_PAYLOAD_CRC}.
+     */
+    default void onBodyCrcIgnored() {}
+
+    /**
+     * Bytes were skipped over whilst searching for the next frame, either garbage
+     * or the remains of a corrupt frame.
+     */
+    default void onBytesSkipped(long count) {}
+
+}
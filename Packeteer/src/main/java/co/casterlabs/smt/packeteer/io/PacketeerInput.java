@@ -11,32 +11,73 @@
  */
 package co.casterlabs.smt.packeteer.io;
 
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.charset.StandardCharsets;
 
-import lombok.RequiredArgsConstructor;
+import org.jetbrains.annotations.Nullable;
 
-@RequiredArgsConstructor
+import lombok.NonNull;
+
+/**
+ * Decodes primitives in place from a {@link ByteBuffer} or array. Streams are
+ * read into a small scratch array, exactly as many bytes as each read needs so
+ * that the stream can be shared.
+ */
 public class PacketeerInput {
-    private final InputStream stream;
+    private final @Nullable InputStream stream;
+    private final ByteBuffer buffer;
+
+    public PacketeerInput(@NonNull InputStream stream) {
+        this.stream = stream;
+        this.buffer = ByteBuffer.allocate(8);
+    }
+
+    public PacketeerInput(@NonNull byte[] bytes) {
+        this(ByteBuffer.wrap(bytes));
+    }
+
+    public PacketeerInput(@NonNull byte[] bytes, int offset, int length) {
+        this(ByteBuffer.wrap(bytes, offset, length));
+    }
+
+    /**
+     * Reads from the buffer's position, advancing it. The buffer must be
+     * big-endian.
+     */
+    public PacketeerInput(@NonNull ByteBuffer buffer) {
+        if (buffer.order() != ByteOrder.BIG_ENDIAN) throw new IllegalArgumentException("Buffer must be big-endian.");
+        this.stream = null;
+        this.buffer = buffer;
+    }
+
+    /* -------- */
+    /* Fixed    */
+    /* -------- */
 
     public byte readByte() throws IOException {
-        return (byte) this.stream.read();
+        if (this.stream == null) {
+            return this.require(1).get();
+        }
+
+        int read = this.stream.read();
+        if (read == -1) throw new EOFException("End of stream reached whilst reading a byte.");
+        return (byte) read;
     }
 
     public byte[] readBytes() throws IOException {
-        int len = this.readInt();
-
-        return PacketIO.guaranteedRead(len, this.stream);
+        return this.readRaw(this.readInt());
     }
 
     public int available() throws IOException {
-        return this.stream.available();
+        return this.stream == null ? this.buffer.remaining() : this.stream.available();
     }
 
     public String readString() throws IOException {
-        return new String(this.readBytes(), StandardCharsets.UTF_8);
+        return this.readUtf8(this.readInt());
     }
 
     public void readNull() throws IOException {
@@ -44,21 +85,15 @@ public class PacketeerInput {
     }
 
     public long readLong() throws IOException {
-        byte[] bytes = PacketIO.guaranteedRead(8, this.stream);
-
-        return BigEndianIOUtil.bytesToLong(bytes);
+        return this.require(8).getLong();
     }
 
     public int readInt() throws IOException {
-        byte[] bytes = PacketIO.guaranteedRead(4, this.stream);
-
-        return BigEndianIOUtil.bytesToInt(bytes);
+        return this.require(4).getInt();
     }
 
     public short readShort() throws IOException {
-        byte[] bytes = PacketIO.guaranteedRead(2, this.stream);
-
-        return BigEndianIOUtil.bytesToShort(bytes);
+        return this.require(2).getShort();
     }
 
     public boolean readBoolean() throws IOException {
@@ -79,4 +114,109 @@ public class PacketeerInput {
         return Float.intBitsToFloat(intBits);
     }
 
+    /* -------- */
+    /* Varint   */
+    /* -------- */
+
+    /**
+     * @see PacketeerOutput#writeVarInt(int)
+     */
+    public int readVarInt() throws IOException {
+        int result = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            byte b = this.readByte();
+            result |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return result;
+        }
+        throw new IOException("Malformed varint, too long.");
+    }
+
+    /**
+     * @see PacketeerOutput#writeSignedVarInt(int)
+     */
+    public int readSignedVarInt() throws IOException {
+        return VarIntIOUtil.unZigZag(this.readVarInt());
+    }
+
+    /**
+     * @see PacketeerOutput#writeVarLong(long)
+     */
+    public long readVarLong() throws IOException {
+        long result = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = this.readByte();
+            result |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return result;
+        }
+        throw new IOException("Malformed varlong, too long.");
+    }
+
+    /**
+     * @see PacketeerOutput#writeSignedVarLong(long)
+     */
+    public long readSignedVarLong() throws IOException {
+        return VarIntIOUtil.unZigZag(this.readVarLong());
+    }
+
+    /**
+     * @see PacketeerOutput#writeVarBytes(byte[])
+     */
+    public byte[] readVarBytes() throws IOException {
+        return this.readRaw(this.readVarInt());
+    }
+
+    /**
+     * @see PacketeerOutput#writeVarString(String)
+     */
+    public String readVarString() throws IOException {
+        return this.readUtf8(this.readVarInt());
+    }
+
+    /**
+     * Reads exactly the given amount of bytes, without a length prefix.
+     */
+    public byte[] readRaw(int length) throws IOException {
+        if (length < 0) throw new IOException("Negative length: " + length);
+
+        if (this.stream != null) {
+            return PacketIO.guaranteedRead(length, this.stream);
+        }
+
+        byte[] bytes = new byte[length];
+        this.require(length).get(bytes);
+        return bytes;
+    }
+
+    /* -------- */
+    /* Internal */
+    /* -------- */
+
+    private String readUtf8(int length) throws IOException {
+        if (this.stream != null || !this.buffer.hasArray()) {
+            return new String(this.readRaw(length), StandardCharsets.UTF_8);
+        }
+
+        if (length < 0) throw new IOException("Negative length: " + length);
+        this.require(length);
+
+        String str = new String(this.buffer.array(), this.buffer.arrayOffset() + this.buffer.position(), length, StandardCharsets.UTF_8);
+        this.buffer.position(this.buffer.position() + length);
+        return str;
+    }
+
+    /**
+     * For buffers this just checks that enough bytes remain, for streams the bytes
+     * are read into the scratch buffer.
+     */
+    private ByteBuffer require(int length) throws IOException {
+        if (this.stream == null) {
+            if (this.buffer.remaining() < length) throw new EOFException("End of payload reached, needed " + length + " bytes but only " + this.buffer.remaining() + " remain.");
+        } else {
+            this.buffer.clear();
+            PacketIO.guaranteedRead(this.buffer.array(), 0, length, this.stream);
+            this.buffer.limit(length);
+        }
+        return this.buffer;
+    }
+
 }
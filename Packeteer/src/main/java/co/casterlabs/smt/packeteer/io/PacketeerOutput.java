@@ -13,29 +13,111 @@ package co.casterlabs.smt.packeteer.io;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.charset.StandardCharsets;
 
+import org.jetbrains.annotations.Nullable;
+
 import lombok.NonNull;
-import lombok.RequiredArgsConstructor;
 
-@RequiredArgsConstructor
+/**
+ * Encodes primitives in place, either into a {@link ByteBuffer}, an internal
+ * array that grows as needed, or a small scratch array that's then handed to an
+ * {@link OutputStream}.
+ */
 public class PacketeerOutput {
-    private final OutputStream stream;
+    private static final int DEFAULT_CAPACITY = 64;
+
+    private final @Nullable OutputStream stream;
+    private final boolean growable;
+    private ByteBuffer buffer;
+
+    /**
+     * Writes straight through to the stream, nothing is held back so there's no
+     * need to flush.
+     */
+    public PacketeerOutput(@NonNull OutputStream stream) {
+        this.stream = stream;
+        this.growable = false;
+        this.buffer = ByteBuffer.allocate(VarIntIOUtil.VARLONG_MAX_LENGTH);
+    }
+
+    /**
+     * Writes into an internal array that grows as needed, use
+     * {@link #toByteArray()} to get the result.
+     */
+    public PacketeerOutput() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @see #PacketeerOutput()
+     */
+    public PacketeerOutput(int initialCapacity) {
+        this.stream = null;
+        this.growable = true;
+        this.buffer = ByteBuffer.allocate(Math.max(initialCapacity, 1));
+    }
+
+    /**
+     * Writes at the buffer's position, advancing it. The buffer must be big-endian.
+     * 
+     * @throws java.nio.BufferOverflowException (on write) if the buffer is too
+     *                                          small.
+     */
+    public PacketeerOutput(@NonNull ByteBuffer buffer) {
+        if (buffer.order() != ByteOrder.BIG_ENDIAN) throw new IllegalArgumentException("Buffer must be big-endian.");
+        this.stream = null;
+        this.growable = false;
+        this.buffer = buffer;
+    }
+
+    /**
+     * @return the amount of bytes written into the internal array.
+     * 
+     * @throws IllegalStateException if this output doesn't use an internal array.
+     */
+    public int size() {
+        if (!this.growable) throw new IllegalStateException("Output isn't backed by an internal array.");
+        return this.buffer.position();
+    }
+
+    /**
+     * @return a copy of the bytes written into the internal array.
+     * 
+     * @throws IllegalStateException if this output doesn't use an internal array.
+     */
+    public byte[] toByteArray() {
+        byte[] bytes = new byte[this.size()];
+        System.arraycopy(this.buffer.array(), this.buffer.arrayOffset(), bytes, 0, bytes.length);
+        return bytes;
+    }
+
+    /* -------- */
+    /* Fixed    */
+    /* -------- */
 
     public PacketeerOutput writeByte(byte b) throws IOException {
-        this.stream.write(b);
-        return this;
+        this.reserve(1).put(b);
+        return this.commit();
     }
 
     public PacketeerOutput writeBytes(byte[] b) throws IOException {
         // SIZE + BYTES...
         this.writeInt(b.length);
-        this.stream.write(b);
-        return this;
+        return this.writeRaw(b);
     }
 
     public PacketeerOutput writeString(@NonNull String str) throws IOException {
-        this.writeBytes(str.getBytes(StandardCharsets.UTF_8));
+        if (this.stream != null) {
+            return this.writeBytes(str.getBytes(StandardCharsets.UTF_8));
+        }
+
+        int length = Utf8IOUtil.utf8Length(str);
+        ByteBuffer buffer = this.reserve(4 + length);
+        buffer.putInt(length);
+        Utf8IOUtil.putUtf8(buffer, str);
         return this;
     }
 
@@ -45,18 +127,18 @@ public class PacketeerOutput {
     }
 
     public PacketeerOutput writeLong(long l) throws IOException {
-        this.stream.write(BigEndianIOUtil.longToBytes(l));
-        return this;
+        this.reserve(8).putLong(l);
+        return this.commit();
     }
 
     public PacketeerOutput writeInt(int i) throws IOException {
-        this.stream.write(BigEndianIOUtil.intToBytes(i));
-        return this;
+        this.reserve(4).putInt(i);
+        return this.commit();
     }
 
     public PacketeerOutput writeShort(short s) throws IOException {
-        this.stream.write(BigEndianIOUtil.shortToBytes(s));
-        return this;
+        this.reserve(2).putShort(s);
+        return this.commit();
     }
 
     public PacketeerOutput writeBoolean(boolean bl) throws IOException {
@@ -77,4 +159,113 @@ public class PacketeerOutput {
         return this;
     }
 
+    /* -------- */
+    /* Varint   */
+    /* -------- */
+
+    /**
+     * Unsigned LEB128, 1 byte for values below 128. Negative values always take 5
+     * bytes, use {@link #writeSignedVarInt(int)} for those.
+     */
+    public PacketeerOutput writeVarInt(int i) throws IOException {
+        ByteBuffer buffer = this.reserve(VarIntIOUtil.VARINT_MAX_LENGTH);
+        while ((i & ~0x7F) != 0) {
+            buffer.put((byte) ((i & 0x7F) | 0x80));
+            i >>>= 7;
+        }
+        buffer.put((byte) i);
+        return this.commit();
+    }
+
+    /**
+     * ZigZag encoded, so that small negative values are short too.
+     */
+    public PacketeerOutput writeSignedVarInt(int i) throws IOException {
+        return this.writeVarInt(VarIntIOUtil.zigZag(i));
+    }
+
+    /**
+     * @see #writeVarInt(int)
+     */
+    public PacketeerOutput writeVarLong(long l) throws IOException {
+        ByteBuffer buffer = this.reserve(VarIntIOUtil.VARLONG_MAX_LENGTH);
+        while ((l & ~0x7FL) != 0) {
+            buffer.put((byte) ((l & 0x7F) | 0x80));
+            l >>>= 7;
+        }
+        buffer.put((byte) l);
+        return this.commit();
+    }
+
+    /**
+     * @see #writeSignedVarInt(int)
+     */
+    public PacketeerOutput writeSignedVarLong(long l) throws IOException {
+        return this.writeVarLong(VarIntIOUtil.zigZag(l));
+    }
+
+    /**
+     * Like {@link #writeBytes(byte[])}, but with a varint length.
+     */
+    public PacketeerOutput writeVarBytes(byte[] b) throws IOException {
+        this.writeVarInt(b.length);
+        return this.writeRaw(b);
+    }
+
+    /**
+     * Like {@link #writeString(String)}, but with a varint length.
+     */
+    public PacketeerOutput writeVarString(@NonNull String str) throws IOException {
+        if (this.stream != null) {
+            return this.writeVarBytes(str.getBytes(StandardCharsets.UTF_8));
+        }
+
+        int length = Utf8IOUtil.utf8Length(str);
+        this.writeVarInt(length);
+        Utf8IOUtil.putUtf8(this.reserve(length), str);
+        return this;
+    }
+
+    /**
+     * Writes the bytes as-is, without a length prefix.
+     */
+    public PacketeerOutput writeRaw(byte[] b) throws IOException {
+        if (this.stream == null) {
+            this.reserve(b.length).put(b);
+        } else {
+            this.stream.write(b);
+        }
+        return this;
+    }
+
+    /* -------- */
+    /* Internal */
+    /* -------- */
+
+    /**
+     * Grows the internal array if needed. Fixed buffers are left as-is and will
+     * overflow, the scratch array used for streams always fits a primitive.
+     */
+    private ByteBuffer reserve(int length) {
+        if (this.growable && this.buffer.remaining() < length) {
+            int capacity = Math.max(this.buffer.capacity() * 2, this.buffer.position() + length);
+            ByteBuffer grown = ByteBuffer.allocate(capacity);
+            this.buffer.flip();
+            grown.put(this.buffer);
+            this.buffer = grown;
+        }
+        return this.buffer;
+    }
+
+    /**
+     * Hands the scratch array to the stream, if any.
+     */
+    private PacketeerOutput commit() throws IOException {
+        if (this.stream != null) {
+            this.stream.write(this.buffer.array(), 0, this.buffer.position());
+            this.buffer.clear();
+        }
+        return this;
+    }
+
 }
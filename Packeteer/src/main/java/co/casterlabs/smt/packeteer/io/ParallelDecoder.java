@@ -0,0 +1,278 @@
+/*
+ * Copyright 2023 Casterlabs
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+package co.casterlabs.smt.packeteer.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import org.jetbrains.annotations.Nullable;
+
+import co.casterlabs.smt.packeteer.io.PacketIO.DeserializationResult;
+import co.casterlabs.smt.packeteer.util.IntObjectMap;
+import lombok.Getter;
+import lombok.NonNull;
+
+/**
+ * A decode pipeline that spreads the work over multiple cores. The thread
+ * feeding the decoder only finds frame boundaries (validating just the
+ * headers), whilst the body CRC check, decompression and the given transform
+ * (e.g {@link co.casterlabs.smt.packeteer.Packet#deserialize}) run on the
+ * worker executor. Results are still handed to the consumer in the order the
+ * frames arrived, either globally or per packet ID.
+ * 
+ * <p>
+ * Unlike {@link PacketDecoder}, a frame whose body fails validation is simply
+ * dropped (and counted) rather than rescanned, as the framer has already moved
+ * past it by then.
+ * 
+ * <p>
+ * The amount of frames in flight is bounded, once the limit is reached feeding
+ * blocks until the oldest ones have been delivered.
+ * 
+ * @implNote The feeding methods are not thread safe, they should all be called
+ *           from the same (framer) thread. The consumer is usually called from
+ *           the worker threads, but may also be called from the framer thread
+ *           when a frame (and everything ahead of it) was already decoded by
+ *           the time it was submitted. It is never called concurrently for
+ *           {@link Ordering#GLOBAL}, but possibly concurrently for different IDs
+ *           with {@link Ordering#PER_PACKET_ID}.
+ */
+public class ParallelDecoder<T> {
+    public static final int DEFAULT_MAX_IN_FLIGHT = 1024;
+
+    private final PacketIO io;
+    private final Executor workers;
+    private final Ordering ordering;
+    private final Function<DeserializationResult, T> transform;
+    private final Consumer<T> consumer;
+
+    private final ByteBuffer buffer; // Always in "write" mode between calls.
+
+    private final int maxInFlight;
+    private final Semaphore inFlight;
+
+    private CompletableFuture<Void> tail = CompletableFuture.completedFuture(null);
+    private final IntObjectMap<CompletableFuture<Void>> tails = new IntObjectMap<>();
+
+    private final LongAdder dropped = new LongAdder();
+
+    private @Getter long framed = 0;
+
+    public ParallelDecoder(@NonNull PacketIO io, @NonNull Executor workers, @NonNull Ordering ordering, @NonNull Function<DeserializationResult, T> transform, @NonNull Consumer<T> consumer) {
+        this(io, workers, ordering, transform, consumer, DEFAULT_MAX_IN_FLIGHT);
+    }
+
+    /**
+     * @param transform   runs on the workers, return null to drop the frame.
+     * @param consumer    receives the transformed frames, in order.
+     * @param maxInFlight the amount of frames that can be decoding or awaiting
+     *                    delivery at once.
+     */
+    public ParallelDecoder(@NonNull PacketIO io, @NonNull Executor workers, @NonNull Ordering ordering, @NonNull Function<DeserializationResult, T> transform, @NonNull Consumer<T> consumer, int maxInFlight) {
+        if (maxInFlight < 1) throw new IllegalArgumentException("maxInFlight must be positive.");
+
+        this.io = io;
+        this.workers = workers;
+        this.ordering = ordering;
+        this.transform = transform;
+        this.consumer = consumer;
+        this.maxInFlight = maxInFlight;
+        this.inFlight = new Semaphore(maxInFlight);
+        // Needs to hold at least one full frame, otherwise we could stall.
+        this.buffer = ByteBuffer.allocate(PacketIO.frameMaxLength * 2);
+    }
+
+    /**
+     * @return the amount of frames that failed validation or whose transform
+     *         threw or returned null.
+     */
+    public long getDropped() {
+        return this.dropped.sum();
+    }
+
+    /**
+     * @return the amount of frames submitted to the workers.
+     */
+    public int feed(byte[] b, int off, int len) {
+        return this.feed(ByteBuffer.wrap(b, off, len));
+    }
+
+    /**
+     * Consumes all of the remaining bytes in {@code src}.
+     * 
+     * @return the amount of frames submitted to the workers.
+     */
+    public int feed(@NonNull ByteBuffer src) {
+        int submitted = 0;
+
+        while (src.hasRemaining()) {
+            int len = Math.min(src.remaining(), this.buffer.remaining());
+
+            ByteBuffer chunk = src.duplicate();
+            chunk.limit(chunk.position() + len);
+            this.buffer.put(chunk);
+            src.position(src.position() + len);
+
+            submitted += this.drain();
+        }
+
+        return submitted;
+    }
+
+    /**
+     * Performs a single read from the channel directly into the decoder's buffer.
+     * 
+     * @return the result of {@link ReadableByteChannel#read(ByteBuffer)}, -1 on
+     *         end of stream.
+     */
+    public int read(@NonNull ReadableByteChannel channel) throws IOException {
+        int read = channel.read(this.buffer);
+        if (read > 0) {
+            this.drain();
+        }
+        return read;
+    }
+
+    /**
+     * Blocks until every frame submitted so far has been delivered (or dropped).
+     */
+    public void awaitDelivery() throws InterruptedException {
+        this.inFlight.acquire(this.maxInFlight);
+        this.inFlight.release(this.maxInFlight);
+    }
+
+    private int drain() {
+        int submitted = 0;
+        this.buffer.flip();
+
+        try {
+            ByteBuffer view;
+            while ((view = this.io.nextFrame(this.buffer)) != null) {
+                int packetId = PacketIO.peekPacketId(view);
+
+                // The view points into our buffer, which gets compacted. So we copy.
+                byte[] frame = new byte[view.remaining()];
+                view.get(frame);
+
+                this.submit(packetId, frame);
+                submitted++;
+            }
+        } finally {
+            this.buffer.compact();
+        }
+
+        return submitted;
+    }
+
+    private void submit(int packetId, byte[] frame) {
+        this.inFlight.acquireUninterruptibly();
+
+        CompletableFuture<T> decoded;
+        try {
+            decoded = CompletableFuture.supplyAsync(() -> this.decode(frame), this.workers);
+        } catch (RejectedExecutionException e) {
+            this.inFlight.release();
+            throw e;
+        }
+        this.framed++;
+
+        if (this.ordering == Ordering.GLOBAL) {
+            this.tail = this.chain(this.tail, decoded);
+            return;
+        }
+
+        CompletableFuture<Void> next;
+        synchronized (this.tails) {
+            CompletableFuture<Void> previous = this.tails.get(packetId);
+            if (previous == null) previous = this.tail; // Completed, never reassigned in this mode.
+
+            next = this.chain(previous, decoded);
+            this.tails.put(packetId, next);
+        }
+
+        // Forget the ID once it has nothing in flight, so that the map doesn't grow
+        // with every ID ever seen.
+        next.whenComplete((v, t) -> {
+            synchronized (this.tails) {
+                if (this.tails.get(packetId) == next) {
+                    this.tails.remove(packetId);
+                }
+            }
+        });
+    }
+
+    private CompletableFuture<Void> chain(CompletableFuture<Void> previous, CompletableFuture<T> decoded) {
+        return previous.thenCombine(decoded, (v, value) -> {
+            this.deliver(value);
+            return null;
+        });
+    }
+
+    private @Nullable T decode(byte[] frame) {
+        try {
+            // The framer has already fixed where this frame starts and ends, so anything
+            // but exactly this frame (e.g one found by rescanning its payload after the
+            // body CRC failed) is rejected.
+            ByteBuffer in = ByteBuffer.wrap(frame);
+            DeserializationResult result = this.io.deserialize(in);
+            if (result != null && (result.discardedBytes > 0 || in.hasRemaining())) {
+                result = null;
+            }
+
+            T value = result == null ? null : this.transform.apply(result);
+
+            if (value == null) this.dropped.increment();
+            return value;
+        } catch (Throwable t) {
+            this.io.getLogger().severe("Unable to decode frame!");
+            this.io.getLogger().exception(t);
+            this.dropped.increment();
+            return null;
+        }
+    }
+
+    private void deliver(@Nullable T value) {
+        try {
+            if (value != null) {
+                this.consumer.accept(value);
+            }
+        } catch (Throwable t) {
+            // Must not escape, otherwise the rest of the chain never gets delivered.
+            this.io.getLogger().severe("Consumer threw whilst handling a frame!");
+            this.io.getLogger().exception(t);
+        } finally {
+            this.inFlight.release();
+        }
+    }
+
+    public enum Ordering {
+        /**
+         * Frames are delivered in exactly the order they arrived.
+         */
+        GLOBAL,
+
+        /**
+         * Frames of the same packet ID are delivered in the order they arrived,
+         * but a slow frame of one ID doesn't hold up the others.
+         */
+        PER_PACKET_ID;
+    }
+
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright 2023 Casterlabs
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+package co.casterlabs.smt.packeteer.io;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A reference counted buffer leased from a {@link BufferPool}. It starts out
+ * with a reference count of 1, and goes back to the pool once every holder has
+ * called {@link #release()}.
+ */
+public class PooledBuffer {
+    private final BufferPool pool; // Oversized buffers are never pooled, but still get accounted for.
+    private final byte[] array;
+    private final ByteBuffer view;
+
+    private final AtomicInteger refCount = new AtomicInteger();
+    private int length;
+
+    PooledBuffer(BufferPool pool, int capacity) {
+        this.pool = pool;
+        this.array = new byte[capacity];
+        this.view = ByteBuffer.wrap(this.array);
+    }
+
+    void lease(int length) {
+        this.length = length;
+        this.refCount.set(1);
+        this.view.clear().limit(length);
+    }
+
+    /**
+     * @return the backing array, which is likely larger than {@link #length()}.
+     */
+    public byte[] array() {
+        return this.array;
+    }
+
+    public int length() {
+        return this.length;
+    }
+
+    public int capacity() {
+        return this.array.length;
+    }
+
+    /**
+     * @return a view of {@code [0, length)}. This instance is shared, so use
+     *         {@link ByteBuffer#duplicate()} if you need to move its position
+     *         around.
+     */
+    public ByteBuffer buffer() {
+        return this.view;
+    }
+
+    public int refCount() {
+        return this.refCount.get();
+    }
+
+    /**
+     * @return this instance, for chaining.
+     */
+    public PooledBuffer retain() {
+        while (true) {
+            int current = this.refCount.get();
+            if (current <= 0) throw new IllegalStateException("Buffer has already been released.");
+            if (this.refCount.compareAndSet(current, current + 1)) return this;
+        }
+    }
+
+    /**
+     * @return true if this was the last reference and the buffer went back to the
+     *         pool.
+     */
+    public boolean release() {
+        int remaining = this.refCount.decrementAndGet();
+
+        if (remaining < 0) {
+            this.refCount.set(0);
+            throw new IllegalStateException("Buffer has already been released.");
+        }
+
+        if (remaining == 0) {
+            this.pool.recycle(this);
+            return true;
+        }
+
+        return false;
+    }
+
+}
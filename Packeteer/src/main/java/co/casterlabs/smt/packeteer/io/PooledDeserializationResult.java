@@ -0,0 +1,93 @@
+/*
+ * Copyright 2023 Casterlabs
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+package co.casterlabs.smt.packeteer.io;
+
+import java.nio.ByteBuffer;
+
+import org.jetbrains.annotations.Nullable;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+
+/**
+ * The pooled counterpart of {@link PacketIO.DeserializationResult}. Instances
+ * are recycled, so you <b>must</b> call {@link #release()} once you are done
+ * with it and must not touch it afterwards. If you need the payload to outlive
+ * the result, {@link PooledBuffer#retain()} it first.
+ */
+@Getter
+public class PooledDeserializationResult implements AutoCloseable {
+    private final @Getter(AccessLevel.NONE) BufferPool pool;
+    private final Flags flags = new Flags();
+
+    private int packetId;
+    private @Nullable String extendedId;
+    private long timestamp;
+    private PooledBuffer payload;
+    private long discardedBytes;
+
+    private @Getter(AccessLevel.NONE) boolean released = true;
+
+    PooledDeserializationResult(BufferPool pool) {
+        this.pool = pool;
+    }
+
+    void init(int flags, int packetId, @Nullable String extendedId, long timestamp, PooledBuffer payload, long discardedBytes) {
+        this.flags.setRawValue(flags);
+        this.packetId = packetId;
+        this.extendedId = extendedId;
+        this.timestamp = timestamp;
+        this.payload = payload;
+        this.discardedBytes = discardedBytes;
+        this.released = false;
+    }
+
+    /**
+     * @return a view of the payload, shorthand for {@code getPayload().buffer()}.
+     */
+    public ByteBuffer getPayloadBuffer() {
+        return this.payload.buffer();
+    }
+
+    /**
+     * Releases the payload and returns this result to the pool.
+     */
+    public void release() {
+        if (this.released) throw new IllegalStateException("Result has already been released.");
+        this.released = true;
+
+        PooledBuffer payload = this.payload;
+        this.payload = null;
+        this.extendedId = null;
+
+        payload.release();
+        this.pool.recycle(this);
+    }
+
+    @Override
+    public void close() {
+        this.release();
+    }
+
+    @Override
+    public String toString() {
+        return String.format(
+            "PooledDeserializationResult(flags=%s, packetId=%d, extendedId=%s, timestamp=%d, payloadLength=%d)",
+            this.flags.toString(16),
+            this.packetId,
+            this.extendedId,
+            this.timestamp,
+            this.released ? -1 : this.payload.length()
+        );
+    }
+
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2023 Casterlabs
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+package co.casterlabs.smt.packeteer.io;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Unsigned LEB128 varints, 7 bits per byte with the high bit signalling that
+ * another byte follows.
+ */
+public class VarIntIOUtil {
+    public static final int VARINT_MAX_LENGTH = 5;
+    public static final int VARLONG_MAX_LENGTH = 10;
+
+    /* -------- */
+    /* Int      */
+    /* -------- */
+
+    public static int varIntSize(int v) {
+        if ((v & (~0 << 7)) == 0) return 1;
+        if ((v & (~0 << 14)) == 0) return 2;
+        if ((v & (~0 << 21)) == 0) return 3;
+        if ((v & (~0 << 28)) == 0) return 4;
+        return 5;
+    }
+
+    /**
+     * Absolute put.
+     * 
+     * @return the amount of bytes written.
+     */
+    public static int putVarInt(ByteBuffer buf, int index, int v) {
+        int written = 0;
+        while ((v & ~0x7F) != 0) {
+            buf.put(index + written++, (byte) ((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        buf.put(index + written++, (byte) v);
+        return written;
+    }
+
+    /**
+     * @return the length of the varint starting at {@code index}, -1 if it runs
+     *         past {@code limit}, or -2 if it is malformed (too long).
+     */
+    public static int varIntLength(ByteBuffer buf, int index, int limit) {
+        for (int i = 0; i < VARINT_MAX_LENGTH; i++) {
+            if (index + i >= limit) return -1;
+            if ((buf.get(index + i) & 0x80) == 0) return i + 1;
+        }
+        return -2;
+    }
+
+    /**
+     * Absolute get, make sure to check {@link #varIntLength(ByteBuffer, int, int)}
+     * first.
+     */
+    public static int getVarInt(ByteBuffer buf, int index) {
+        int result = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            byte b = buf.get(index++);
+            result |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) break;
+        }
+        return result;
+    }
+
+    /* -------- */
+    /* Long     */
+    /* -------- */
+
+    public static int varLongSize(long v) {
+        int size = 1;
+        while ((v & ~0x7FL) != 0) {
+            v >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    /* -------- */
+    /* ZigZag   */
+    /* -------- */
+
+    /**
+     * Maps signed values onto unsigned ones so that small negative numbers also
+     * get a short varint: 0 => 0, -1 => 1, 1 => 2, -2 => 3...
+     */
+    public static int zigZag(int v) {
+        return (v << 1) ^ (v >> 31);
+    }
+
+    public static int unZigZag(int v) {
+        return (v >>> 1) ^ -(v & 1);
+    }
+
+    public static long zigZag(long v) {
+        return (v << 1) ^ (v >> 63);
+    }
+
+    public static long unZigZag(long v) {
+        return (v >>> 1) ^ -(v & 1);
+    }
+
+}
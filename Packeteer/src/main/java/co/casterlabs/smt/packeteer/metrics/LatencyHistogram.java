@@ -0,0 +1,79 @@
+/*
+ * Copyright 2023 Casterlabs
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+package co.casterlabs.smt.packeteer.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free histogram with power-of-two buckets, good enough for latency
+ * percentiles whilst only costing a couple of instructions to record into.
+ * Percentiles are reported as the upper bound of the bucket they fall in, so
+ * they are accurate to within a factor of two.
+ */
+public class LatencyHistogram {
+    private static final int BUCKETS = 64;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    public void record(long value) {
+        if (value < 0) value = 0;
+        this.counts.incrementAndGet(BUCKETS - Long.numberOfLeadingZeros(value));
+    }
+
+    public long getCount() {
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            count += this.counts.get(i);
+        }
+        return count;
+    }
+
+    /**
+     * @param  percentile within [0, 100].
+     * 
+     * @return            the upper bound of the bucket containing the percentile, or
+     *                    0 if nothing has been recorded.
+     */
+    public long getPercentile(double percentile) {
+        if (percentile < 0 || percentile > 100) throw new IllegalArgumentException("Percentile must be within [0, 100].");
+
+        // Take a snapshot so that the total and the walk agree.
+        long[] snapshot = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = this.counts.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0) return 0;
+
+        long rank = Math.max(1, (long) Math.ceil(total * (percentile / 100)));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) return upperBoundOf(i);
+        }
+        return Long.MAX_VALUE;
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            this.counts.set(i, 0);
+        }
+    }
+
+    private static long upperBoundOf(int bucket) {
+        if (bucket == 0) return 0;
+        if (bucket >= BUCKETS - 1) return Long.MAX_VALUE;
+        return (1L << bucket) - 1;
+    }
+
+}
@@ -0,0 +1,197 @@
+/*
+ * Copyright 2023 Casterlabs
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+package co.casterlabs.smt.packeteer.metrics;
+
+import java.io.Closeable;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import co.casterlabs.smt.packeteer.io.PacketIOListener;
+import lombok.Getter;
+import lombok.NonNull;
+
+/**
+ * Counters and a decode latency histogram for a
+ * {@link co.casterlabs.smt.packeteer.io.PacketIO PacketIO}, which can
+ * also be exposed over JMX:
+ * 
+ * <pre>
+ * PacketIOMetrics metrics = new PacketIOMetrics();
+ * io.setListener(metrics);
+ * metrics.register("my-connection");
+ * </pre>
+ * 
+ * @see co.casterlabs.smt.packeteer.io.PacketIO#setListener(PacketIOListener)
+ */
+public class PacketIOMetrics implements PacketIOListener, PacketIOMetricsMXBean {
+    public static final String JMX_DOMAIN = "co.casterlabs.smt.packeteer";
+
+    private final LongAdder framesIn = new LongAdder();
+    private final LongAdder bytesIn = new LongAdder();
+    private final LongAdder framesOut = new LongAdder();
+    private final LongAdder bytesOut = new LongAdder();
+    private final LongAdder headerCorrupt = new LongAdder();
+    private final LongAdder bodyCorrupt = new LongAdder();
+    private final LongAdder bodyCrcIgnored = new LongAdder();
+    private final LongAdder bytesSkipped = new LongAdder();
+
+    private final @Getter LatencyHistogram decodeNanos = new LatencyHistogram();
+
+    /* -------- */
+    /* Listener */
+    /* -------- */
+
+    @Override
+    public void onFrameEncoded(int packetId, int frameLength) {
+        this.framesOut.increment();
+        this.bytesOut.add(frameLength);
+    }
+
+    @Override
+    public void onFrameDecoded(int packetId, int frameLength, long decodeNanos) {
+        this.framesIn.increment();
+        this.bytesIn.add(frameLength);
+        this.decodeNanos.record(decodeNanos);
+    }
+
+    @Override
+    public void onHeaderCorrupt() {
+        this.headerCorrupt.increment();
+    }
+
+    @Override
+    public void onBodyCorrupt() {
+        this.bodyCorrupt.increment();
+    }
+
+    @Override
+    public void onBodyCrcIgnored() {
+        this.bodyCrcIgnored.increment();
+    }
+
+    @Override
+    public void onBytesSkipped(long count) {
+        this.bytesSkipped.add(count);
+    }
+
+    /* -------- */
+    /* MXBean   */
+    /* -------- */
+
+    @Override
+    public long getFramesIn() {
+        return this.framesIn.sum();
+    }
+
+    @Override
+    public long getBytesIn() {
+        return this.bytesIn.sum();
+    }
+
+    @Override
+    public long getFramesOut() {
+        return this.framesOut.sum();
+    }
+
+    @Override
+    public long getBytesOut() {
+        return this.bytesOut.sum();
+    }
+
+    @Override
+    public long getHeaderCorrupt() {
+        return this.headerCorrupt.sum();
+    }
+
+    @Override
+    public long getBodyCorrupt() {
+        return this.bodyCorrupt.sum();
+    }
+
+    @Override
+    public long getBodyCrcIgnored() {
+        return this.bodyCrcIgnored.sum();
+    }
+
+    @Override
+    public long getBytesSkipped() {
+        return this.bytesSkipped.sum();
+    }
+
+    @Override
+    public long getDecodeNanosP50() {
+        return this.decodeNanos.getPercentile(50);
+    }
+
+    @Override
+    public long getDecodeNanosP99() {
+        return this.decodeNanos.getPercentile(99);
+    }
+
+    @Override
+    public long getDecodeNanosP999() {
+        return this.decodeNanos.getPercentile(99.9);
+    }
+
+    @Override
+    public void reset() {
+        this.framesIn.reset();
+        this.bytesIn.reset();
+        this.framesOut.reset();
+        this.bytesOut.reset();
+        this.headerCorrupt.reset();
+        this.bodyCorrupt.reset();
+        this.bodyCrcIgnored.reset();
+        this.bytesSkipped.reset();
+        this.decodeNanos.reset();
+    }
+
+    /* -------- */
+    /* JMX      */
+    /* -------- */
+
+    /**
+     * Registers these metrics with the platform MBean server, under
+     * {@code co.casterlabs.smt.packeteer:type=PacketIO,name=<name>}.
+     * 
+     * @return a handle that unregisters them when closed.
+     */
+    public Closeable register(@NonNull String name) throws JMException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName objectName = new ObjectName(JMX_DOMAIN + ":type=PacketIO,name=" + ObjectName.quote(name));
+
+        server.registerMBean(this, objectName);
+
+        return () -> {
+            try {
+                server.unregisterMBean(objectName);
+            } catch (JMException ignored) {
+                // Already gone.
+            }
+        };
+    }
+
+    @Override
+    public String toString() {
+        return String.format(
+            "PacketIOMetrics(framesIn=%d, bytesIn=%d, framesOut=%d, bytesOut=%d, headerCorrupt=%d, bodyCorrupt=%d, bodyCrcIgnored=%d, bytesSkipped=%d, decodeNanosP50=%d, decodeNanosP99=%d)",
+            this.getFramesIn(), this.getBytesIn(), this.getFramesOut(), this.getBytesOut(),
+            this.getHeaderCorrupt(), this.getBodyCorrupt(), this.getBodyCrcIgnored(), this.getBytesSkipped(),
+            this.getDecodeNanosP50(), this.getDecodeNanosP99()
+        );
+    }
+
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright 2023 Casterlabs
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+package co.casterlabs.smt.packeteer.metrics;
+
+/**
+ * The JMX view of {@link PacketIOMetrics}.
+ */
+public interface PacketIOMetricsMXBean {
+
+    long getFramesIn();
+
+    long getBytesIn();
+
+    long getFramesOut();
+
+    long getBytesOut();
+
+    long getHeaderCorrupt();
+
+    long getBodyCorrupt();
+
+    long getBodyCrcIgnored();
+
+    long getBytesSkipped();
+
+    long getDecodeNanosP50();
+
+    long getDecodeNanosP99();
+
+    long getDecodeNanosP999();
+
+    void reset();
+
+}
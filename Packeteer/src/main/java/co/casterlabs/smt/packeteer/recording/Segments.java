@@ -0,0 +1,48 @@
+/*
+ * Copyright 2023 Casterlabs
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+package co.casterlabs.smt.packeteer.recording;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Naming of the segment files within a recording's directory.
+ */
+class Segments {
+    static final String EXTENSION = ".smt";
+
+    static Path pathOf(Path directory, int index) {
+        return directory.resolve(String.format("%08d", index) + EXTENSION);
+    }
+
+    static int indexOf(Path segment) {
+        String name = segment.getFileName().toString();
+        return Integer.parseInt(name.substring(0, name.length() - EXTENSION.length()));
+    }
+
+    /**
+     * @return the segments in the directory, in recording order.
+     */
+    static List<Path> list(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files
+                .filter((path) -> path.getFileName().toString().matches("\\d{8}\\" + EXTENSION))
+                .sorted()
+                .collect(Collectors.toList());
+        }
+    }
+
+}
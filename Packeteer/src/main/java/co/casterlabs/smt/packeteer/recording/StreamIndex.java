@@ -0,0 +1,358 @@
+/*
+ * Copyright 2023 Casterlabs
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+package co.casterlabs.smt.packeteer.recording;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import org.jetbrains.annotations.Nullable;
+
+import co.casterlabs.smt.packeteer.io.PacketIO;
+import co.casterlabs.smt.packeteer.io.PacketIO.DeserializationResult;
+import co.casterlabs.smt.packeteer.util.IntObjectMap;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.ToString;
+
+/**
+ * A sparse index of a recording, mapping packet IDs and timestamps to frame
+ * boundaries so that a {@link StreamReplayer} can seek without decoding from
+ * the start.
+ * 
+ * <p>
+ * For each packet ID, a frame is indexed if it is the first of its ID or if at
+ * least {@link #intervalMillis} have passed since the last indexed frame of
+ * that ID. Lookups are a binary search, after which at most one interval's
+ * worth of frames need to be decoded.
+ * 
+ * <p>
+ * The index is stored next to the segments as {@value #FILE_NAME}. It is
+ * written as the recording happens, and can be rebuilt from the segments with
+ * {@link #rebuild(PacketIO, Path, long)} if it is missing or lost in a crash.
+ */
+public class StreamIndex {
+    public static final String FILE_NAME = "index.smti";
+    public static final long DEFAULT_INTERVAL_MILLIS = 1000;
+
+    private static final int FILE_MAGIC = 0x534D5449; // "SMTI"
+    static final int FILE_HEADER_LENGTH = 4 /* Magic */ + 8 /* Interval */;
+    static final int ENTRY_LENGTH = 8 /* Timestamp */ + 4 /* Packet ID */ + 4 /* Segment */ + 4 /* Offset */;
+
+    private final @Getter long intervalMillis;
+
+    private final Entries all = new Entries();
+    private final IntObjectMap<Entries> byId = new IntObjectMap<>();
+
+    public StreamIndex(long intervalMillis) {
+        if (intervalMillis < 0) throw new IllegalArgumentException("intervalMillis cannot be negative.");
+        this.intervalMillis = intervalMillis;
+    }
+
+    /**
+     * @return the amount of indexed frames.
+     */
+    public int size() {
+        return this.all.size;
+    }
+
+    /**
+     * Indexes the frame if the sparse policy allows for it.
+     * 
+     * @param  segment the index of the segment file the frame is in.
+     * @param  offset  the offset of the frame's first byte within the segment.
+     * 
+     * @return         whether or not the frame was indexed.
+     */
+    public boolean offer(int packetId, long timestamp, int segment, int offset) {
+        Entries entries = this.byId.get(packetId);
+        if (entries != null && timestamp - entries.timestamps[entries.size - 1] < this.intervalMillis) {
+            return false;
+        }
+
+        this.add(packetId, timestamp, segment, offset);
+        return true;
+    }
+
+    private void add(int packetId, long timestamp, int segment, int offset) {
+        this.byId.computeIfAbsent(packetId, (k) -> new Entries()).add(timestamp, packetId, segment, offset);
+        this.all.add(timestamp, packetId, segment, offset);
+    }
+
+    /**
+     * @return the last indexed frame of the ID at or before the timestamp, or
+     *         null if there is none.
+     */
+    public @Nullable Entry floor(int packetId, long timestamp) {
+        Entries entries = this.byId.get(packetId);
+        return entries == null ? null : entries.floor(timestamp);
+    }
+
+    /**
+     * @return the last indexed frame of any ID at or before the timestamp, or
+     *         null if there is none.
+     */
+    public @Nullable Entry floor(long timestamp) {
+        return this.all.floor(timestamp);
+    }
+
+    /**
+     * @return the first indexed frame of the ID, or null if there is none.
+     */
+    public @Nullable Entry first(int packetId) {
+        Entries entries = this.byId.get(packetId);
+        return entries == null ? null : entries.get(0);
+    }
+
+    /**
+     * @return the first indexed frame, or null if the index is empty.
+     */
+    public @Nullable Entry first() {
+        return this.all.size == 0 ? null : this.all.get(0);
+    }
+
+    /* ---------------- */
+    /* Persistence      */
+    /* ---------------- */
+
+    /**
+     * Writes the index to {@value #FILE_NAME} in the directory, replacing any
+     * existing one.
+     */
+    public void save(@NonNull Path directory) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(directory.resolve(FILE_NAME))))) {
+            writeFileHeader(out, this.intervalMillis);
+            for (int i = 0; i < this.all.size; i++) {
+                writeEntry(out, this.all.timestamps[i], this.all.packetIds[i], this.all.segments[i], this.all.offsets[i]);
+            }
+        }
+    }
+
+    /**
+     * @return the index stored in the directory, or null if there is none.
+     */
+    public static @Nullable StreamIndex load(@NonNull Path directory) throws IOException {
+        Path file = directory.resolve(FILE_NAME);
+        if (!Files.exists(file)) return null;
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            StreamIndex index = new StreamIndex(readFileHeader(in));
+
+            while (true) {
+                long timestamp;
+                int packetId;
+                int segment;
+                int offset;
+                try {
+                    timestamp = in.readLong();
+                    packetId = in.readInt();
+                    segment = in.readInt();
+                    offset = in.readInt();
+                } catch (EOFException e) {
+                    break; // A partially written entry is dropped.
+                }
+
+                index.add(packetId, timestamp, segment, offset);
+            }
+
+            return index;
+        }
+    }
+
+    /**
+     * Builds an index by decoding every segment in the directory. The result is
+     * not saved, use {@link #save(Path)} for that.
+     */
+    public static StreamIndex rebuild(@NonNull PacketIO io, @NonNull Path directory, long intervalMillis) throws IOException {
+        StreamIndex index = new StreamIndex(intervalMillis);
+
+        for (Path path : Segments.list(directory)) {
+            int segment = Segments.indexOf(path);
+
+            MappedByteBuffer buffer;
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                buffer = channel.map(MapMode.READ_ONLY, 0, channel.size());
+            }
+
+            while (true) {
+                int position = buffer.position();
+                DeserializationResult result = io.deserialize(buffer);
+                if (result == null) break;
+
+                index.offer(result.packetId, result.timestamp, segment, (int) (position + result.discardedBytes));
+            }
+        }
+
+        return index;
+    }
+
+    static void writeFileHeader(DataOutput out, long intervalMillis) throws IOException {
+        out.writeInt(FILE_MAGIC);
+        out.writeLong(intervalMillis);
+    }
+
+    static long readFileHeader(DataInput in) throws IOException {
+        try {
+            if (in.readInt() != FILE_MAGIC) throw new IOException("Not a stream index.");
+            return in.readLong();
+        } catch (EOFException e) {
+            throw new IOException("Not a stream index.", e);
+        }
+    }
+
+    static void writeEntry(DataOutput out, long timestamp, int packetId, int segment, int offset) throws IOException {
+        out.writeLong(timestamp);
+        out.writeInt(packetId);
+        out.writeInt(segment);
+        out.writeInt(offset);
+    }
+
+    /**
+     * Appends newly indexed frames to an index file as a recording happens.
+     */
+    static class Appender {
+        private final @Getter StreamIndex index;
+        private final DataOutputStream out;
+
+        Appender(Path directory, long intervalMillis) throws IOException {
+            Path file = directory.resolve(FILE_NAME);
+
+            if (Files.exists(file)) {
+                // Continue the existing index, minus any partially written entry.
+                try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                    long entries = (channel.size() - FILE_HEADER_LENGTH) / ENTRY_LENGTH;
+                    channel.truncate(FILE_HEADER_LENGTH + Math.max(0, entries) * ENTRY_LENGTH);
+                }
+                this.index = load(directory);
+            } else {
+                this.index = new StreamIndex(intervalMillis);
+                this.index.save(directory);
+            }
+
+            this.out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file, StandardOpenOption.APPEND)));
+        }
+
+        void offer(int packetId, long timestamp, int segment, int offset) throws IOException {
+            if (this.index.offer(packetId, timestamp, segment, offset)) {
+                writeEntry(this.out, timestamp, packetId, segment, offset);
+            }
+        }
+
+        void flush() throws IOException {
+            this.out.flush();
+        }
+
+        void close() throws IOException {
+            this.out.close();
+        }
+    }
+
+    /* ---------------- */
+    /* Entries          */
+    /* ---------------- */
+
+    @Getter
+    @ToString
+    @AllArgsConstructor
+    public static class Entry {
+        private final long timestamp;
+        private final int packetId;
+
+        /**
+         * The index of the segment file the frame is in.
+         */
+        private final int segment;
+
+        /**
+         * The offset of the frame's first byte within the segment.
+         */
+        private final int offset;
+    }
+
+    /**
+     * Parallel arrays kept sorted by timestamp.
+     */
+    private static class Entries {
+        private long[] timestamps = new long[16];
+        private int[] packetIds = new int[16];
+        private int[] segments = new int[16];
+        private int[] offsets = new int[16];
+        private int size = 0;
+
+        void add(long timestamp, int packetId, int segment, int offset) {
+            if (this.size == this.timestamps.length) {
+                int capacity = this.size * 2;
+                this.timestamps = Arrays.copyOf(this.timestamps, capacity);
+                this.packetIds = Arrays.copyOf(this.packetIds, capacity);
+                this.segments = Arrays.copyOf(this.segments, capacity);
+                this.offsets = Arrays.copyOf(this.offsets, capacity);
+            }
+
+            // Timestamps are almost always increasing, so this is usually an append.
+            int insertAt = this.size;
+            while (insertAt > 0 && this.timestamps[insertAt - 1] > timestamp) {
+                insertAt--;
+            }
+
+            int moved = this.size - insertAt;
+            if (moved > 0) {
+                System.arraycopy(this.timestamps, insertAt, this.timestamps, insertAt + 1, moved);
+                System.arraycopy(this.packetIds, insertAt, this.packetIds, insertAt + 1, moved);
+                System.arraycopy(this.segments, insertAt, this.segments, insertAt + 1, moved);
+                System.arraycopy(this.offsets, insertAt, this.offsets, insertAt + 1, moved);
+            }
+
+            this.timestamps[insertAt] = timestamp;
+            this.packetIds[insertAt] = packetId;
+            this.segments[insertAt] = segment;
+            this.offsets[insertAt] = offset;
+            this.size++;
+        }
+
+        Entry get(int i) {
+            return new Entry(this.timestamps[i], this.packetIds[i], this.segments[i], this.offsets[i]);
+        }
+
+        @Nullable
+        Entry floor(long timestamp) {
+            int low = 0;
+            int high = this.size - 1;
+            int found = -1;
+
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                if (this.timestamps[mid] <= timestamp) {
+                    found = mid;
+                    low = mid + 1;
+                } else {
+                    high = mid - 1;
+                }
+            }
+
+            return found == -1 ? null : this.get(found);
+        }
+    }
+
+}
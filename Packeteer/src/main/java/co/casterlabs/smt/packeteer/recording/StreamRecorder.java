@@ -0,0 +1,196 @@
+/*
+ * Copyright 2023 Casterlabs
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+package co.casterlabs.smt.packeteer.recording;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import org.jetbrains.annotations.Nullable;
+
+import co.casterlabs.smt.packeteer.Packet;
+import co.casterlabs.smt.packeteer.io.PacketIO;
+import co.casterlabs.smt.packeteer.io.PacketIO.DeserializationResult;
+import co.casterlabs.smt.packeteer.recording.StreamIndex.Appender;
+import lombok.Getter;
+import lombok.NonNull;
+
+/**
+ * Records frames into a directory of pre-allocated, memory-mapped segment
+ * files. Frames are encoded straight into the mapping, and once a segment is
+ * full recording rolls over into the next one. Use a {@link StreamReplayer} to
+ * read them back.
+ * 
+ * <p>
+ * Segments are truncated to their written length when rolled over or closed.
+ * If the process dies before that, the segment is left padded with zeroes,
+ * which the replayer simply skips over.
+ * 
+ * <p>
+ * Recording into a directory that already contains segments continues after
+ * the last one.
+ * 
+ * <p>
+ * Unless disabled, a {@link StreamIndex} is written alongside the segments as
+ * the recording happens.
+ */
+public class StreamRecorder implements Closeable {
+    public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+
+    private final PacketIO io;
+    private final @Getter Path directory;
+    private final @Getter int segmentSize;
+
+    private final @Nullable Appender index;
+
+    private FileChannel channel;
+    private MappedByteBuffer segment;
+    private @Getter int segmentIndex;
+
+    private @Getter long recordedFrames = 0;
+    private @Getter long recordedBytes = 0;
+
+    public StreamRecorder(@NonNull PacketIO io, @NonNull Path directory) throws IOException {
+        this(io, directory, DEFAULT_SEGMENT_SIZE);
+    }
+
+    public StreamRecorder(@NonNull PacketIO io, @NonNull Path directory, int segmentSize) throws IOException {
+        this(io, directory, segmentSize, StreamIndex.DEFAULT_INTERVAL_MILLIS);
+    }
+
+    /**
+     * @param segmentSize         the size of each segment file, must be able to
+     *                            hold at least one frame of
+     *                            {@link PacketIO#frameMaxLength}.
+     * @param indexIntervalMillis see {@link StreamIndex#getIntervalMillis()}, or
+     *                            -1 to not write an index. Ignored when
+     *                            continuing an existing index.
+     */
+    public StreamRecorder(@NonNull PacketIO io, @NonNull Path directory, int segmentSize, long indexIntervalMillis) throws IOException {
+        if (segmentSize < PacketIO.frameMaxLength) throw new IllegalArgumentException("segmentSize must be at least " + PacketIO.frameMaxLength);
+
+        this.io = io;
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+
+        Files.createDirectories(directory);
+
+        List<Path> existing = Segments.list(directory);
+        this.segmentIndex = existing.isEmpty() ? 0 : Segments.indexOf(existing.get(existing.size() - 1)) + 1;
+        this.index = indexIntervalMillis < 0 ? null : new Appender(directory, indexIntervalMillis);
+        this.openSegment();
+    }
+
+    public void record(@NonNull Packet packet) throws IOException {
+        this.record(packet.getId(), packet.getExtendedId(), ByteBuffer.wrap(packet.serialize()), System.currentTimeMillis());
+    }
+
+    public void record(@NonNull DeserializationResult result) throws IOException {
+        this.record(result.packetId, result.extendedId, result.payloadBuffer, result.timestamp);
+    }
+
+    public void record(int id, @Nullable String extendedId, byte[] payload, long timestamp) throws IOException {
+        this.record(id, extendedId, ByteBuffer.wrap(payload), timestamp);
+    }
+
+    /**
+     * Encodes the frame into the current segment, rolling over if it doesn't fit.
+     * The payload's position is left untouched.
+     */
+    public synchronized void record(int id, @Nullable String extendedId, @NonNull ByteBuffer payload, long timestamp) throws IOException {
+        if (this.segment == null) throw new IOException("Recorder is closed.");
+
+        int start = this.segment.position();
+        try {
+            this.io.serialize(id, extendedId, payload, timestamp, this.segment);
+        } catch (BufferOverflowException e) {
+            this.closeSegment();
+            this.segmentIndex++;
+            this.openSegment();
+
+            start = 0;
+            this.io.serialize(id, extendedId, payload, timestamp, this.segment);
+        }
+
+        if (this.index != null) {
+            this.index.offer(id, timestamp, this.segmentIndex, start);
+        }
+
+        this.recordedFrames++;
+        this.recordedBytes += this.segment.position() - start;
+    }
+
+    /**
+     * @return the index being written, or null if indexing is disabled. It is
+     *         updated as frames are recorded, so only use it from the recording
+     *         thread.
+     */
+    public @Nullable StreamIndex getIndex() {
+        return this.index == null ? null : this.index.getIndex();
+    }
+
+    /**
+     * Forces the current segment's contents (and the index) to disk.
+     */
+    public synchronized void force() throws IOException {
+        if (this.segment != null) {
+            this.segment.force();
+        }
+        if (this.index != null) {
+            this.index.flush();
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (this.segment == null) return;
+        try {
+            this.closeSegment();
+        } finally {
+            if (this.index != null) {
+                this.index.close();
+            }
+        }
+    }
+
+    private void openSegment() throws IOException {
+        Path path = Segments.pathOf(this.directory, this.segmentIndex);
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.segment = this.channel.map(MapMode.READ_WRITE, 0, this.segmentSize);
+    }
+
+    private void closeSegment() throws IOException {
+        int length = this.segment.position();
+        this.segment.force();
+        this.segment = null;
+
+        try {
+            // Fails on some platforms whilst the mapping is still alive, in which case
+            // the padding is left behind (the replayer skips over it).
+            this.channel.truncate(length);
+        } catch (IOException e) {
+            this.io.getLogger().debug("Unable to truncate segment %d, leaving it padded: %s", this.segmentIndex, e);
+        } finally {
+            this.channel.close();
+            this.channel = null;
+        }
+    }
+
+}
@@ -0,0 +1,201 @@
+/*
+ * Copyright 2023 Casterlabs
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+package co.casterlabs.smt.packeteer.recording;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+import org.jetbrains.annotations.Nullable;
+
+import co.casterlabs.smt.packeteer.io.PacketIO;
+import co.casterlabs.smt.packeteer.io.PacketIO.DeserializationResult;
+import co.casterlabs.smt.packeteer.recording.StreamIndex.Entry;
+import lombok.Getter;
+import lombok.NonNull;
+
+/**
+ * Reads back a recording made by {@link StreamRecorder}. Segments are mapped
+ * read-only and decoded in place, so the results' payloads are views into the
+ * mapping rather than copies.
+ * 
+ * @implNote This class is not thread safe.
+ */
+public class StreamReplayer {
+    private final PacketIO io;
+    private final List<Path> segments;
+
+    private @Getter int segmentIndex = -1; // Position in segments, not the file's index.
+    private @Nullable MappedByteBuffer segment;
+
+    public StreamReplayer(@NonNull PacketIO io, @NonNull Path directory) throws IOException {
+        this.io = io;
+        this.segments = Segments.list(directory);
+    }
+
+    public int getSegmentCount() {
+        return this.segments.size();
+    }
+
+    /**
+     * @return the next frame in the recording, or null if the end has been
+     *         reached.
+     */
+    public @Nullable DeserializationResult next() throws IOException {
+        while (true) {
+            if (this.segment != null) {
+                DeserializationResult result = this.io.deserialize(this.segment);
+                if (result != null) return result;
+            }
+
+            if (this.segmentIndex + 1 >= this.segments.size()) {
+                return null;
+            }
+
+            this.segmentIndex++;
+            this.segment = map(this.segments.get(this.segmentIndex));
+        }
+    }
+
+    /**
+     * Positions the replayer at the indexed frame, so that the next call to
+     * {@link #next()} returns it.
+     */
+    public void seek(@NonNull Entry entry) throws IOException {
+        for (int i = 0; i < this.segments.size(); i++) {
+            if (Segments.indexOf(this.segments.get(i)) == entry.getSegment()) {
+                this.segmentIndex = i;
+                this.segment = map(this.segments.get(i));
+                this.segment.position(entry.getOffset());
+                return;
+            }
+        }
+
+        throw new IOException("Segment " + entry.getSegment() + " is not part of this recording.");
+    }
+
+    /**
+     * Seeks to the first frame of the ID at or after the timestamp, subsequent
+     * calls to {@link #next()} continue after it.
+     * 
+     * @return the frame, or null if there is none (in which case the replayer is
+     *         left at the end of the recording).
+     */
+    public @Nullable DeserializationResult seek(@NonNull StreamIndex index, int packetId, long timestamp) throws IOException {
+        Entry entry = index.floor(packetId, timestamp);
+        if (entry == null) entry = index.first(packetId);
+        if (entry == null) return null; // Every ID has its first frame indexed, so it's not in here.
+
+        this.seek(entry);
+
+        DeserializationResult result;
+        while ((result = this.next()) != null) {
+            if (result.packetId == packetId && result.timestamp >= timestamp) {
+                return result;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Seeks to the first frame of any ID at or after the timestamp, subsequent
+     * calls to {@link #next()} continue after it.
+     * 
+     * @return the frame, or null if there is none (in which case the replayer is
+     *         left at the end of the recording).
+     */
+    public @Nullable DeserializationResult seek(@NonNull StreamIndex index, long timestamp) throws IOException {
+        Entry entry = index.floor(timestamp);
+        if (entry == null) entry = index.first();
+        if (entry == null) return null;
+
+        this.seek(entry);
+
+        DeserializationResult result;
+        while ((result = this.next()) != null) {
+            if (result.timestamp >= timestamp) {
+                return result;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Replays the rest of the recording as fast as possible.
+     * 
+     * @return the amount of frames replayed.
+     */
+    public long replay(@NonNull Consumer<DeserializationResult> consumer) throws IOException {
+        long replayed = 0;
+        DeserializationResult result;
+        while ((result = this.next()) != null) {
+            consumer.accept(result);
+            replayed++;
+        }
+        return replayed;
+    }
+
+    /**
+     * Replays the rest of the recording, pacing the frames by their timestamps.
+     * Frames with a timestamp older than the previous one are delivered right
+     * away.
+     * 
+     * @param  speed                how fast to replay, e.g 2 replays at double
+     *                              the recorded speed.
+     * 
+     * @return                      the amount of frames replayed.
+     * 
+     * @throws InterruptedException if the thread is interrupted whilst waiting
+     *                              for the next frame.
+     */
+    public long replay(@NonNull Consumer<DeserializationResult> consumer, double speed) throws IOException, InterruptedException {
+        if (speed <= 0) throw new IllegalArgumentException("speed must be positive.");
+
+        long replayed = 0;
+        long firstTimestamp = 0;
+        long startNanos = 0;
+
+        DeserializationResult result;
+        while ((result = this.next()) != null) {
+            if (replayed == 0) {
+                firstTimestamp = result.timestamp;
+                startNanos = System.nanoTime();
+            } else {
+                long dueNanos = startNanos + (long) (TimeUnit.MILLISECONDS.toNanos(result.timestamp - firstTimestamp) / speed);
+                long waitNanos;
+                while ((waitNanos = dueNanos - System.nanoTime()) > 0) {
+                    LockSupport.parkNanos(waitNanos);
+                    if (Thread.interrupted()) throw new InterruptedException();
+                }
+            }
+
+            consumer.accept(result);
+            replayed++;
+        }
+        return replayed;
+    }
+
+    private static MappedByteBuffer map(Path path) throws IOException {
+        // The mapping stays valid after the channel is closed.
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return channel.map(MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+}
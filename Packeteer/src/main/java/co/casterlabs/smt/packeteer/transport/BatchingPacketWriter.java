@@ -0,0 +1,243 @@
+/*
+ * Copyright 2023 Casterlabs
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+package co.casterlabs.smt.packeteer.transport;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.util.Arrays;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.jetbrains.annotations.Nullable;
+
+import co.casterlabs.smt.packeteer.Packet;
+import co.casterlabs.smt.packeteer.io.PacketIO;
+import lombok.Getter;
+import lombok.NonNull;
+
+/**
+ * Collects frames and writes them out in batches using a single gathering
+ * write, rather than issuing several small writes per frame.
+ * 
+ * <p>
+ * Headers and small payloads are copied into a staging buffer, larger payloads
+ * are referenced as-is and handed to the channel alongside it. This means that
+ * a payload passed to one of the write methods <b>must not be modified</b>
+ * until the batch containing it has been flushed.
+ * 
+ * <p>
+ * A batch is flushed once it reaches {@link #maxBatchBytes} or
+ * {@link #maxBatchPackets}, or once its oldest frame has been waiting for
+ * longer than the max latency. The latency is only checked when writing, so
+ * either call {@link #flushIfDue()} from your own loop or use
+ * {@link #scheduleFlushes(ScheduledExecutorService)}.
+ * 
+ * @implNote The channel should be in blocking mode, a non-blocking channel
+ *           will be spun on until the whole batch has been written.
+ */
+public class BatchingPacketWriter implements Flushable, Closeable {
+    public static final int DEFAULT_MAX_BATCH_BYTES = 64 * 1024;
+    public static final int DEFAULT_MAX_BATCH_PACKETS = 64;
+    public static final long DEFAULT_MAX_LATENCY_NANOS = TimeUnit.MILLISECONDS.toNanos(5);
+
+    /**
+     * Payloads up to this size are copied into the staging buffer, as that is
+     * cheaper than giving them their own slot in the gathering write.
+     */
+    private static final int COPY_THRESHOLD = 512;
+
+    private final PacketIO io;
+    private final GatheringByteChannel channel;
+
+    private final @Getter int maxBatchBytes;
+    private final @Getter int maxBatchPackets;
+    private final long maxLatencyNanos;
+
+    private final ByteBuffer staging;
+    private final ByteBuffer[] gather;
+    private int gatherCount = 0;
+    private int regionStart = 0; // Start of the staged bytes not yet in gather.
+
+    private @Getter int pendingPackets = 0;
+    private @Getter long pendingBytes = 0;
+    private long oldestPendingNanos;
+
+    private @Getter long flushes = 0;
+
+    public BatchingPacketWriter(@NonNull PacketIO io, @NonNull GatheringByteChannel channel) {
+        this(io, channel, DEFAULT_MAX_BATCH_BYTES, DEFAULT_MAX_BATCH_PACKETS, DEFAULT_MAX_LATENCY_NANOS, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @param maxBatchBytes   the amount of bytes after which a batch is flushed.
+     * @param maxBatchPackets the amount of frames after which a batch is flushed.
+     * @param maxLatency      how long a frame may wait before its batch is
+     *                        flushed.
+     */
+    public BatchingPacketWriter(@NonNull PacketIO io, @NonNull GatheringByteChannel channel, int maxBatchBytes, int maxBatchPackets, long maxLatency, @NonNull TimeUnit unit) {
+        if (maxBatchBytes < 1) throw new IllegalArgumentException("maxBatchBytes must be positive.");
+        if (maxBatchPackets < 1) throw new IllegalArgumentException("maxBatchPackets must be positive.");
+        if (maxLatency < 0) throw new IllegalArgumentException("maxLatency cannot be negative.");
+
+        this.io = io;
+        this.channel = channel;
+        this.maxBatchBytes = maxBatchBytes;
+        this.maxBatchPackets = maxBatchPackets;
+        this.maxLatencyNanos = unit.toNanos(maxLatency);
+
+        // Room for a full batch plus whatever frame pushes it over the limit.
+        this.staging = ByteBuffer.allocateDirect(maxBatchBytes + PacketIO.headerMaxLength + COPY_THRESHOLD);
+        // Worst case, every frame has a staged region and a payload. Plus the tail.
+        this.gather = new ByteBuffer[maxBatchPackets * 2 + 1];
+    }
+
+    public long getMaxLatency(@NonNull TimeUnit unit) {
+        return unit.convert(this.maxLatencyNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void write(@NonNull Packet packet) throws IOException {
+        this.write(packet.getId(), packet.getExtendedId(), ByteBuffer.wrap(packet.serialize()), System.currentTimeMillis());
+    }
+
+    public void write(int id, @Nullable String extendedId, byte[] payload, long timestamp) throws IOException {
+        this.write(id, extendedId, ByteBuffer.wrap(payload), timestamp);
+    }
+
+    /**
+     * Adds a frame to the current batch, flushing if any of the limits have been
+     * reached. The payload's position is left untouched.
+     */
+    public synchronized void write(int id, @Nullable String extendedId, @NonNull ByteBuffer payload, long timestamp) throws IOException {
+        int payloadLength = payload.remaining();
+        boolean copy = payloadLength <= COPY_THRESHOLD;
+
+        if (this.staging.remaining() < PacketIO.headerMaxLength + (copy ? payloadLength : 0)) {
+            this.flush();
+        }
+
+        int start = this.staging.position();
+        this.io.serializeHeader(id, extendedId, payload, timestamp, this.staging);
+
+        if (copy) {
+            this.staging.put(payload.duplicate());
+        } else {
+            this.closeRegion();
+            this.gather[this.gatherCount++] = payload.duplicate();
+        }
+
+        if (this.pendingPackets == 0) {
+            this.oldestPendingNanos = System.nanoTime();
+        }
+        this.pendingPackets++;
+        this.pendingBytes += this.staging.position() - start + (copy ? 0 : payloadLength);
+
+        if (this.pendingPackets >= this.maxBatchPackets ||
+            this.pendingBytes >= this.maxBatchBytes ||
+            System.nanoTime() - this.oldestPendingNanos >= this.maxLatencyNanos) {
+            this.flush();
+        }
+    }
+
+    /**
+     * Flushes the current batch if its oldest frame has waited for longer than
+     * the max latency.
+     * 
+     * @return whether or not a flush happened.
+     */
+    public synchronized boolean flushIfDue() throws IOException {
+        if (this.pendingPackets == 0) return false;
+        if (System.nanoTime() - this.oldestPendingNanos < this.maxLatencyNanos) return false;
+
+        this.flush();
+        return true;
+    }
+
+    /**
+     * Useful for event loops, e.g as a {@link java.nio.channels.Selector} timeout.
+     * 
+     * @return how long until the current batch is due, 0 if it is overdue or -1 if
+     *         there is nothing pending.
+     */
+    public synchronized long getNanosUntilDue() {
+        if (this.pendingPackets == 0) return -1;
+        return Math.max(0, this.maxLatencyNanos - (System.nanoTime() - this.oldestPendingNanos));
+    }
+
+    /**
+     * Periodically calls {@link #flushIfDue()} on the given executor. Failed
+     * flushes are logged using the {@link PacketIO}'s logger. Cancel the returned
+     * future once you are done with this writer.
+     */
+    public ScheduledFuture<?> scheduleFlushes(@NonNull ScheduledExecutorService executor) {
+        long period = Math.max(1, this.maxLatencyNanos / 2);
+        return executor.scheduleAtFixedRate(() -> {
+            try {
+                this.flushIfDue();
+            } catch (IOException e) {
+                this.io.getLogger().severe("Unable to flush batch!");
+                this.io.getLogger().exception(e);
+            }
+        }, period, period, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public synchronized void flush() throws IOException {
+        this.closeRegion();
+        if (this.gatherCount == 0) return;
+
+        try {
+            long remaining = this.pendingBytes;
+            while (remaining > 0) {
+                remaining -= this.channel.write(this.gather, 0, this.gatherCount);
+            }
+            this.flushes++;
+        } finally {
+            // Even on failure, there's no sensible way to resume a partial batch.
+            Arrays.fill(this.gather, 0, this.gatherCount, null);
+            this.gatherCount = 0;
+            this.staging.clear();
+            this.regionStart = 0;
+            this.pendingPackets = 0;
+            this.pendingBytes = 0;
+        }
+    }
+
+    /**
+     * Flushes anything pending and then closes the channel.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            this.flush();
+        } finally {
+            this.channel.close();
+        }
+    }
+
+    /**
+     * Moves the staged bytes written since the last call into the gather list.
+     */
+    private void closeRegion() {
+        int position = this.staging.position();
+        if (position == this.regionStart) return;
+
+        ByteBuffer region = this.staging.duplicate();
+        region.position(this.regionStart).limit(position);
+        this.gather[this.gatherCount++] = region;
+        this.regionStart = position;
+    }
+
+}
@@ -0,0 +1,395 @@
+/*
+ * Copyright 2023 Casterlabs
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+package co.casterlabs.smt.packeteer.transport;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.jetbrains.annotations.Nullable;
+
+import co.casterlabs.smt.packeteer.Packet;
+import co.casterlabs.smt.packeteer.ReservedPacketIDs;
+import co.casterlabs.smt.packeteer.io.PacketIO;
+import co.casterlabs.smt.packeteer.io.PacketIO.DeserializationResult;
+import co.casterlabs.smt.packeteer.io.VarIntIOUtil;
+import co.casterlabs.smt.packeteer.util.IntObjectMap;
+import lombok.Getter;
+import lombok.NonNull;
+
+/**
+ * Sends frames over UDP, marked with {@link PacketIO#FLAG_UNRELIABLE}, for
+ * things like live audio where a late frame is worthless and TCP's head-of-line
+ * blocking would stall the whole stream.
+ * 
+ * <p>
+ * Frames are packed into datagrams of up to {@link #maxDatagramSize} bytes,
+ * each frame being prefixed with a varint sequence number that counts up per
+ * stream (packet ID + extended ID). The receiver uses these to count lost and
+ * reordered frames and to drop duplicated ones (including any that are more
+ * than 64 frames behind, which can't be told apart from duplicates), and hands
+ * frames to a {@link JitterBuffer} which releases them in timestamp order once
+ * their playout delay has passed:
+ * 
+ * <pre>
+ * while (running) {
+ *     transport.receive();
+ *     DeserializationResult frame;
+ *     while ((frame = transport.poll()) != null) {
+ *         // ...
+ *     }
+ * }
+ * </pre>
+ * 
+ * @implNote Sending requires the channel to be connected. Sending is thread
+ *           safe, receiving and polling should be done from a single thread.
+ */
+public class DatagramTransport implements Closeable {
+    /**
+     * Stays under the typical internet MTU once IP and UDP headers are added.
+     */
+    public static final int DEFAULT_MAX_DATAGRAM_SIZE = 1200;
+
+    private static final int RECEIVE_BUFFER_SIZE = 65507; // Largest possible UDP payload.
+
+    private final PacketIO io;
+    private final DatagramChannel channel;
+    private final @Getter int maxDatagramSize;
+    private final JitterBuffer jitterBuffer;
+
+    private final Object sendLock = new Object();
+    private final ByteBuffer sendBuffer;
+    private final IntObjectMap<Map<String, int[]>> sendSequences = new IntObjectMap<>();
+    private int pendingFrames = 0;
+    private @Nullable FecEncoder fecEncoder;
+
+    private final ByteBuffer receiveBuffer = ByteBuffer.allocateDirect(RECEIVE_BUFFER_SIZE);
+    private final IntObjectMap<Map<String, ReceiveWindow>> receiveWindows = new IntObjectMap<>();
+    private final FecDecoder fecDecoder = new FecDecoder();
+
+    private @Getter long sentDatagrams = 0;
+    private @Getter long droppedDatagrams = 0; // Send buffer full.
+    private @Getter long receivedDatagrams = 0;
+    private @Getter long malformedDatagrams = 0;
+    private @Getter long lostFrames = 0;
+    private @Getter long reorderedFrames = 0;
+    private @Getter long duplicateFrames = 0;
+
+    public DatagramTransport(@NonNull PacketIO io, @NonNull DatagramChannel channel) {
+        this(io, channel, DEFAULT_MAX_DATAGRAM_SIZE, JitterBuffer.DEFAULT_PLAYOUT_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @param playoutDelay how long frames are held in the jitter buffer, longer
+     *                     delays absorb more jitter at the cost of latency.
+     */
+    public DatagramTransport(@NonNull PacketIO io, @NonNull DatagramChannel channel, int maxDatagramSize, long playoutDelay, @NonNull TimeUnit unit) {
+        if (maxDatagramSize < PacketIO.headerMaxLength + VarIntIOUtil.VARINT_MAX_LENGTH + 1 || maxDatagramSize > RECEIVE_BUFFER_SIZE) {
+            throw new IllegalArgumentException("maxDatagramSize must be within [" + (PacketIO.headerMaxLength + VarIntIOUtil.VARINT_MAX_LENGTH + 1) + ", " + RECEIVE_BUFFER_SIZE + "].");
+        }
+
+        this.io = io;
+        this.channel = channel;
+        this.maxDatagramSize = maxDatagramSize;
+        this.sendBuffer = ByteBuffer.allocateDirect(maxDatagramSize);
+        this.jitterBuffer = new JitterBuffer(playoutDelay, unit, JitterBuffer.DEFAULT_MAX_FRAMES);
+    }
+
+    /* -------- */
+    /* Send     */
+    /* -------- */
+
+    public void send(@NonNull Packet packet) throws IOException {
+        this.send(packet.getId(), packet.getExtendedId(), ByteBuffer.wrap(packet.serialize()), System.currentTimeMillis());
+    }
+
+    /**
+     * Adds a frame to the current datagram, sending the datagram first if the
+     * frame doesn't fit. Call {@link #flush()} to send the datagram right away.
+     * 
+     * @throws IOException if the frame is too large to ever fit in a datagram.
+     */
+    public void send(int id, @Nullable String extendedId, @NonNull ByteBuffer payload, long timestamp) throws IOException {
+        synchronized (this.sendLock) {
+            ByteBuffer entry = this.append(id, extendedId, payload, timestamp);
+
+            if (this.fecEncoder != null) {
+                ByteBuffer parity = this.fecEncoder.protect(entry);
+                if (parity != null) {
+                    // On its own, so that it isn't lost along with the frames it protects.
+                    this.flush();
+                    this.append(ReservedPacketIDs.IRB_FEC_PARITY_TYPE, null, parity, timestamp);
+                    this.flush();
+                }
+            }
+        }
+    }
+
+    /**
+     * Enables forward error correction: after every {@code groupSize} frames a
+     * parity frame is sent in a datagram of its own, which lets the receiver
+     * rebuild any single lost frame of the group without a retransmit. Frames too
+     * large for the parity to fit in a datagram are left unprotected.
+     * 
+     * @param groupSize the amount of frames per parity frame, or 0 to disable
+     *                  (the default).
+     * 
+     * @see             FecEncoder
+     */
+    public void setFecGroupSize(int groupSize) {
+        synchronized (this.sendLock) {
+            if (groupSize == 0) {
+                this.fecEncoder = null;
+                return;
+            }
+
+            int maxFrameLength = this.maxDatagramSize - PacketIO.headerMaxLength - VarIntIOUtil.VARINT_MAX_LENGTH - FecEncoder.parityOverhead(groupSize);
+            if (maxFrameLength < 1) throw new IllegalArgumentException("Datagrams are too small for a group size of " + groupSize);
+
+            this.fecEncoder = new FecEncoder(groupSize, maxFrameLength);
+        }
+    }
+
+    /**
+     * Adds the frame, prefixed with its sequence number, to the current datagram.
+     * 
+     * @return a view of what was added.
+     */
+    private ByteBuffer append(int id, @Nullable String extendedId, ByteBuffer payload, long timestamp) throws IOException {
+        int[] sequence = sequenceOf(this.sendSequences, id, extendedId);
+
+        for (int attempt = 0; attempt < 2; attempt++) {
+            int start = this.sendBuffer.position();
+            try {
+                putVarInt(this.sendBuffer, sequence[0]);
+                this.io.serialize(id, extendedId, payload, timestamp, 1 << PacketIO.FLAG_UNRELIABLE, this.sendBuffer);
+                this.pendingFrames++;
+                sequence[0]++;
+
+                ByteBuffer entry = this.sendBuffer.duplicate();
+                entry.flip().position(start);
+                return entry;
+            } catch (BufferOverflowException e) {
+                this.sendBuffer.position(start);
+                if (this.pendingFrames == 0) break;
+                this.flush();
+            }
+        }
+
+        throw new IOException("Frame is too large for a " + this.maxDatagramSize + " byte datagram.");
+    }
+
+    /**
+     * Sends the current datagram, if it has any frames in it. Datagrams the OS
+     * refuses to send (its buffer being full) are dropped.
+     */
+    public void flush() throws IOException {
+        synchronized (this.sendLock) {
+            if (this.pendingFrames == 0) return;
+
+            this.sendBuffer.flip();
+            try {
+                if (this.channel.write(this.sendBuffer) == 0) {
+                    this.droppedDatagrams++;
+                } else {
+                    this.sentDatagrams++;
+                }
+            } finally {
+                this.sendBuffer.clear();
+                this.pendingFrames = 0;
+            }
+        }
+    }
+
+    /* -------- */
+    /* Receive  */
+    /* -------- */
+
+    /**
+     * Receives a single datagram and hands its frames to the jitter buffer. Blocks
+     * if the channel is in blocking mode.
+     * 
+     * @return the amount of frames accepted, or -1 if no datagram was available.
+     */
+    public int receive() throws IOException {
+        this.receiveBuffer.clear();
+        if (this.channel.receive(this.receiveBuffer) == null) return -1;
+        this.receiveBuffer.flip();
+        this.receivedDatagrams++;
+
+        // The payloads of the results are views of this copy, so it must not be reused.
+        ByteBuffer datagram = ByteBuffer.allocate(this.receiveBuffer.remaining());
+        datagram.put(this.receiveBuffer).flip();
+
+        return this.accept(datagram, System.currentTimeMillis(), false);
+    }
+
+    private int accept(ByteBuffer datagram, long now, boolean recovered) {
+        int accepted = 0;
+        while (datagram.hasRemaining()) {
+            int entryStart = datagram.position();
+            int sequenceLength = VarIntIOUtil.varIntLength(datagram, datagram.position(), datagram.limit());
+            if (sequenceLength < 0) {
+                this.malformedDatagrams++;
+                break;
+            }
+            int sequence = VarIntIOUtil.getVarInt(datagram, datagram.position());
+            datagram.position(datagram.position() + sequenceLength);
+
+            DeserializationResult frame = this.io.deserialize(datagram);
+            if (frame == null || frame.discardedBytes > 0) {
+                // Datagrams arrive whole or not at all, so this can only be garbage.
+                this.malformedDatagrams++;
+                break;
+            }
+
+            if (frame.packetId == ReservedPacketIDs.IRB_FEC_PARITY_TYPE) {
+                ByteBuffer rebuilt = this.fecDecoder.recover(frame.payloadBuffer);
+                if (rebuilt != null) {
+                    ByteBuffer copy = ByteBuffer.allocate(rebuilt.remaining());
+                    copy.put(rebuilt).flip();
+                    accepted += this.accept(copy, now, true);
+                }
+                continue;
+            }
+
+            // Parity may overtake the last frame of its group, in which case that frame
+            // has already been rebuilt by the time it arrives.
+            if (!this.track(frame, sequence, recovered)) {
+                this.duplicateFrames++;
+                continue;
+            }
+
+            if (!recovered) {
+                ByteBuffer entry = datagram.duplicate();
+                entry.limit(datagram.position()).position(entryStart);
+                this.fecDecoder.receive(entry);
+            }
+
+            if (this.jitterBuffer.offer(frame, now)) {
+                accepted++;
+            }
+        }
+        return accepted;
+    }
+
+    /**
+     * @return the next frame whose playout delay has passed, or null if none are
+     *         due yet.
+     */
+    public @Nullable DeserializationResult poll() {
+        return this.jitterBuffer.poll(System.currentTimeMillis());
+    }
+
+    /**
+     * @return how many milliseconds until the next frame is due, or -1 if none
+     *         are buffered.
+     */
+    public long getMillisUntilDue() {
+        return this.jitterBuffer.getMillisUntilDue(System.currentTimeMillis());
+    }
+
+    /**
+     * @return frames dropped for arriving after a newer frame of their stream had
+     *         already been released.
+     */
+    public long getLateFrames() {
+        return this.jitterBuffer.getLateFrames();
+    }
+
+    /**
+     * @return frames rebuilt from parity, see {@link #setFecGroupSize(int)}.
+     */
+    public long getRecoveredFrames() {
+        return this.fecDecoder.getRecoveredFrames();
+    }
+
+    public int getBufferedFrames() {
+        return this.jitterBuffer.size();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            this.flush();
+        } finally {
+            this.channel.close();
+        }
+    }
+
+    /**
+     * Compares the sequence number against the one expected for the frame's
+     * stream. Gaps count as lost, and frames that turn up after the gap has been
+     * counted are taken back out of the lost count and counted as reordered (or
+     * recovered).
+     * 
+     * @return false if the frame is a duplicate, or too far behind to tell
+     *         whether it is one.
+     */
+    private boolean track(DeserializationResult frame, int sequence, boolean recovered) {
+        ReceiveWindow window = this.receiveWindows
+            .computeIfAbsent(frame.packetId, (id) -> new HashMap<>())
+            .get(frame.extendedId);
+        if (window == null) {
+            window = new ReceiveWindow();
+            window.next = sequence;
+            this.receiveWindows.get(frame.packetId).put(frame.extendedId, window);
+        }
+
+        int gap = sequence - window.next; // Wraps around nicely.
+        if (gap >= 0) {
+            this.lostFrames += gap;
+            window.received = gap >= ReceiveWindow.SIZE - 1 ? 1 : (window.received << (gap + 1)) | 1;
+            window.next = sequence + 1;
+            return true;
+        }
+
+        int age = -gap - 1; // 0 is the newest frame received.
+        if (age >= ReceiveWindow.SIZE || (window.received & (1L << age)) != 0) {
+            return false;
+        }
+
+        window.received |= 1L << age;
+        if (this.lostFrames > 0) this.lostFrames--;
+        if (!recovered) this.reorderedFrames++;
+        return true;
+    }
+
+    private static int[] sequenceOf(IntObjectMap<Map<String, int[]>> sequences, int id, @Nullable String extendedId) {
+        return sequences
+            .computeIfAbsent(id, (key) -> new HashMap<>())
+            .computeIfAbsent(extendedId, (key) -> new int[1]);
+    }
+
+    /**
+     * Which of the last {@link #SIZE} sequence numbers of a stream have been
+     * received, so that duplicated datagrams can be told apart from reordered
+     * ones.
+     */
+    private static class ReceiveWindow {
+        private static final int SIZE = 64;
+
+        private int next;
+        private long received; // Bit n is set if next - 1 - n was received.
+    }
+
+    private static void putVarInt(ByteBuffer buf, int v) {
+        if (buf.remaining() < VarIntIOUtil.varIntSize(v)) throw new BufferOverflowException();
+        buf.position(buf.position() + VarIntIOUtil.putVarInt(buf, buf.position(), v));
+    }
+
+}
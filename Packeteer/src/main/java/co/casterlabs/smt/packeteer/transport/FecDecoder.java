@@ -0,0 +1,173 @@
+/*
+ * Copyright 2023 Casterlabs
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+package co.casterlabs.smt.packeteer.transport;
+
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32C;
+
+import org.jetbrains.annotations.Nullable;
+
+import co.casterlabs.smt.packeteer.io.PacketIO;
+
+import lombok.Getter;
+
+/**
+ * Rebuilds lost frames from the parity produced by a {@link FecEncoder}. Every
+ * received frame is handed to {@link #receive(ByteBuffer)}, which keeps a copy
+ * of the last {@link #window} of them, and every parity payload to
+ * {@link #recover(ByteBuffer)}. If exactly one frame of the parity's group is
+ * missing it is rebuilt, a group missing more than that can't be recovered.
+ * 
+ * @implNote Frame slots are reused once the window wraps around, so nothing is
+ *           allocated per group once warmed up. This class is not thread safe.
+ */
+public class FecDecoder {
+    public static final int DEFAULT_WINDOW = 4 * FecEncoder.MAX_GROUP_SIZE;
+
+    private final @Getter int window;
+
+    private final byte[][] frames;
+    private final int[] lengths;
+    private final int[] checksums;
+    private int next = 0;
+
+    private final byte[] recovered = new byte[PacketIO.bodyMaxLength - FecEncoder.parityOverhead(2)];
+    private final int[] groupChecksums = new int[FecEncoder.MAX_GROUP_SIZE];
+    private final int[] groupSlots = new int[FecEncoder.MAX_GROUP_SIZE];
+    private final CRC32C crc = new CRC32C();
+
+    private @Getter long recoveredFrames = 0;
+    private @Getter long unrecoverableGroups = 0;
+
+    public FecDecoder() {
+        this(DEFAULT_WINDOW);
+    }
+
+    /**
+     * @param window how many received frames to remember, must cover at least a
+     *               couple of groups plus however far frames may be reordered.
+     */
+    public FecDecoder(int window) {
+        if (window < 1) throw new IllegalArgumentException("window must be positive.");
+
+        this.window = window;
+        this.frames = new byte[window][];
+        this.lengths = new int[window];
+        this.checksums = new int[window];
+    }
+
+    /**
+     * Remembers a received frame. The frame's position is left untouched.
+     */
+    public void receive(ByteBuffer frame) {
+        int length = frame.remaining();
+        if (length > this.recovered.length) return; // Too long to have been protected.
+
+        this.crc.reset();
+        this.crc.update(frame.duplicate());
+        this.remember(frame, length, (int) this.crc.getValue());
+    }
+
+    /**
+     * @return the rebuilt frame if exactly one of the group was missing, only
+     *         valid until the next call. Otherwise null, including when the
+     *         parity is malformed.
+     */
+    public @Nullable ByteBuffer recover(ByteBuffer parity) {
+        ByteBuffer in = parity.duplicate();
+        if (!in.hasRemaining()) return null;
+
+        int count = in.get() & 0xFF;
+        if (count < 2 || count > FecEncoder.MAX_GROUP_SIZE || in.remaining() < (4 * count) + 4) return null;
+
+        int missing = -1;
+        for (int i = 0; i < count; i++) {
+            int checksum = in.getInt();
+            int slot = this.find(checksum);
+
+            this.groupChecksums[i] = checksum;
+            this.groupSlots[i] = slot;
+
+            if (slot == -1) {
+                if (missing != -1) {
+                    this.unrecoverableGroups++;
+                    return null;
+                }
+                missing = i;
+            }
+        }
+        if (missing == -1) return null; // Nothing lost.
+
+        int length = in.getInt();
+        int parityLength = in.remaining();
+        if (parityLength > this.recovered.length) return null;
+        in.get(this.recovered, 0, parityLength);
+
+        for (int i = 0; i < count; i++) {
+            int slot = this.groupSlots[i];
+            if (slot == -1) continue;
+
+            byte[] frame = this.frames[slot];
+            int frameLength = this.lengths[slot];
+            if (frameLength > parityLength) {
+                this.unrecoverableGroups++;
+                return null;
+            }
+
+            length ^= frameLength;
+            for (int j = 0; j < frameLength; j++) {
+                this.recovered[j] ^= frame[j];
+            }
+        }
+
+        if (length < 0 || length > parityLength) {
+            this.unrecoverableGroups++;
+            return null;
+        }
+
+        // Make sure we actually got the missing frame back.
+        this.crc.reset();
+        this.crc.update(this.recovered, 0, length);
+        if ((int) this.crc.getValue() != this.groupChecksums[missing]) {
+            this.unrecoverableGroups++;
+            return null;
+        }
+
+        ByteBuffer result = ByteBuffer.wrap(this.recovered, 0, length);
+        this.remember(result, length, this.groupChecksums[missing]);
+        this.recoveredFrames++;
+        return result;
+    }
+
+    private void remember(ByteBuffer frame, int length, int checksum) {
+        int slot = this.next;
+        this.next = (this.next + 1) % this.window;
+
+        byte[] copy = this.frames[slot];
+        if (copy == null || copy.length < length) {
+            copy = new byte[Math.max(length, 64)];
+            this.frames[slot] = copy;
+        }
+        frame.duplicate().get(copy, 0, length);
+
+        this.lengths[slot] = length;
+        this.checksums[slot] = checksum;
+    }
+
+    private int find(int checksum) {
+        for (int i = 0; i < this.window; i++) {
+            if (this.frames[i] != null && this.checksums[i] == checksum) return i;
+        }
+        return -1;
+    }
+
+}
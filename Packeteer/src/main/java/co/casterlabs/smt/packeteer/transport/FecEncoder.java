@@ -0,0 +1,144 @@
+/*
+ * Copyright 2023 Casterlabs
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+package co.casterlabs.smt.packeteer.transport;
+
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32C;
+
+import org.jetbrains.annotations.Nullable;
+
+import co.casterlabs.smt.packeteer.ReservedPacketIDs;
+import co.casterlabs.smt.packeteer.io.PacketIO;
+import lombok.Getter;
+
+/**
+ * Produces XOR parity over groups of serialized frames, so that a receiver
+ * using a {@link FecDecoder} can rebuild any single lost frame of a group
+ * without waiting a round trip for a retransmit. Send the parity under
+ * {@link ReservedPacketIDs#IRB_FEC_PARITY_TYPE}, preferably in a separate
+ * datagram from the frames it protects.
+ * 
+ * <p>
+ * The parity payload is laid out as:
+ * 
+ * <pre>
+ * [byte count] [int checksum] * count [int xor of lengths] [xor of the frames, zero padded to the longest]
+ * </pre>
+ * 
+ * where each checksum is the CRC32C of a whole frame, which lets the decoder
+ * work out which frame of the group is missing.
+ * 
+ * @implNote All buffers are allocated up front and reused, this class is not
+ *           thread safe.
+ */
+public class FecEncoder {
+    public static final int MAX_GROUP_SIZE = 64;
+
+    private final @Getter int groupSize;
+    private final @Getter int maxFrameLength;
+
+    private final byte[] parity;
+    private final int[] checksums;
+    private final ByteBuffer payload;
+    private final CRC32C crc = new CRC32C();
+
+    private int count = 0;
+    private int longest = 0;
+    private int xorLengths = 0;
+
+    /**
+     * @param groupSize how many frames each parity packet protects, smaller groups
+     *                  survive more loss at the cost of more overhead.
+     */
+    public FecEncoder(int groupSize) {
+        this(groupSize, PacketIO.bodyMaxLength - parityOverhead(groupSize));
+    }
+
+    /**
+     * @param groupSize      how many frames each parity packet protects.
+     * @param maxFrameLength the longest frame to protect, for when the parity
+     *                       payload has to fit in less than a whole packet body
+     *                       (e.g a datagram).
+     */
+    public FecEncoder(int groupSize, int maxFrameLength) {
+        if (groupSize < 2 || groupSize > MAX_GROUP_SIZE) throw new IllegalArgumentException("groupSize must be within [2, " + MAX_GROUP_SIZE + "].");
+        if (maxFrameLength < 1 || maxFrameLength > PacketIO.bodyMaxLength - parityOverhead(groupSize)) {
+            throw new IllegalArgumentException("maxFrameLength must be within [1, " + (PacketIO.bodyMaxLength - parityOverhead(groupSize)) + "].");
+        }
+
+        this.groupSize = groupSize;
+        this.maxFrameLength = maxFrameLength;
+        this.parity = new byte[maxFrameLength];
+        this.checksums = new int[groupSize];
+        this.payload = ByteBuffer.allocate(PacketIO.bodyMaxLength);
+    }
+
+    /**
+     * Adds a frame to the current group. Frames longer than
+     * {@link #maxFrameLength} can't be protected and are left out of the group.
+     * The frame's position is left untouched.
+     * 
+     * @return the parity payload once the group is complete, only valid until the
+     *         next call. Otherwise null.
+     */
+    public @Nullable ByteBuffer protect(ByteBuffer frame) {
+        int length = frame.remaining();
+        if (length > this.maxFrameLength) return null;
+
+        int position = frame.position();
+        for (int i = 0; i < length; i++) {
+            this.parity[i] ^= frame.get(position + i);
+        }
+
+        this.crc.reset();
+        this.crc.update(frame.duplicate());
+        this.checksums[this.count++] = (int) this.crc.getValue();
+        this.longest = Math.max(this.longest, length);
+        this.xorLengths ^= length;
+
+        if (this.count < this.groupSize) return null;
+
+        ByteBuffer payload = this.payload;
+        payload.clear();
+        payload.put((byte) this.count);
+        for (int i = 0; i < this.count; i++) {
+            payload.putInt(this.checksums[i]);
+        }
+        payload.putInt(this.xorLengths);
+        payload.put(this.parity, 0, this.longest);
+        payload.flip();
+
+        this.reset();
+        return payload;
+    }
+
+    /**
+     * Abandons the current group, e.g after a reconnect.
+     */
+    public void reset() {
+        for (int i = 0; i < this.longest; i++) {
+            this.parity[i] = 0;
+        }
+        this.count = 0;
+        this.longest = 0;
+        this.xorLengths = 0;
+    }
+
+    /**
+     * @return the bytes a parity payload needs on top of the longest frame, i.e
+     *         the count, the group's checksums and the xor of the lengths.
+     */
+    static int parityOverhead(int groupSize) {
+        return 1 + (4 * groupSize) + 4;
+    }
+
+}
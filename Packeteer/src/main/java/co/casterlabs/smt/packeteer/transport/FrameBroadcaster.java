@@ -0,0 +1,264 @@
+/*
+ * Copyright 2023 Casterlabs
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+package co.casterlabs.smt.packeteer.transport;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jetbrains.annotations.Nullable;
+
+import co.casterlabs.smt.packeteer.Packet;
+import co.casterlabs.smt.packeteer.io.BufferPool;
+import co.casterlabs.smt.packeteer.io.PacketIO;
+import co.casterlabs.smt.packeteer.io.PooledBuffer;
+import lombok.Getter;
+import lombok.NonNull;
+
+/**
+ * Relays frames from one source to many subscribers. Each frame is encoded
+ * once, into a reference counted {@link PooledBuffer} that every subscriber's
+ * queue shares, so the cost of a broadcast is the encode plus the bytes
+ * written rather than an encode per subscriber. The buffer goes back to the
+ * pool once the last subscriber has written it.
+ * 
+ * <p>
+ * Subscribers are written to as far as their channel allows after every
+ * broadcast, whatever doesn't fit stays queued until the next broadcast or
+ * {@link Subscriber#flush()} (e.g when a {@link java.nio.channels.Selector}
+ * reports the channel as writable). A subscriber that falls behind by more than
+ * {@link #maxQueuedFrames} or {@link #maxQueuedBytes} is evicted: its queue is
+ * released and its channel closed, so that one slow viewer can't hold buffers
+ * hostage for everyone else. The same happens if its channel fails.
+ * 
+ * <p>
+ * As every subscriber receives the exact same bytes, per-connection state such
+ * as a {@link co.casterlabs.smt.packeteer.io.HeaderDeltaEncoder} can't be used
+ * here.
+ * 
+ * @implNote Channels should be in non-blocking mode, a blocking channel stalls
+ *           the broadcast (and thus every other subscriber) whenever it can't
+ *           keep up. This class is thread safe.
+ */
+public class FrameBroadcaster implements Closeable {
+    public static final int DEFAULT_MAX_QUEUED_FRAMES = 512;
+    public static final int DEFAULT_MAX_QUEUED_BYTES = 4 * 1024 * 1024;
+
+    private final PacketIO io;
+    private final BufferPool pool;
+    private final @Getter int maxQueuedFrames;
+    private final @Getter int maxQueuedBytes;
+
+    private final List<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+    private final Object broadcastLock = new Object();
+    private final ByteBuffer encodeBuffer = ByteBuffer.allocate(PacketIO.frameMaxLength);
+
+    private volatile @Getter long broadcastFrames = 0;
+    private final AtomicLong evictedSubscribers = new AtomicLong();
+
+    public FrameBroadcaster(@NonNull PacketIO io) {
+        this(io, new BufferPool(), DEFAULT_MAX_QUEUED_FRAMES, DEFAULT_MAX_QUEUED_BYTES);
+    }
+
+    /**
+     * @param maxQueuedFrames how many frames a subscriber may fall behind by
+     *                        before it is evicted.
+     * @param maxQueuedBytes  how many bytes a subscriber may fall behind by
+     *                        before it is evicted.
+     */
+    public FrameBroadcaster(@NonNull PacketIO io, @NonNull BufferPool pool, int maxQueuedFrames, int maxQueuedBytes) {
+        if (maxQueuedFrames < 1) throw new IllegalArgumentException("maxQueuedFrames must be positive.");
+        if (maxQueuedBytes < 1) throw new IllegalArgumentException("maxQueuedBytes must be positive.");
+
+        this.io = io;
+        this.pool = pool;
+        this.maxQueuedFrames = maxQueuedFrames;
+        this.maxQueuedBytes = maxQueuedBytes;
+    }
+
+    /**
+     * @return the subscription, which receives every frame broadcast from now on.
+     */
+    public Subscriber subscribe(@NonNull WritableByteChannel channel) {
+        Subscriber subscriber = new Subscriber(channel);
+        this.subscribers.add(subscriber);
+        return subscriber;
+    }
+
+    public int getSubscriberCount() {
+        return this.subscribers.size();
+    }
+
+    public long getEvictedSubscribers() {
+        return this.evictedSubscribers.get();
+    }
+
+    public void broadcast(@NonNull Packet packet) throws IOException {
+        synchronized (this.broadcastLock) {
+            this.encodeBuffer.clear();
+            this.io.serialize(packet, this.encodeBuffer);
+            this.enqueue();
+        }
+        this.flushAll();
+    }
+
+    /**
+     * Encodes the frame and queues it for every subscriber, then writes to each
+     * of them as far as their channels allow. The payload's position is left
+     * untouched.
+     */
+    public void broadcast(int id, @Nullable String extendedId, @NonNull ByteBuffer payload, long timestamp) throws IOException {
+        synchronized (this.broadcastLock) {
+            this.encodeBuffer.clear();
+            this.io.serialize(id, extendedId, payload, timestamp, this.encodeBuffer);
+            this.enqueue();
+        }
+        this.flushAll();
+    }
+
+    /**
+     * Copies the encoded frame into a buffer of its own and queues it for every
+     * subscriber. Done under the broadcast lock, so that every subscriber sees
+     * the frames in the same order.
+     */
+    private void enqueue() {
+        this.encodeBuffer.flip();
+        PooledBuffer frame = this.pool.lease(this.encodeBuffer.remaining());
+        this.encodeBuffer.get(frame.array(), 0, frame.length());
+
+        try {
+            for (Subscriber subscriber : this.subscribers) {
+                subscriber.enqueue(frame);
+            }
+        } finally {
+            frame.release(); // Ours, the subscribers hold their own.
+        }
+        this.broadcastFrames++;
+    }
+
+    private void flushAll() {
+        for (Subscriber subscriber : this.subscribers) {
+            subscriber.flush();
+        }
+    }
+
+    /**
+     * Unsubscribes everyone, releasing whatever is still queued. The channels are
+     * left open.
+     */
+    @Override
+    public void close() {
+        for (Subscriber subscriber : this.subscribers) {
+            subscriber.unsubscribe();
+        }
+    }
+
+    public class Subscriber {
+        private final @Getter WritableByteChannel channel;
+
+        private final ArrayDeque<PooledBuffer> queue = new ArrayDeque<>();
+        private int headWritten = 0; // How much of the head frame has been written.
+        private @Getter int queuedBytes = 0;
+        private boolean closed = false;
+
+        private volatile @Getter boolean evicted = false;
+        private volatile @Getter long writtenFrames = 0;
+
+        private Subscriber(WritableByteChannel channel) {
+            this.channel = channel;
+        }
+
+        public synchronized int getQueuedFrames() {
+            return this.queue.size();
+        }
+
+        private synchronized void enqueue(PooledBuffer frame) {
+            if (this.closed) return;
+
+            if (this.queue.size() >= maxQueuedFrames || this.queuedBytes + frame.length() > maxQueuedBytes) {
+                io.getLogger().warn("Evicting a subscriber that fell behind by %d frames (%d bytes).", this.queue.size(), this.queuedBytes);
+                this.evict();
+                return;
+            }
+
+            this.queue.add(frame.retain());
+            this.queuedBytes += frame.length();
+        }
+
+        /**
+         * Writes as much of the queue as the channel accepts.
+         * 
+         * @return whether the queue is now empty.
+         */
+        public synchronized boolean flush() {
+            try {
+                PooledBuffer head;
+                while ((head = this.queue.peek()) != null) {
+                    ByteBuffer remaining = head.buffer().duplicate();
+                    remaining.position(this.headWritten);
+
+                    int written = this.channel.write(remaining);
+                    this.headWritten += written;
+                    this.queuedBytes -= written;
+
+                    if (remaining.hasRemaining()) return false; // The channel is full.
+
+                    this.queue.poll().release();
+                    this.headWritten = 0;
+                    this.writtenFrames++;
+                }
+                return true;
+            } catch (IOException e) {
+                if (!this.closed) {
+                    io.getLogger().severe("Unable to write to subscriber, evicting.");
+                    io.getLogger().exception(e);
+                    this.evict();
+                }
+                return this.queue.isEmpty();
+            }
+        }
+
+        /**
+         * Stops receiving frames and releases whatever is still queued. The channel
+         * is left open.
+         */
+        public synchronized void unsubscribe() {
+            if (this.closed) return;
+            this.closed = true;
+            subscribers.remove(this);
+
+            PooledBuffer frame;
+            while ((frame = this.queue.poll()) != null) {
+                frame.release();
+            }
+            this.headWritten = 0;
+            this.queuedBytes = 0;
+        }
+
+        private void evict() {
+            this.unsubscribe();
+            this.evicted = true;
+            evictedSubscribers.incrementAndGet();
+
+            try {
+                this.channel.close();
+            } catch (IOException ignored) {}
+        }
+
+    }
+
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright 2023 Casterlabs
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+package co.casterlabs.smt.packeteer.transport;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.jetbrains.annotations.Nullable;
+
+import co.casterlabs.smt.packeteer.io.PacketIO.DeserializationResult;
+import co.casterlabs.smt.packeteer.util.IntObjectMap;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NonNull;
+
+/**
+ * Holds frames back for a fixed playout delay and releases them in timestamp
+ * order, smoothing out jitter and reordering on the network. Frames that arrive
+ * after a newer frame of the same stream (packet ID + extended ID) has already
+ * been released are dropped rather than being played out of order.
+ * 
+ * <p>
+ * The sender's clock doesn't need to match ours. The offset between the two is
+ * taken as the smallest {@code arrival - timestamp} seen so far, i.e the
+ * fastest transit, and a frame is due at
+ * {@code timestamp + offset + playoutDelay}.
+ * 
+ * @implNote This class is not thread safe.
+ */
+public class JitterBuffer {
+    public static final long DEFAULT_PLAYOUT_DELAY_MILLIS = 60;
+    public static final int DEFAULT_MAX_FRAMES = 1024;
+
+    private final long playoutDelayMillis;
+    private final @Getter int maxFrames;
+
+    private final PriorityQueue<Entry> queue = new PriorityQueue<>();
+    private final IntObjectMap<Map<String, long[]>> lastReleased = new IntObjectMap<>();
+    private long offset = Long.MAX_VALUE;
+    private long arrivals = 0;
+
+    private @Getter long lateFrames = 0;
+    private @Getter long overflowedFrames = 0;
+
+    public JitterBuffer() {
+        this(DEFAULT_PLAYOUT_DELAY_MILLIS, TimeUnit.MILLISECONDS, DEFAULT_MAX_FRAMES);
+    }
+
+    /**
+     * @param maxFrames how many frames may be held at once, frames offered past
+     *                  that are dropped.
+     */
+    public JitterBuffer(long playoutDelay, @NonNull TimeUnit unit, int maxFrames) {
+        if (playoutDelay < 0) throw new IllegalArgumentException("playoutDelay cannot be negative.");
+        if (maxFrames < 1) throw new IllegalArgumentException("maxFrames must be positive.");
+
+        this.playoutDelayMillis = unit.toMillis(playoutDelay);
+        this.maxFrames = maxFrames;
+    }
+
+    public long getPlayoutDelay(@NonNull TimeUnit unit) {
+        return unit.convert(this.playoutDelayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @param  nowMillis the local time the frame arrived at, in the same clock
+     *                   passed to {@link #poll(long)}.
+     * 
+     * @return           false if the frame was dropped, either for being late or
+     *                   for the buffer being full.
+     */
+    public boolean offer(@NonNull DeserializationResult frame, long nowMillis) {
+        if (frame.timestamp < this.lastReleased(frame)) {
+            this.lateFrames++;
+            return false;
+        }
+        if (this.queue.size() >= this.maxFrames) {
+            this.overflowedFrames++;
+            return false;
+        }
+
+        this.offset = Math.min(this.offset, nowMillis - frame.timestamp);
+        this.queue.add(new Entry(frame, this.arrivals++));
+        return true;
+    }
+
+    /**
+     * @return the next due frame, or null if none are due yet.
+     */
+    public @Nullable DeserializationResult poll(long nowMillis) {
+        while (true) {
+            Entry next = this.queue.peek();
+            if (next == null || this.dueAt(next.frame) > nowMillis) return null;
+            this.queue.poll();
+
+            // A newer frame of the same stream may have been released whilst this one
+            // was sat in the buffer with an older timestamp (only possible if the sender's
+            // timestamps go backwards).
+            long[] last = this.lastReleasedSlot(next.frame);
+            if (next.frame.timestamp < last[0]) {
+                this.lateFrames++;
+                continue;
+            }
+            last[0] = next.frame.timestamp;
+            return next.frame;
+        }
+    }
+
+    /**
+     * @return how many milliseconds until the next frame is due (0 if it already
+     *         is), or -1 if the buffer is empty.
+     */
+    public long getMillisUntilDue(long nowMillis) {
+        Entry next = this.queue.peek();
+        if (next == null) return -1;
+        return Math.max(0, this.dueAt(next.frame) - nowMillis);
+    }
+
+    public int size() {
+        return this.queue.size();
+    }
+
+    private long dueAt(DeserializationResult frame) {
+        return frame.timestamp + this.offset + this.playoutDelayMillis;
+    }
+
+    private long lastReleased(DeserializationResult frame) {
+        Map<String, long[]> byExtendedId = this.lastReleased.get(frame.packetId);
+        if (byExtendedId == null) return Long.MIN_VALUE;
+
+        long[] last = byExtendedId.get(frame.extendedId);
+        return last == null ? Long.MIN_VALUE : last[0];
+    }
+
+    private long[] lastReleasedSlot(DeserializationResult frame) {
+        return this.lastReleased
+            .computeIfAbsent(frame.packetId, (id) -> new HashMap<>())
+            .computeIfAbsent(frame.extendedId, (extendedId) -> new long[] {
+                    Long.MIN_VALUE
+            });
+    }
+
+    @AllArgsConstructor
+    private static class Entry implements Comparable<Entry> {
+        private final DeserializationResult frame;
+        private final long arrival;
+
+        @Override
+        public int compareTo(Entry o) {
+            int compare = Long.compare(this.frame.timestamp, o.frame.timestamp);
+            return compare == 0 ? Long.compare(this.arrival, o.arrival) : compare;
+        }
+    }
+
+}
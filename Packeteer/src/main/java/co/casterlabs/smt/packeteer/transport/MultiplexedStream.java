@@ -0,0 +1,342 @@
+/*
+ * Copyright 2023 Casterlabs
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+package co.casterlabs.smt.packeteer.transport;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.jetbrains.annotations.Nullable;
+
+import co.casterlabs.smt.packeteer.io.PacketIO;
+import co.casterlabs.smt.packeteer.io.PacketIO.DeserializationResult;
+import lombok.Getter;
+
+/**
+ * A single logical stream of a {@link StreamMultiplexer}. Sending blocks whilst
+ * the remote end's window is exhausted, and receiving hands credit back to the
+ * remote end as frames are consumed.
+ * 
+ * <p>
+ * This class is thread safe, though frames sent concurrently on the same
+ * stream have no defined order.
+ */
+public class MultiplexedStream implements Closeable {
+    private final StreamMultiplexer mux;
+    private final @Getter @Nullable String extendedId;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition creditAvailable = this.lock.newCondition();
+    private final Condition dataAvailable = this.lock.newCondition();
+
+    private long credit; // Bytes we may still send.
+
+    private final ArrayDeque<DeserializationResult> queue = new ArrayDeque<>();
+    private int queuedBytes = 0;
+    private int consumedBytes = 0; // Not yet handed back as credit.
+
+    private boolean closed = false;
+    private boolean remoteClosed = false;
+
+    MultiplexedStream(StreamMultiplexer mux, @Nullable String extendedId) {
+        this.mux = mux;
+        this.extendedId = extendedId;
+        this.credit = mux.getInitialWindow();
+    }
+
+    /* ---------------- */
+    /* Sending          */
+    /* ---------------- */
+
+    /**
+     * Sends the payload, waiting for the remote end to grant enough credit.
+     */
+    public void send(int packetId, byte[] payload, long timestamp) throws IOException, InterruptedException {
+        checkLength(payload);
+
+        this.lock.lock();
+        try {
+            while (!this.tryAcquireCredit(payload.length)) {
+                this.creditAvailable.await();
+            }
+        } finally {
+            this.lock.unlock();
+        }
+
+        this.write(packetId, payload, timestamp);
+    }
+
+    /**
+     * Sends the payload, waiting at most the given time for the remote end to
+     * grant enough credit.
+     * 
+     * @return false if there was not enough credit in time, in which case nothing
+     *         was sent.
+     */
+    public boolean send(int packetId, byte[] payload, long timestamp, long timeout, TimeUnit unit) throws IOException, InterruptedException {
+        checkLength(payload);
+        long remaining = unit.toNanos(timeout);
+
+        this.lock.lock();
+        try {
+            while (!this.tryAcquireCredit(payload.length)) {
+                if (remaining <= 0) return false;
+                remaining = this.creditAvailable.awaitNanos(remaining);
+            }
+        } finally {
+            this.lock.unlock();
+        }
+
+        this.write(packetId, payload, timestamp);
+        return true;
+    }
+
+    /**
+     * @return the amount of payload bytes we may currently send without waiting.
+     */
+    public long getCredit() {
+        this.lock.lock();
+        try {
+            return this.credit;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Checked before acquiring any credit, a payload that can never be sent would
+     * otherwise leak its credit (or wait forever for more than the window).
+     */
+    private static void checkLength(byte[] payload) throws IOException {
+        if (payload.length > PacketIO.bodyMaxLength) throw new IOException("Payload cannot be larger than " + PacketIO.bodyMaxLength);
+    }
+
+    /**
+     * Writes the payload, handing the acquired credit back if it never made it out.
+     */
+    private void write(int packetId, byte[] payload, long timestamp) throws IOException {
+        try {
+            this.mux.write(packetId, this.extendedId, payload, timestamp);
+        } catch (IOException | RuntimeException e) {
+            this.addCredit(payload.length);
+            throw e;
+        }
+    }
+
+    private boolean tryAcquireCredit(int length) throws IOException {
+        if (this.closed) throw new IOException("Stream is closed.");
+        if (this.remoteClosed) throw new IOException("Stream was closed by the remote end.");
+        if (this.credit < length) return false;
+
+        this.credit -= length;
+        return true;
+    }
+
+    void addCredit(int amount) {
+        this.lock.lock();
+        try {
+            // Saturate, a remote end granting credit in a loop mustn't wrap us into debt.
+            this.credit = this.credit > Long.MAX_VALUE - amount ? Long.MAX_VALUE : this.credit + amount;
+            this.creditAvailable.signalAll();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /* ---------------- */
+    /* Receiving        */
+    /* ---------------- */
+
+    /**
+     * @return the next frame, or null if there is none right now.
+     */
+    public @Nullable DeserializationResult poll() throws IOException {
+        DeserializationResult result;
+
+        this.lock.lock();
+        try {
+            result = this.queue.poll();
+        } finally {
+            this.lock.unlock();
+        }
+
+        this.consumed(result);
+        return result;
+    }
+
+    /**
+     * Waits for the next frame.
+     * 
+     * @return the frame, or null if the remote end closed the stream and every
+     *         frame has been consumed.
+     */
+    public @Nullable DeserializationResult take() throws IOException, InterruptedException {
+        DeserializationResult result;
+
+        this.lock.lock();
+        try {
+            while ((result = this.queue.poll()) == null && !this.remoteClosed && !this.closed) {
+                this.dataAvailable.await();
+            }
+        } finally {
+            this.lock.unlock();
+        }
+
+        this.consumed(result);
+        return result;
+    }
+
+    /**
+     * Waits at most the given time for the next frame.
+     * 
+     * @return the frame, or null if none arrived in time or the stream was closed
+     *         and every frame has been consumed.
+     */
+    public @Nullable DeserializationResult poll(long timeout, TimeUnit unit) throws IOException, InterruptedException {
+        long remaining = unit.toNanos(timeout);
+        DeserializationResult result;
+
+        this.lock.lock();
+        try {
+            while ((result = this.queue.poll()) == null && !this.remoteClosed && !this.closed && remaining > 0) {
+                remaining = this.dataAvailable.awaitNanos(remaining);
+            }
+        } finally {
+            this.lock.unlock();
+        }
+
+        this.consumed(result);
+        return result;
+    }
+
+    /**
+     * @return the amount of payload bytes waiting to be consumed.
+     */
+    public int getQueuedBytes() {
+        this.lock.lock();
+        try {
+            return this.queuedBytes;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Hands credit back to the remote end once half of the window has been
+     * consumed, rather than for every frame.
+     */
+    private void consumed(@Nullable DeserializationResult result) throws IOException {
+        if (result == null) return;
+
+        int credit = 0;
+        this.lock.lock();
+        try {
+            int length = result.payloadBuffer.remaining();
+            this.queuedBytes -= length;
+            this.consumedBytes += length;
+
+            if (this.consumedBytes >= this.mux.getInitialWindow() / 2 && !this.closed && !this.remoteClosed) {
+                credit = this.consumedBytes;
+                this.consumedBytes = 0;
+            }
+        } finally {
+            this.lock.unlock();
+        }
+
+        if (credit > 0) {
+            this.mux.sendCredit(this.extendedId, credit);
+        }
+    }
+
+    /**
+     * @return false if the frame would overrun the window.
+     */
+    boolean enqueue(DeserializationResult result) {
+        int length = result.payloadBuffer.remaining();
+
+        this.lock.lock();
+        try {
+            if (this.closed) return true; // We're no longer interested, quietly discard.
+            if (this.queuedBytes + length > this.mux.getInitialWindow()) return false;
+
+            this.queue.add(result);
+            this.queuedBytes += length;
+            this.dataAvailable.signal();
+            return true;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /* ---------------- */
+    /* Lifecycle        */
+    /* ---------------- */
+
+    public boolean isClosed() {
+        this.lock.lock();
+        try {
+            return this.closed || this.remoteClosed;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    void remoteClosed() {
+        boolean forget;
+
+        this.lock.lock();
+        try {
+            this.remoteClosed = true;
+            forget = this.closed;
+            this.creditAvailable.signalAll();
+            this.dataAvailable.signalAll();
+        } finally {
+            this.lock.unlock();
+        }
+
+        if (forget) this.mux.forget(this);
+    }
+
+    /**
+     * Closes the stream, telling the remote end. Frames still queued are
+     * discarded. The stream is forgotten by the multiplexer once both ends have
+     * closed it.
+     */
+    @Override
+    public void close() throws IOException {
+        boolean forget;
+
+        this.lock.lock();
+        try {
+            if (this.closed) return;
+            this.closed = true;
+            forget = this.remoteClosed;
+
+            this.queue.clear();
+            this.queuedBytes = 0;
+            this.creditAvailable.signalAll();
+            this.dataAvailable.signalAll();
+        } finally {
+            this.lock.unlock();
+        }
+
+        try {
+            this.mux.sendClose(this.extendedId);
+        } finally {
+            if (forget) this.mux.forget(this);
+        }
+    }
+
+}
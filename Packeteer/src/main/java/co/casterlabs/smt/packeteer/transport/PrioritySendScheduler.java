@@ -0,0 +1,328 @@
+/*
+ * Copyright 2023 Casterlabs
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+package co.casterlabs.smt.packeteer.transport;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.jetbrains.annotations.Nullable;
+
+import co.casterlabs.smt.packeteer.Packet;
+import co.casterlabs.smt.packeteer.ReservedPacketIDs;
+import co.casterlabs.smt.packeteer.io.PacketIO;
+import co.casterlabs.smt.packeteer.util.IntObjectMap;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NonNull;
+
+/**
+ * Queues outgoing frames by priority, so that when the link is congested a
+ * burst of video doesn't hold up audio behind it. Frames are written by a
+ * dedicated thread, always taking from the highest priority class that has
+ * anything queued (strict priority, lower classes only get the link when the
+ * higher ones are idle).
+ * 
+ * <p>
+ * Each class has a bounded queue. Frames sent as unreliable (marked with
+ * {@link PacketIO#FLAG_UNRELIABLE}) are dropped once they have been queued for
+ * longer than their class's max age, and make room for newer ones when the
+ * queue is full. Reliable frames are never dropped, instead {@code send} blocks
+ * until there is room.
+ * 
+ * <p>
+ * By default audio and the stream control packets are {@link Priority#HIGH},
+ * everything else is {@link Priority#NORMAL}. Use
+ * {@link #setPriority(int, Priority)} to change that for a packet ID.
+ */
+public class PrioritySendScheduler implements Closeable {
+    public static final int DEFAULT_QUEUE_CAPACITY = 256;
+    public static final long DEFAULT_MAX_AGE_MILLIS = 250;
+
+    private final PacketIO io;
+    private final OutputStream out;
+    private final @Getter int queueCapacity;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = this.lock.newCondition();
+    private final Condition notFull = this.lock.newCondition();
+
+    private final ArrayDeque<Frame>[] queues;
+    private final long[] maxAgeNanos;
+    private final IntObjectMap<Priority> priorities = new IntObjectMap<>();
+    private final Thread writer;
+    private volatile boolean closed = false;
+
+    private volatile @Getter long writtenFrames = 0;
+    private volatile @Getter long staleDrops = 0;
+    private volatile @Getter long overflowDrops = 0;
+
+    public PrioritySendScheduler(@NonNull PacketIO io, @NonNull OutputStream out) {
+        this(io, out, DEFAULT_QUEUE_CAPACITY);
+    }
+
+    /**
+     * @param queueCapacity how many frames each priority class may have queued.
+     */
+    @SuppressWarnings({
+            "unchecked",
+            "rawtypes"
+    })
+    public PrioritySendScheduler(@NonNull PacketIO io, @NonNull OutputStream out, int queueCapacity) {
+        if (queueCapacity < 1) throw new IllegalArgumentException("queueCapacity must be positive.");
+
+        this.io = io;
+        this.out = out;
+        this.queueCapacity = queueCapacity;
+
+        Priority[] values = Priority.values();
+        this.queues = new ArrayDeque[values.length];
+        this.maxAgeNanos = new long[values.length];
+        for (int i = 0; i < values.length; i++) {
+            this.queues[i] = new ArrayDeque<>(queueCapacity);
+            this.maxAgeNanos[i] = TimeUnit.MILLISECONDS.toNanos(DEFAULT_MAX_AGE_MILLIS);
+        }
+
+        this.priorities.put(ReservedPacketIDs.IRB_AUDIO_TYPE, Priority.HIGH);
+        this.priorities.put(ReservedPacketIDs.IRB_STREAM_CREDIT_TYPE, Priority.HIGH);
+        this.priorities.put(ReservedPacketIDs.IRB_STREAM_CLOSE_TYPE, Priority.HIGH);
+
+        this.writer = new Thread(this::writeLoop, "PrioritySendScheduler");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    public void setPriority(int packetId, @NonNull Priority priority) {
+        this.lock.lock();
+        try {
+            this.priorities.put(packetId, priority);
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    public Priority getPriority(int packetId) {
+        this.lock.lock();
+        try {
+            Priority priority = this.priorities.get(packetId);
+            return priority == null ? Priority.NORMAL : priority;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * @param maxAge how long an unreliable frame of the given class may be queued
+     *               before it is dropped, or -1 to never drop them for their age.
+     */
+    public void setMaxAge(@NonNull Priority priority, long maxAge, @NonNull TimeUnit unit) {
+        this.lock.lock();
+        try {
+            this.maxAgeNanos[priority.ordinal()] = maxAge < 0 ? -1 : unit.toNanos(maxAge);
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    public int getQueued(@NonNull Priority priority) {
+        this.lock.lock();
+        try {
+            return this.queues[priority.ordinal()].size();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    public void send(@NonNull Packet packet, boolean unreliable) throws IOException {
+        this.send(packet.getId(), packet.getExtendedId(), ByteBuffer.wrap(packet.serialize()), System.currentTimeMillis(), unreliable);
+    }
+
+    /**
+     * Queues a frame. The payload is copied, so it may be reused straight away.
+     * 
+     * @param  unreliable whether the frame may be dropped, see the class
+     *                    description.
+     * 
+     * @return            false if the frame was dropped straight away (only
+     *                    possible for unreliable frames).
+     * 
+     * @throws IOException if the scheduler has been closed, or the writer failed.
+     */
+    public boolean send(int id, @Nullable String extendedId, @NonNull ByteBuffer payload, long timestamp, boolean unreliable) throws IOException {
+        if (payload.remaining() > PacketIO.bodyMaxLength) throw new IOException("Payload cannot be larger than " + PacketIO.bodyMaxLength);
+
+        ByteBuffer copy = ByteBuffer.allocate(payload.remaining());
+        copy.put(payload.duplicate()).flip();
+        Frame frame = new Frame(id, extendedId, copy, timestamp, unreliable, System.nanoTime());
+
+        this.lock.lock();
+        try {
+            ArrayDeque<Frame> queue = this.queues[this.getPriority(id).ordinal()];
+
+            while (queue.size() >= this.queueCapacity) {
+                if (this.closed) throw new IOException("Scheduler is closed.");
+
+                if (unreliable) {
+                    // Make room by dropping the oldest unreliable frame, or drop this one if
+                    // everything queued has to be delivered.
+                    if (!removeOldestUnreliable(queue)) {
+                        this.overflowDrops++;
+                        return false;
+                    }
+                    this.overflowDrops++;
+                } else {
+                    this.notFull.awaitUninterruptibly();
+                }
+            }
+            if (this.closed) throw new IOException("Scheduler is closed.");
+
+            queue.add(frame);
+            this.notEmpty.signal();
+            return true;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Stops accepting frames and waits for whatever is already queued to be
+     * written. The output stream is left open.
+     */
+    @Override
+    public void close() throws IOException {
+        this.lock.lock();
+        try {
+            this.closed = true;
+            this.notEmpty.signal();
+            this.notFull.signalAll();
+        } finally {
+            this.lock.unlock();
+        }
+
+        try {
+            this.writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void writeLoop() {
+        ByteBuffer buffer = ByteBuffer.allocate(PacketIO.frameMaxLength);
+
+        try {
+            while (true) {
+                Frame frame;
+                boolean idle;
+
+                this.lock.lock();
+                try {
+                    frame = this.takeNext();
+                    if (frame == null) return; // Closed and drained.
+                    idle = this.isEmpty();
+                    this.notFull.signalAll();
+                } finally {
+                    this.lock.unlock();
+                }
+
+                buffer.clear();
+                this.io.serialize(frame.id, frame.extendedId, frame.payload, frame.timestamp, frame.unreliable ? 1 << PacketIO.FLAG_UNRELIABLE : 0, buffer);
+                this.out.write(buffer.array(), 0, buffer.position());
+                this.writtenFrames++;
+
+                if (idle) this.out.flush();
+            }
+        } catch (Throwable t) {
+            this.io.getLogger().severe("Unable to write frame, closing the scheduler!");
+            this.io.getLogger().exception(t);
+
+            this.lock.lock();
+            try {
+                this.closed = true;
+                for (ArrayDeque<Frame> queue : this.queues) {
+                    queue.clear();
+                }
+                this.notFull.signalAll();
+            } finally {
+                this.lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Blocks until a frame is available, dropping stale unreliable frames along
+     * the way.
+     * 
+     * @return the next frame to write, or null if closed and drained.
+     */
+    private @Nullable Frame takeNext() {
+        while (true) {
+            long now = System.nanoTime();
+
+            for (int i = 0; i < this.queues.length; i++) {
+                ArrayDeque<Frame> queue = this.queues[i];
+                Frame frame;
+                while ((frame = queue.poll()) != null) {
+                    if (frame.unreliable && this.maxAgeNanos[i] >= 0 && now - frame.enqueuedNanos > this.maxAgeNanos[i]) {
+                        this.staleDrops++;
+                        continue;
+                    }
+                    return frame;
+                }
+            }
+
+            if (this.closed) return null;
+            this.notFull.signalAll(); // Stale drops may have freed up room.
+            this.notEmpty.awaitUninterruptibly();
+        }
+    }
+
+    private boolean isEmpty() {
+        for (ArrayDeque<Frame> queue : this.queues) {
+            if (!queue.isEmpty()) return false;
+        }
+        return true;
+    }
+
+    private static boolean removeOldestUnreliable(ArrayDeque<Frame> queue) {
+        Iterator<Frame> it = queue.iterator();
+        while (it.hasNext()) {
+            if (it.next().unreliable) {
+                it.remove();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public enum Priority {
+        HIGH,
+        NORMAL,
+        LOW;
+    }
+
+    @AllArgsConstructor
+    private static class Frame {
+        private final int id;
+        private final @Nullable String extendedId;
+        private final ByteBuffer payload;
+        private final long timestamp;
+        private final boolean unreliable;
+        private final long enqueuedNanos;
+    }
+
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright 2023 Casterlabs
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+package co.casterlabs.smt.packeteer.transport;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import org.jetbrains.annotations.Nullable;
+
+import co.casterlabs.smt.packeteer.ReservedPacketIDs;
+import co.casterlabs.smt.packeteer.io.PacketIO;
+import co.casterlabs.smt.packeteer.io.PacketIO.DeserializationResult;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.Setter;
+
+/**
+ * Runs many logical streams, distinguished by their extended ID, over a single
+ * connection. Each stream has its own credit-based flow control window: a
+ * sender may only have {@link #initialWindow} bytes of payload outstanding per
+ * stream, and the receiver hands out more credit (using
+ * {@link ReservedPacketIDs#IRB_STREAM_CREDIT_TYPE}) as the application consumes
+ * what it has been sent. This keeps a bulky stream from starving the others,
+ * and bounds each stream's receive buffer to the window.
+ * 
+ * <p>
+ * Both ends must use the same initial window. Incoming frames are passed in
+ * through {@link #receive(DeserializationResult)} by whatever is reading the
+ * connection, and must own their payload (e.g from
+ * {@link PacketIO#deserialize(java.io.InputStream)} or a
+ * {@link co.casterlabs.smt.packeteer.io.PacketDecoder}).
+ */
+public class StreamMultiplexer {
+    public static final int DEFAULT_INITIAL_WINDOW = 256 * 1024;
+    public static final int MIN_INITIAL_WINDOW = 2 * PacketIO.bodyMaxLength;
+    public static final int DEFAULT_MAX_STREAMS = 256;
+
+    private final PacketIO io;
+    private final OutputStream out;
+
+    private final @Getter int initialWindow;
+    private final @Getter int maxStreams;
+
+    private final Map<String, MultiplexedStream> streams = new HashMap<>();
+
+    /**
+     * Called (on the receiving thread) when the remote end starts a stream we
+     * haven't seen before.
+     */
+    @Setter
+    private @Nullable Consumer<MultiplexedStream> remoteStreamListener;
+
+    private @Getter long droppedFrames = 0;
+
+    public StreamMultiplexer(@NonNull PacketIO io, @NonNull OutputStream out) {
+        this(io, out, DEFAULT_INITIAL_WINDOW, DEFAULT_MAX_STREAMS);
+    }
+
+    /**
+     * @param initialWindow the amount of payload bytes that may be in flight per
+     *                      stream, must be able to fit at least two full payloads
+     *                      (credit is handed back once half of it is consumed, so
+     *                      a smaller window could stall a full payload forever).
+     * @param maxStreams    the maximum amount of concurrently open streams.
+     */
+    public StreamMultiplexer(@NonNull PacketIO io, @NonNull OutputStream out, int initialWindow, int maxStreams) {
+        if (initialWindow < MIN_INITIAL_WINDOW) throw new IllegalArgumentException("initialWindow must be at least " + MIN_INITIAL_WINDOW);
+        if (maxStreams < 1) throw new IllegalArgumentException("maxStreams must be positive.");
+
+        this.io = io;
+        this.out = out;
+        this.initialWindow = initialWindow;
+        this.maxStreams = maxStreams;
+    }
+
+    /**
+     * @return the stream with the given extended ID, opening it if necessary.
+     * 
+     * @throws IOException if too many streams are open.
+     */
+    public MultiplexedStream stream(@Nullable String extendedId) throws IOException {
+        synchronized (this.streams) {
+            MultiplexedStream stream = this.streams.get(extendedId);
+            if (stream == null) {
+                if (this.streams.size() >= this.maxStreams) throw new IOException("Too many open streams.");
+
+                stream = new MultiplexedStream(this, extendedId);
+                this.streams.put(extendedId, stream);
+            }
+            return stream;
+        }
+    }
+
+    public List<MultiplexedStream> getStreams() {
+        synchronized (this.streams) {
+            return new ArrayList<>(this.streams.values());
+        }
+    }
+
+    /**
+     * Routes an incoming frame to its stream, handling any control packets.
+     */
+    public void receive(@NonNull DeserializationResult result) throws IOException {
+        MultiplexedStream stream;
+        boolean isNew = false;
+
+        synchronized (this.streams) {
+            stream = this.streams.get(result.extendedId);
+
+            if (stream == null) {
+                if (result.packetId != ReservedPacketIDs.IRB_STREAM_CREDIT_TYPE && result.packetId != ReservedPacketIDs.IRB_STREAM_CLOSE_TYPE && this.streams.size() < this.maxStreams) {
+                    stream = new MultiplexedStream(this, result.extendedId);
+                    this.streams.put(result.extendedId, stream);
+                    isNew = true;
+                } else {
+                    // Stale control packet for a stream we've forgotten, or too many streams.
+                    this.droppedFrames++;
+                    return;
+                }
+            }
+        }
+
+        if (isNew && this.remoteStreamListener != null) {
+            this.remoteStreamListener.accept(stream);
+        }
+
+        switch (result.packetId) {
+            case ReservedPacketIDs.IRB_STREAM_CREDIT_TYPE:
+                if (result.payloadBuffer.remaining() < 4) throw new IOException("Malformed credit packet.");
+                int credit = result.payloadBuffer.getInt(result.payloadBuffer.position());
+                if (credit <= 0) throw new IOException("Malformed credit packet, credit must be positive: " + credit);
+                stream.addCredit(credit);
+                break;
+
+            case ReservedPacketIDs.IRB_STREAM_CLOSE_TYPE:
+                stream.remoteClosed();
+                break;
+
+            default:
+                if (!stream.enqueue(result)) {
+                    this.io.getLogger().severe("Remote overran the window of stream %s, dropping frame.", result.extendedId);
+                    this.droppedFrames++;
+                }
+                break;
+        }
+    }
+
+    void write(int id, @Nullable String extendedId, byte[] payload, long timestamp) throws IOException {
+        synchronized (this.out) {
+            this.io.serialize(id, extendedId, payload, timestamp, this.out);
+        }
+    }
+
+    void sendCredit(@Nullable String extendedId, int credit) throws IOException {
+        byte[] payload = new byte[4];
+        ByteBuffer.wrap(payload).putInt(credit);
+        this.write(ReservedPacketIDs.IRB_STREAM_CREDIT_TYPE, extendedId, payload, System.currentTimeMillis());
+    }
+
+    void sendClose(@Nullable String extendedId) throws IOException {
+        this.write(ReservedPacketIDs.IRB_STREAM_CLOSE_TYPE, extendedId, new byte[0], System.currentTimeMillis());
+    }
+
+    void forget(MultiplexedStream stream) {
+        synchronized (this.streams) {
+            this.streams.remove(stream.getExtendedId(), stream);
+        }
+    }
+
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright 2023 Casterlabs
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+package co.casterlabs.smt.packeteer.util;
+
+import java.util.function.IntFunction;
+
+import org.jetbrains.annotations.Nullable;
+
+import lombok.NonNull;
+
+/**
+ * An open-addressing (linear probing) map from primitive ints to objects, so
+ * lookups never box the key. Null values are not allowed.
+ * 
+ * @implNote This class is not thread safe, though concurrent reads are fine so
+ *           long as nothing is writing.
+ */
+public class IntObjectMap<V> {
+    private static final float LOAD_FACTOR = .5f;
+
+    private int[] keys;
+    private Object[] values; // null = empty slot.
+    private int mask;
+    private int size = 0;
+
+    public IntObjectMap() {
+        this(16);
+    }
+
+    public IntObjectMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(4, (int) (expectedSize / LOAD_FACTOR)) - 1) << 1;
+        this.keys = new int[capacity];
+        this.values = new Object[capacity];
+        this.mask = capacity - 1;
+    }
+
+    @SuppressWarnings("unchecked")
+    public @Nullable V get(int key) {
+        int[] keys = this.keys;
+        Object[] values = this.values;
+
+        int slot = mix(key) & this.mask;
+        while (true) {
+            Object value = values[slot];
+            if (value == null) return null;
+            if (keys[slot] == key) return (V) value;
+            slot = (slot + 1) & this.mask;
+        }
+    }
+
+    public boolean containsKey(int key) {
+        return this.get(key) != null;
+    }
+
+    /**
+     * @return the previous value, if any.
+     */
+    @SuppressWarnings("unchecked")
+    public @Nullable V put(int key, @NonNull V value) {
+        int slot = mix(key) & this.mask;
+        while (true) {
+            Object existing = this.values[slot];
+            if (existing == null) {
+                this.keys[slot] = key;
+                this.values[slot] = value;
+                this.size++;
+
+                if (this.size > this.keys.length * LOAD_FACTOR) {
+                    this.resize();
+                }
+                return null;
+            }
+            if (this.keys[slot] == key) {
+                this.values[slot] = value;
+                return (V) existing;
+            }
+            slot = (slot + 1) & this.mask;
+        }
+    }
+
+    public V computeIfAbsent(int key, @NonNull IntFunction<V> factory) {
+        V value = this.get(key);
+        if (value == null) {
+            value = factory.apply(key);
+            this.put(key, value);
+        }
+        return value;
+    }
+
+    /**
+     * @return the removed value, if any.
+     */
+    @SuppressWarnings("unchecked")
+    public @Nullable V remove(int key) {
+        int slot = mix(key) & this.mask;
+        while (true) {
+            Object existing = this.values[slot];
+            if (existing == null) return null;
+            if (this.keys[slot] == key) break;
+            slot = (slot + 1) & this.mask;
+        }
+
+        V removed = (V) this.values[slot];
+        this.values[slot] = null;
+        this.size--;
+
+        // Shift back any entries that probed past the now empty slot.
+        int next = (slot + 1) & this.mask;
+        while (this.values[next] != null) {
+            int nextKey = this.keys[next];
+            Object nextValue = this.values[next];
+            this.values[next] = null;
+            this.size--;
+            this.put(nextKey, (V) nextValue);
+            next = (next + 1) & this.mask;
+        }
+
+        return removed;
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    public boolean isEmpty() {
+        return this.size == 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void resize() {
+        int[] oldKeys = this.keys;
+        Object[] oldValues = this.values;
+
+        int capacity = oldKeys.length << 1;
+        this.keys = new int[capacity];
+        this.values = new Object[capacity];
+        this.mask = capacity - 1;
+        this.size = 0;
+
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldValues[i] != null) {
+                this.put(oldKeys[i], (V) oldValues[i]);
+            }
+        }
+    }
+
+    /**
+     * Packet IDs tend to be small and sequential (or only differ in their high
+     * bits, like the IRB ones), so we spread them out before masking.
+     */
+    private static int mix(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+}
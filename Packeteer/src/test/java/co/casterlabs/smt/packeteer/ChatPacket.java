@@ -0,0 +1,35 @@
+package co.casterlabs.smt.packeteer;
+
+import co.casterlabs.smt.packeteer.codegen.GenerateCodec;
+import co.casterlabs.smt.packeteer.codegen.PacketCodec;
+import co.casterlabs.smt.packeteer.codegen.PacketField;
+
+@GenerateCodec
+public class ChatPacket extends CodecPacket {
+    @PacketField
+    long sentAt;
+    @PacketField
+    String message;
+    @PacketField
+    int userId;
+    @PacketField
+    byte[] attachment;
+    @PacketField
+    boolean moderator;
+
+    @Override
+    protected PacketCodec<?> getCodec() {
+        return ChatPacketCodec.INSTANCE;
+    }
+
+    @Override
+    public int getId() {
+        return 7;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("ChatPacket(sentAt=%d, message=%s, userId=%d, attachment=%s, moderator=%b)", this.sentAt, this.message, this.userId, java.util.Arrays.toString(this.attachment), this.moderator);
+    }
+
+}
@@ -0,0 +1,28 @@
+package co.casterlabs.smt.packeteer;
+
+import java.io.IOException;
+
+import org.jetbrains.annotations.Nullable;
+
+import co.casterlabs.smt.packeteer.io.PacketeerInput;
+import co.casterlabs.smt.packeteer.io.PacketeerOutput;
+
+public class TestPacket extends Packet {
+    public int testNumber;
+
+    @Override
+    protected void readIn(@Nullable String extendedId, PacketeerInput in) throws IOException {
+        this.testNumber = in.readInt();
+    }
+
+    @Override
+    protected void writeOut(PacketeerOutput out) throws IOException {
+        out.writeInt(this.testNumber);
+    }
+
+    @Override
+    public int getId() {
+        return 42;
+    }
+
+}
@@ -0,0 +1,92 @@
+package co.casterlabs.smt.packeteer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.util.concurrent.TimeUnit;
+
+import co.casterlabs.smt.packeteer.io.PacketDecoder;
+import co.casterlabs.smt.packeteer.io.PacketIO;
+import co.casterlabs.smt.packeteer.transport.BatchingPacketWriter;
+import xyz.e3ndr.fastloggingframework.logging.FastLogger;
+
+public class Test_BatchingPacketWriter {
+    private static PacketIO io = new PacketIO();
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        CountingChannel channel = new CountingChannel();
+        BatchingPacketWriter writer = new BatchingPacketWriter(io, channel, 16 * 1024, 32, 50, TimeUnit.MILLISECONDS);
+
+        // Small "audio" frames, mixed with the occasional large one that isn't copied.
+        for (int i = 0; i < 105; i++) {
+            byte[] payload = new byte[i % 10 == 0 && i < 100 ? 4000 : 160];
+            payload[0] = (byte) i;
+            writer.write(i, "audio", payload, i);
+        }
+        FastLogger.logStatic("After 105 writes: %d channel writes, %d pending.", channel.writes, writer.getPendingPackets());
+
+        Thread.sleep(60);
+        FastLogger.logStatic("Due flush: %b", writer.flushIfDue());
+        FastLogger.logStatic("After due flush: %d channel writes, %d pending.", channel.writes, writer.getPendingPackets());
+        writer.close();
+
+        PacketDecoder decoder = new PacketDecoder(io);
+        int[] expected = {
+                0
+        };
+        decoder.feed(channel.out.toByteArray(), 0, channel.out.size(), (result) -> {
+            if (result.packetId != expected[0] || result.payload[0] != (byte) expected[0]) {
+                throw new IllegalStateException("Out of order or corrupt: " + result);
+            }
+            expected[0]++;
+        });
+        FastLogger.logStatic("Decoded %d frames from %d channel writes.", expected[0], channel.writes);
+    }
+
+    private static class CountingChannel implements GatheringByteChannel {
+        private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        private int writes = 0;
+        private boolean open = true;
+
+        @Override
+        public long write(ByteBuffer[] srcs, int offset, int length) throws IOException {
+            this.writes++;
+            long written = 0;
+            for (int i = offset; i < offset + length; i++) {
+                written += this.write0(srcs[i]);
+            }
+            return written;
+        }
+
+        @Override
+        public long write(ByteBuffer[] srcs) throws IOException {
+            return this.write(srcs, 0, srcs.length);
+        }
+
+        @Override
+        public int write(ByteBuffer src) throws IOException {
+            this.writes++;
+            return this.write0(src);
+        }
+
+        private int write0(ByteBuffer src) {
+            int len = src.remaining();
+            byte[] bytes = new byte[len];
+            src.get(bytes);
+            this.out.write(bytes, 0, len);
+            return len;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return this.open;
+        }
+
+        @Override
+        public void close() {
+            this.open = false;
+        }
+    }
+
+}
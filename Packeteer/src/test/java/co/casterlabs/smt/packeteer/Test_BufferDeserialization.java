@@ -0,0 +1,48 @@
+package co.casterlabs.smt.packeteer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import co.casterlabs.smt.packeteer.io.PacketIO;
+import co.casterlabs.smt.packeteer.io.PacketIO.DeserializationResult;
+import xyz.e3ndr.fastloggingframework.logging.FastLogger;
+import xyz.e3ndr.fastloggingframework.logging.LogLevel;
+
+public class Test_BufferDeserialization {
+    private static PacketIO io = new PacketIO();
+
+    public static void main(String[] args) throws IOException {
+        io.getLogger().setCurrentLevel(LogLevel.ALL);
+
+        test(ByteBuffer.allocate(1024));
+        test(ByteBuffer.allocateDirect(1024));
+    }
+
+    private static void test(ByteBuffer buffer) throws IOException {
+        TestPacket test = new TestPacket();
+        test.testNumber = 123456;
+
+        buffer.put(new byte[] {
+                1,
+                2,
+                3
+        }); // Some junk.
+        io.serialize(test, buffer);
+        io.serialize(test, buffer);
+        buffer.put(buffer.position() - 1, (byte) 0); // Corrupt the second packet.
+        io.serialize(test, buffer);
+        buffer.flip();
+
+        DeserializationResult result;
+        while ((result = io.deserialize(buffer)) != null) {
+            FastLogger.logStatic(result);
+
+            TestPacket decoded = new TestPacket();
+            decoded.deserialize(result.extendedId, result.payloadBuffer);
+            FastLogger.logStatic(decoded.testNumber);
+        }
+
+        FastLogger.logStatic("%d bytes left over in %s.", buffer.remaining(), buffer.isDirect() ? "direct buffer" : "heap buffer");
+    }
+
+}
@@ -0,0 +1,45 @@
+package co.casterlabs.smt.packeteer;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import co.casterlabs.smt.packeteer.io.ChecksumType;
+import co.casterlabs.smt.packeteer.io.PacketIO;
+import co.casterlabs.smt.packeteer.io.PacketIO.DeserializationResult;
+import xyz.e3ndr.fastloggingframework.logging.FastLogger;
+
+public class Test_ChecksumTypes {
+    private static PacketIO readerIO = new PacketIO();
+
+    public static void main(String[] args) throws IOException {
+        for (ChecksumType type : ChecksumType.values()) {
+            PacketIO io = new PacketIO().setChecksumType(type);
+
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            io.serialize(1, type.name(), "Hello world!".getBytes(), 1000, baos);
+            io.serialize(2, type.name(), "Hello world!".getBytes(), 2000, baos);
+
+            byte[] bytes = baos.toByteArray();
+            bytes[bytes.length - 1] ^= 0x01; // Corrupt the second packet's payload.
+
+            // Only the unchecked frame should make it through with the corruption.
+            FastLogger.logStatic("-- %s (InputStream)", type);
+            BufferedInputStream in = new BufferedInputStream(new ByteArrayInputStream(bytes));
+            FastLogger.logStatic(readerIO.deserialize(in));
+            if (type == ChecksumType.NONE) {
+                FastLogger.logStatic(readerIO.deserialize(in));
+            }
+
+            FastLogger.logStatic("-- %s (ByteBuffer)", type);
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            DeserializationResult result;
+            while ((result = readerIO.deserialize(buffer)) != null) {
+                FastLogger.logStatic("%s -> %s", result, ChecksumType.fromFlags(result.flags.getRawValue()));
+            }
+        }
+    }
+
+}
@@ -0,0 +1,47 @@
+package co.casterlabs.smt.packeteer;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import co.casterlabs.smt.packeteer.io.PacketIO;
+import co.casterlabs.smt.packeteer.io.PacketIO.DeserializationResult;
+import xyz.e3ndr.fastloggingframework.logging.FastLogger;
+
+public class Test_CompactHeader {
+    private static PacketIO legacyIO = new PacketIO();
+    private static PacketIO compactIO = new PacketIO();
+
+    public static void main(String[] args) throws IOException {
+        compactIO.getFlags().set(PacketIO.FLAG_COMPACT_HEADER, true);
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        byte[] payload = "Hello world!".getBytes();
+
+        legacyIO.serialize(1, "legacy", payload, 1000, baos);
+        int legacySize = baos.size();
+        compactIO.serialize(2, "compact", payload, 2000, baos);
+        FastLogger.logStatic("Legacy frame: %d bytes, Compact frame: %d bytes.", legacySize, baos.size() - legacySize);
+        compactIO.serialize(3, null, new byte[300], 3000, baos);
+        legacyIO.serialize(4, null, payload, 4000, baos);
+
+        byte[] bytes = baos.toByteArray();
+
+        // Both formats can be read by either instance.
+        FastLogger.logStatic("-- InputStream");
+        BufferedInputStream in = new BufferedInputStream(new ByteArrayInputStream(bytes));
+        for (int i = 0; i < 4; i++) {
+            FastLogger.logStatic(legacyIO.deserialize(in));
+        }
+
+        FastLogger.logStatic("-- ByteBuffer");
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        DeserializationResult result;
+        while ((result = compactIO.deserialize(buffer)) != null) {
+            FastLogger.logStatic(result);
+        }
+    }
+
+}
@@ -0,0 +1,79 @@
+package co.casterlabs.smt.packeteer;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import co.casterlabs.smt.packeteer.io.BufferPool;
+import co.casterlabs.smt.packeteer.io.CompressionPolicy;
+import co.casterlabs.smt.packeteer.io.PacketIO;
+import co.casterlabs.smt.packeteer.io.PacketIO.DeserializationResult;
+import co.casterlabs.smt.packeteer.io.PooledDeserializationResult;
+import xyz.e3ndr.fastloggingframework.logging.FastLogger;
+
+public class Test_Compression {
+    private static PacketIO io = new PacketIO();
+
+    public static void main(String[] args) throws IOException {
+        io.setCompressionPolicy(CompressionPolicy.DEFAULT);
+
+        StringBuilder chat = new StringBuilder();
+        for (int i = 0; i < 20; i++) {
+            chat.append("{\"type\":\"chat\",\"user\":\"viewer").append(i).append("\",\"message\":\"Hello world!\"}");
+        }
+        byte[] random = new byte[2000];
+        new Random(0).nextBytes(random);
+
+        byte[][] payloads = {
+                chat.toString().getBytes(),
+                random,
+                "tiny".getBytes()
+        };
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        for (int i = 0; i < payloads.length; i++) {
+            int before = baos.size();
+            io.serialize(i, null, payloads[i], 0, baos);
+            FastLogger.logStatic("Payload %d: %d bytes -> %d byte frame.", i, payloads[i].length, baos.size() - before);
+        }
+        byte[] bytes = baos.toByteArray();
+
+        // Same again, but through the ByteBuffer path.
+        ByteBuffer buffer = ByteBuffer.allocate(bytes.length * 2);
+        for (int i = 0; i < payloads.length; i++) {
+            io.serialize(i, null, ByteBuffer.wrap(payloads[i]), 0, buffer);
+        }
+        buffer.flip();
+        FastLogger.logStatic("ByteBuffer path wrote the same bytes: %b", buffer.equals(ByteBuffer.wrap(bytes)));
+
+        BufferPool pool = new BufferPool();
+        BufferedInputStream in = new BufferedInputStream(new ByteArrayInputStream(bytes));
+        BufferedInputStream pooledIn = new BufferedInputStream(new ByteArrayInputStream(bytes));
+        ByteBuffer pooledBuffer = buffer.duplicate();
+
+        for (int i = 0; i < payloads.length; i++) {
+            DeserializationResult fromStream = io.deserialize(in);
+            DeserializationResult fromBuffer = io.deserialize(buffer);
+            PooledDeserializationResult fromPooledStream = io.deserialize(pooledIn, pool);
+            PooledDeserializationResult fromPooledBuffer = io.deserialize(pooledBuffer, pool);
+
+            FastLogger.logStatic(
+                "Payload %d: compressed=%b, intact=%b/%b/%b/%b", i,
+                fromStream.flags.get(PacketIO.FLAG_COMPRESSED),
+                Arrays.equals(fromStream.payload, payloads[i]),
+                fromBuffer.payloadBuffer.equals(ByteBuffer.wrap(payloads[i])),
+                fromPooledStream.getPayloadBuffer().equals(ByteBuffer.wrap(payloads[i])),
+                fromPooledBuffer.getPayloadBuffer().equals(ByteBuffer.wrap(payloads[i]))
+            );
+
+            fromPooledStream.release();
+            fromPooledBuffer.release();
+        }
+        FastLogger.logStatic("Outstanding buffers: %d", pool.getOutstandingBuffers());
+    }
+
+}
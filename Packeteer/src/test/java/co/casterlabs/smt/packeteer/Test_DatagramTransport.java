@@ -0,0 +1,118 @@
+package co.casterlabs.smt.packeteer;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import co.casterlabs.smt.packeteer.io.PacketIO;
+import co.casterlabs.smt.packeteer.io.PacketIO.DeserializationResult;
+import co.casterlabs.smt.packeteer.transport.DatagramTransport;
+import xyz.e3ndr.fastloggingframework.logging.FastLogger;
+
+public class Test_DatagramTransport {
+
+    public static void main(String[] args) throws Exception {
+        PacketIO io = new PacketIO();
+
+        DatagramChannel receiverChannel = DatagramChannel.open().bind(new InetSocketAddress("127.0.0.1", 0));
+        DatagramChannel relay = DatagramChannel.open().bind(new InetSocketAddress("127.0.0.1", 0));
+        DatagramChannel senderChannel = DatagramChannel.open().bind(new InetSocketAddress("127.0.0.1", 0));
+        senderChannel.connect(relay.getLocalAddress());
+        receiverChannel.configureBlocking(false);
+
+        DatagramTransport sender = new DatagramTransport(io, senderChannel);
+        DatagramTransport receiver = new DatagramTransport(io, receiverChannel, DatagramTransport.DEFAULT_MAX_DATAGRAM_SIZE, 50, TimeUnit.MILLISECONDS);
+
+        // One frame per datagram, sent in real time 10ms apart.
+        long base = System.currentTimeMillis();
+        for (int i = 0; i < 10; i++) {
+            sender.send(ReservedPacketIDs.IRB_AUDIO_TYPE, "mic", ByteBuffer.wrap(new byte[] {
+                    (byte) i
+            }), System.currentTimeMillis());
+            sender.flush();
+            Thread.sleep(10);
+        }
+
+        // A batch of small frames, packed together.
+        for (int i = 0; i < 20; i++) {
+            sender.send(ReservedPacketIDs.IRB_VIDEO_TYPE, "cam", ByteBuffer.wrap(new byte[100]), System.currentTimeMillis());
+        }
+        sender.flush();
+        FastLogger.logStatic("Sent %d datagrams", sender.getSentDatagrams());
+
+        // The "network": drops the 3rd datagram, swaps the 6th and 7th and
+        // duplicates the 2nd.
+        List<ByteBuffer> datagrams = new ArrayList<>();
+        for (int i = 0; i < sender.getSentDatagrams(); i++) {
+            ByteBuffer datagram = ByteBuffer.allocate(65507);
+            relay.receive(datagram);
+            datagram.flip();
+            datagrams.add(datagram);
+        }
+        datagrams.remove(2);
+        datagrams.add(5, datagrams.remove(6));
+        datagrams.add(4, datagrams.get(1).duplicate());
+        for (ByteBuffer datagram : datagrams) {
+            relay.send(datagram, receiverChannel.getLocalAddress());
+        }
+
+        Thread.sleep(20);
+        while (receiver.receive() != -1);
+        FastLogger.logStatic(
+            "Received %d datagrams, lost=%d, reordered=%d, duplicates=%d, buffered=%d",
+            receiver.getReceivedDatagrams(), receiver.getLostFrames(), receiver.getReorderedFrames(), receiver.getDuplicateFrames(), receiver.getBufferedFrames()
+        );
+
+        // The newest frames are held back by the playout delay, the older ones are
+        // already due.
+        StringBuilder audio = new StringBuilder();
+        int video = 0;
+        long lastTimestamp = Long.MIN_VALUE;
+        boolean ordered = true;
+        for (int pass = 0; pass < 2; pass++) {
+            DeserializationResult frame;
+            while ((frame = receiver.poll()) != null) {
+                ordered &= frame.timestamp >= lastTimestamp;
+                lastTimestamp = frame.timestamp;
+
+                if (frame.packetId == ReservedPacketIDs.IRB_AUDIO_TYPE) {
+                    audio.append(frame.payloadBuffer.get(0)).append(' ');
+                } else {
+                    video++;
+                }
+            }
+
+            if (pass == 0) {
+                FastLogger.logStatic("Held back by the playout delay: %b", receiver.getBufferedFrames() > 0);
+                Thread.sleep(200);
+            }
+        }
+        FastLogger.logStatic("Audio: %s| video frames: %d, in timestamp order: %b", audio, video, ordered);
+
+        // A frame that turns up after newer ones have been played is dropped.
+        senderChannel.disconnect();
+        senderChannel.connect(receiverChannel.getLocalAddress());
+        sender.send(ReservedPacketIDs.IRB_AUDIO_TYPE, "mic", ByteBuffer.wrap(new byte[] {
+                2
+        }), base + 20);
+        sender.flush();
+        Thread.sleep(20);
+        while (receiver.receive() != -1);
+        FastLogger.logStatic("Late frames: %d, buffered: %d", receiver.getLateFrames(), receiver.getBufferedFrames());
+
+        try {
+            sender.send(1, null, ByteBuffer.wrap(new byte[2000]), base);
+        } catch (IOException e) {
+            FastLogger.logStatic("Oversized: %s", e.getMessage());
+        }
+
+        sender.close();
+        receiver.close();
+        relay.close();
+    }
+
+}
@@ -0,0 +1,50 @@
+package co.casterlabs.smt.packeteer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import co.casterlabs.smt.packeteer.io.ExtendedIdCache;
+import co.casterlabs.smt.packeteer.io.PacketIO;
+import co.casterlabs.smt.packeteer.io.PacketIO.DeserializationResult;
+import xyz.e3ndr.fastloggingframework.logging.FastLogger;
+
+public class Test_ExtendedIdCache {
+
+    public static void main(String[] args) throws IOException {
+        PacketIO io = new PacketIO();
+
+        ByteBuffer buffer = ByteBuffer.allocate(4096);
+        for (int i = 0; i < 4; i++) {
+            io.serialize(1, i % 2 == 0 ? "video" : "audio", ByteBuffer.wrap(new byte[] {
+                    (byte) i
+            }), i, buffer);
+        }
+        buffer.flip();
+
+        DeserializationResult[] results = new DeserializationResult[4];
+        for (int i = 0; i < results.length; i++) {
+            results[i] = io.deserialize(buffer);
+        }
+        FastLogger.logStatic("Same instances: video=%b, audio=%b", results[0].extendedId == results[2].extendedId, results[1].extendedId == results[3].extendedId);
+
+        // Clock eviction, the entry that keeps getting hit should survive.
+        ExtendedIdCache cache = new ExtendedIdCache(4);
+        String hot = cache.decode(bytes("hot"), 0, 3);
+        for (int i = 0; i < 16; i++) {
+            cache.decode(bytes("hot"), 0, 3);
+            String cold = "cold-" + i;
+            cache.decode(bytes(cold), 0, cold.length());
+        }
+        FastLogger.logStatic("Size: %d, hot survived: %b", cache.size(), hot == cache.decode(bytes("hot"), 0, 3));
+
+        ByteBuffer direct = ByteBuffer.allocateDirect(8);
+        direct.put("xxvideo".getBytes(StandardCharsets.UTF_8));
+        FastLogger.logStatic("Direct buffer: %s, empty: %s", cache.decode(direct, 2, 5), cache.decode(direct, 0, 0));
+    }
+
+    private static ByteBuffer bytes(String str) {
+        return ByteBuffer.wrap(str.getBytes(StandardCharsets.UTF_8));
+    }
+
+}
@@ -0,0 +1,115 @@
+package co.casterlabs.smt.packeteer;
+
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import co.casterlabs.smt.packeteer.io.PacketIO;
+import co.casterlabs.smt.packeteer.io.PacketIO.DeserializationResult;
+import co.casterlabs.smt.packeteer.transport.DatagramTransport;
+import co.casterlabs.smt.packeteer.transport.FecDecoder;
+import co.casterlabs.smt.packeteer.transport.FecEncoder;
+import xyz.e3ndr.fastloggingframework.logging.FastLogger;
+
+public class Test_Fec {
+
+    public static void main(String[] args) throws Exception {
+        FecEncoder encoder = new FecEncoder(4);
+        FecDecoder decoder = new FecDecoder();
+
+        // Frames of differing lengths, the 3rd one is "lost".
+        byte[][] frames = {
+                "first".getBytes(),
+                "the second frame".getBytes(),
+                "third, and longest, of the frames".getBytes(),
+                "4th".getBytes()
+        };
+        ByteBuffer parity = null;
+        for (int i = 0; i < frames.length; i++) {
+            parity = encoder.protect(ByteBuffer.wrap(frames[i]));
+            if (i != 2) decoder.receive(ByteBuffer.wrap(frames[i]));
+        }
+
+        ByteBuffer rebuilt = decoder.recover(parity);
+        byte[] bytes = new byte[rebuilt.remaining()];
+        rebuilt.get(bytes);
+        FastLogger.logStatic("Recovered: \"%s\"", new String(bytes));
+
+        // Two losses in a group can't be recovered.
+        decoder = new FecDecoder();
+        for (int i = 0; i < frames.length; i++) {
+            parity = encoder.protect(ByteBuffer.wrap(frames[i]));
+            if (i == 0 || i == 3) decoder.receive(ByteBuffer.wrap(frames[i]));
+        }
+        FastLogger.logStatic("Two lost: %s (unrecoverable groups: %d)", decoder.recover(parity), decoder.getUnrecoverableGroups());
+
+        // The "network": drops the 2nd frame of the first group and the 4th of the
+        // second (datagrams are [f0 f1 f2 f3 p0 f4 f5 f6 f7 p1]).
+        testTransport("Lossy", (datagrams) -> {
+            datagrams.remove(8);
+            datagrams.remove(1);
+        });
+
+        // Parity overtakes the last frame of its group, which then arrives after
+        // having already been rebuilt.
+        testTransport("Reordered", (datagrams) -> {
+            datagrams.add(3, datagrams.remove(4));
+        });
+    }
+
+    private static void testTransport(String name, Consumer<List<ByteBuffer>> network) throws Exception {
+        PacketIO io = new PacketIO();
+
+        DatagramChannel receiverChannel = DatagramChannel.open().bind(new InetSocketAddress("127.0.0.1", 0));
+        DatagramChannel relay = DatagramChannel.open().bind(new InetSocketAddress("127.0.0.1", 0));
+        DatagramChannel senderChannel = DatagramChannel.open().bind(new InetSocketAddress("127.0.0.1", 0));
+        senderChannel.connect(relay.getLocalAddress());
+        receiverChannel.configureBlocking(false);
+
+        DatagramTransport sender = new DatagramTransport(io, senderChannel);
+        DatagramTransport receiver = new DatagramTransport(io, receiverChannel, DatagramTransport.DEFAULT_MAX_DATAGRAM_SIZE, 20, TimeUnit.MILLISECONDS);
+        sender.setFecGroupSize(4);
+
+        long base = System.currentTimeMillis();
+        for (int i = 0; i < 8; i++) {
+            sender.send(ReservedPacketIDs.IRB_AUDIO_TYPE, "mic", ByteBuffer.wrap(new byte[] {
+                    (byte) i
+            }), base + i);
+            sender.flush();
+        }
+        List<ByteBuffer> datagrams = new ArrayList<>();
+        for (int i = 0; i < sender.getSentDatagrams(); i++) {
+            ByteBuffer datagram = ByteBuffer.allocate(65507);
+            relay.receive(datagram);
+            datagram.flip();
+            datagrams.add(datagram);
+        }
+        network.accept(datagrams);
+        for (ByteBuffer datagram : datagrams) {
+            relay.send(datagram, receiverChannel.getLocalAddress());
+        }
+
+        Thread.sleep(20);
+        while (receiver.receive() != -1);
+        Thread.sleep(50);
+
+        StringBuilder audio = new StringBuilder();
+        DeserializationResult frame;
+        while ((frame = receiver.poll()) != null) {
+            audio.append(frame.payloadBuffer.get(0)).append(' ');
+        }
+        FastLogger.logStatic(
+            "%s: %s| lost=%d, reordered=%d, recovered=%d, duplicates=%d",
+            name, audio, receiver.getLostFrames(), receiver.getReorderedFrames(), receiver.getRecoveredFrames(), receiver.getDuplicateFrames()
+        );
+
+        sender.close();
+        receiver.close();
+        relay.close();
+    }
+
+}
@@ -0,0 +1,73 @@
+package co.casterlabs.smt.packeteer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import co.casterlabs.smt.packeteer.io.FragmentReassembler;
+import co.casterlabs.smt.packeteer.io.PacketDecoder;
+import co.casterlabs.smt.packeteer.io.PacketIO;
+import co.casterlabs.smt.packeteer.io.PacketIO.DeserializationResult;
+import xyz.e3ndr.fastloggingframework.logging.FastLogger;
+
+public class Test_Fragmentation {
+    private static PacketIO io = new PacketIO();
+
+    public static void main(String[] args) throws IOException {
+        byte[] keyframe = new byte[200 * 1024];
+        new Random(0).nextBytes(keyframe);
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        io.serializeFragmented(ReservedPacketIDs.IRB_VIDEO_TYPE, "video", keyframe, 1234, baos);
+        io.serializeFragmented(ReservedPacketIDs.IRB_AUDIO_TYPE, "audio", new byte[128], 1235, baos);
+
+        FragmentReassembler reassembler = new FragmentReassembler();
+        PacketDecoder decoder = new PacketDecoder(io);
+
+        decoder.feed(baos.toByteArray(), 0, baos.size(), (fragment) -> {
+            DeserializationResult result = reassembler.accept(fragment);
+            if (result == null) return;
+
+            FastLogger.logStatic(result);
+            if (result.packetId == ReservedPacketIDs.IRB_VIDEO_TYPE) {
+                FastLogger.logStatic("Keyframe intact: %b", Arrays.equals(keyframe, result.payload));
+            }
+        });
+
+        FastLogger.logStatic("Pending: %d, Dropped: %d", reassembler.getPendingMessages(), reassembler.getDroppedFragments());
+
+        // Hostile fragments: an offset that would overflow, and a pair that overlap
+        // (leaving a gap at the end of the message).
+        FragmentReassembler hostile = new FragmentReassembler();
+        FastLogger.logStatic("Overflowing offset: %s", hostile.accept(fragment(1, 0, 1, 100, Integer.MAX_VALUE - 2, 10)));
+        FastLogger.logStatic("First of overlapping: %s", hostile.accept(fragment(2, 0, 2, 20, 0, 10)));
+        FastLogger.logStatic("Second of overlapping: %s", hostile.accept(fragment(2, 1, 2, 20, 5, 10)));
+        FastLogger.logStatic("Pending: %d, Dropped: %d", hostile.getPendingMessages(), hostile.getDroppedFragments());
+
+        // One fragment per message, each claiming the largest allowed message. The
+        // memory held onto stays bounded regardless of how many there are.
+        FragmentReassembler flooded = new FragmentReassembler();
+        for (int i = 0; i < 100; i++) {
+            flooded.accept(fragment(i, 0, 64, FragmentReassembler.DEFAULT_MAX_MESSAGE_LENGTH, 0, 10));
+        }
+        FastLogger.logStatic(
+            "Flooded: pending %d messages, %d bytes (max %d), dropped %d",
+            flooded.getPendingMessages(), flooded.getPendingBytes(), FragmentReassembler.DEFAULT_MAX_PENDING_BYTES, flooded.getDroppedFragments()
+        );
+        FastLogger.logStatic("Too few fragments to cover the message: %s", flooded.accept(fragment(1000, 0, 1, 1000, 0, 10)));
+    }
+
+    private static DeserializationResult fragment(int messageId, int index, int count, int totalLength, int offset, int chunkLength) throws IOException {
+        ByteBuffer payload = ByteBuffer.allocate(16 + chunkLength);
+        payload.putInt(messageId).putShort((short) index).putShort((short) count).putInt(totalLength).putInt(offset);
+        payload.clear();
+
+        ByteBuffer frame = ByteBuffer.allocate(PacketIO.frameMaxLength);
+        io.serialize(ReservedPacketIDs.IRB_VIDEO_TYPE, "video", payload, 0, 1 << PacketIO.FLAG_FRAGMENT, frame);
+        frame.flip();
+        return io.deserialize(frame);
+    }
+
+}
@@ -0,0 +1,84 @@
+package co.casterlabs.smt.packeteer;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.Pipe;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import co.casterlabs.smt.packeteer.io.BufferPool;
+import co.casterlabs.smt.packeteer.io.PacketIO;
+import co.casterlabs.smt.packeteer.io.PacketIO.DeserializationResult;
+import co.casterlabs.smt.packeteer.io.PacketIOListener;
+import co.casterlabs.smt.packeteer.transport.FrameBroadcaster;
+import co.casterlabs.smt.packeteer.transport.FrameBroadcaster.Subscriber;
+import xyz.e3ndr.fastloggingframework.logging.FastLogger;
+
+public class Test_FrameBroadcaster {
+
+    public static void main(String[] args) throws Exception {
+        PacketIO io = new PacketIO();
+        AtomicInteger encodes = new AtomicInteger();
+        io.setListener(new PacketIOListener() {
+            @Override
+            public void onFrameEncoded(int packetId, int frameLength) {
+                encodes.incrementAndGet();
+            }
+        });
+
+        BufferPool pool = new BufferPool();
+        FrameBroadcaster broadcaster = new FrameBroadcaster(io, pool, 64, FrameBroadcaster.DEFAULT_MAX_QUEUED_BYTES);
+
+        // Viewers that always keep up.
+        ByteArrayOutputStream[] viewers = new ByteArrayOutputStream[8];
+        for (int i = 0; i < viewers.length; i++) {
+            viewers[i] = new ByteArrayOutputStream();
+            broadcaster.subscribe(Channels.newChannel(viewers[i]));
+        }
+
+        // And one that never reads, its pipe fills up and then it falls behind.
+        Pipe pipe = Pipe.open();
+        pipe.sink().configureBlocking(false);
+        Subscriber slow = broadcaster.subscribe(pipe.sink());
+
+        long base = System.currentTimeMillis();
+        for (int i = 0; i < 200; i++) {
+            broadcaster.broadcast(ReservedPacketIDs.IRB_VIDEO_TYPE, "cam", ByteBuffer.wrap(new byte[2000]), base + i);
+        }
+        FastLogger.logStatic(
+            "Broadcast %d frames to %d viewers with %d encodes",
+            broadcaster.getBroadcastFrames(), viewers.length, encodes.get()
+        );
+        FastLogger.logStatic(
+            "Slow viewer evicted: %b (channel open: %b), subscribers left: %d",
+            slow.isEvicted(), pipe.sink().isOpen(), broadcaster.getSubscriberCount()
+        );
+
+        boolean intact = true;
+        for (ByteArrayOutputStream viewer : viewers) {
+            ByteBuffer received = ByteBuffer.wrap(viewer.toByteArray());
+            int frames = 0;
+            DeserializationResult frame;
+            while ((frame = io.deserialize(received)) != null) {
+                intact &= frame.timestamp == base + frames && frame.payloadBuffer.remaining() == 2000;
+                frames++;
+            }
+            intact &= frames == 200;
+        }
+        FastLogger.logStatic("Every viewer received all frames intact: %b", intact);
+
+        // A frame with the largest possible body, which still fits in a pooled buffer.
+        broadcaster.broadcast(ReservedPacketIDs.IRB_VIDEO_TYPE, "cam", ByteBuffer.wrap(new byte[PacketIO.bodyMaxLength]), base + 200);
+        ByteBuffer received = ByteBuffer.wrap(viewers[0].toByteArray());
+        DeserializationResult last = null;
+        DeserializationResult frame;
+        while ((frame = io.deserialize(received)) != null) {
+            last = frame;
+        }
+        FastLogger.logStatic("Max payload delivered: %b", last.payloadBuffer.remaining() == PacketIO.bodyMaxLength);
+
+        broadcaster.close();
+        FastLogger.logStatic("Outstanding buffers after close: %d", pool.getOutstandingBuffers());
+    }
+
+}
@@ -0,0 +1,60 @@
+package co.casterlabs.smt.packeteer;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import co.casterlabs.smt.packeteer.io.PacketIO;
+import co.casterlabs.smt.packeteer.io.PacketIO.DeserializationResult;
+import co.casterlabs.smt.packeteer.io.PacketeerInput;
+import co.casterlabs.smt.packeteer.io.PacketeerOutput;
+import xyz.e3ndr.fastloggingframework.logging.FastLogger;
+
+public class Test_GeneratedCodec {
+    private static PacketIO io = new PacketIO();
+
+    public static void main(String[] args) throws IOException {
+        ChatPacket packet = new ChatPacket();
+        packet.sentAt = 1234567890123L;
+        packet.userId = 42;
+        packet.moderator = true;
+        packet.message = "Hello world! \uD83D\uDC4B \u00E9\u4E2D";
+        packet.attachment = new byte[] {
+                1,
+                2,
+                3
+        };
+
+        FastLogger.logStatic("Serialized size: %d (fixed: %d)", packet.serializedSize(), ChatPacketCodec.FIXED_SIZE);
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        io.serialize(packet, baos);
+
+        DeserializationResult result = io.deserialize(new BufferedInputStream(new ByteArrayInputStream(baos.toByteArray())));
+        ChatPacket decoded = new ChatPacket();
+        decoded.deserialize(result.extendedId, result.payload);
+        FastLogger.logStatic(decoded);
+        FastLogger.logStatic("Message intact: %b", packet.message.equals(decoded.message));
+
+        // Nulls survive too.
+        packet.message = null;
+        packet.attachment = null;
+        decoded.deserialize(null, packet.serialize());
+        FastLogger.logStatic(decoded);
+
+        // Going through readIn()/writeOut() gives the same bytes as the codec.
+        PacketeerOutput out = new PacketeerOutput();
+        packet.writeOut(out);
+        decoded.readIn(null, new PacketeerInput(out.toByteArray()));
+        FastLogger.logStatic("Stream path matches codec: %b", Arrays.equals(out.toByteArray(), packet.serialize()));
+
+        try {
+            decoded.deserialize(null, new byte[3]);
+        } catch (IOException e) {
+            FastLogger.logStatic("Short payload: %s", e.getMessage());
+        }
+    }
+
+}
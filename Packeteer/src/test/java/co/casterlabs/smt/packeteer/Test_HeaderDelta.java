@@ -0,0 +1,143 @@
+package co.casterlabs.smt.packeteer;
+
+import java.nio.ByteBuffer;
+
+import co.casterlabs.smt.packeteer.io.HeaderDeltaDecoder;
+import co.casterlabs.smt.packeteer.io.HeaderDeltaEncoder;
+import co.casterlabs.smt.packeteer.io.PacketIO;
+import co.casterlabs.smt.packeteer.io.PacketIO.DeserializationResult;
+import xyz.e3ndr.fastloggingframework.logging.FastLogger;
+
+public class Test_HeaderDelta {
+
+    public static void main(String[] args) throws Exception {
+        PacketIO io = new PacketIO();
+        io.getFlags().set(PacketIO.FLAG_COMPACT_HEADER, true);
+
+        HeaderDeltaEncoder encoder = new HeaderDeltaEncoder(io, 16);
+        HeaderDeltaDecoder decoder = new HeaderDeltaDecoder(io);
+
+        // 20ms audio frames interleaved with the occasional video frame.
+        ByteBuffer wire = ByteBuffer.allocate(64 * 1024);
+        ByteBuffer plain = ByteBuffer.allocate(64 * 1024);
+        long base = 1_700_000_000_000L;
+        for (int i = 0; i < 100; i++) {
+            ByteBuffer audio = ByteBuffer.wrap(new byte[] {
+                    (byte) i,
+                    1,
+                    2,
+                    3
+            });
+            encoder.serialize(ReservedPacketIDs.IRB_AUDIO_TYPE, "mic", audio, base + i * 20, wire);
+            io.serialize(ReservedPacketIDs.IRB_AUDIO_TYPE, "mic", audio, base + i * 20, plain);
+
+            if (i % 10 == 0) {
+                encoder.serialize(ReservedPacketIDs.IRB_VIDEO_TYPE, "cam", ByteBuffer.wrap(new byte[50]), base + i * 20, wire);
+                io.serialize(ReservedPacketIDs.IRB_VIDEO_TYPE, "cam", ByteBuffer.wrap(new byte[50]), base + i * 20, plain);
+            }
+        }
+        FastLogger.logStatic(
+            "Full headers: %d, delta headers: %d, %d bytes vs %d bytes without",
+            encoder.getFullHeaders(), encoder.getDeltaHeaders(), wire.position(), plain.position()
+        );
+
+        wire.flip();
+        int audio = 0;
+        int video = 0;
+        boolean intact = true;
+        DeserializationResult frame;
+        while ((frame = decoder.deserialize(wire)) != null) {
+            if (frame.packetId == ReservedPacketIDs.IRB_AUDIO_TYPE) {
+                intact &= "mic".equals(frame.extendedId) && frame.timestamp == base + audio * 20 && frame.payloadBuffer.get(0) == (byte) audio;
+                audio++;
+            } else {
+                intact &= "cam".equals(frame.extendedId) && frame.payloadBuffer.remaining() == 50;
+                video++;
+            }
+        }
+        FastLogger.logStatic("Decoded %d audio and %d video frames, intact: %b", audio, video, intact);
+
+        // Corrupt the checksum of a delta frame, then lose the full header that the
+        // next 15 build on.
+        encoder.reset();
+        wire.clear();
+        ByteBuffer payload = ByteBuffer.wrap(new byte[] {
+                42
+        });
+        int[] starts = new int[40];
+        for (int i = 0; i < starts.length; i++) {
+            starts[i] = wire.position();
+            encoder.serialize(ReservedPacketIDs.IRB_AUDIO_TYPE, "mic", payload, base + 10_000 + i, wire);
+        }
+        int end = wire.position();
+
+        wire.put(starts[3] + 5, (byte) ~wire.get(starts[3] + 5));
+        ByteBuffer lossy = ByteBuffer.allocate(end);
+        wire.limit(end);
+        for (int i = 0; i < starts.length; i++) {
+            if (i == 16) continue; // The second full header.
+            int limit = i + 1 < starts.length ? starts[i + 1] : end;
+            lossy.put(wire.duplicate().limit(limit).position(starts[i]));
+        }
+        lossy.flip();
+
+        int received = 0;
+        while ((frame = decoder.deserialize(lossy)) != null) {
+            received++;
+        }
+        FastLogger.logStatic(
+            "Received %d/%d, dropped %d, reset requested: %b",
+            received, starts.length, decoder.getDroppedFrames(), decoder.takeResetRequest()
+        );
+
+        // The reset path, the next frame has a full header again.
+        encoder.reset();
+        wire.clear();
+        encoder.serialize(ReservedPacketIDs.IRB_AUDIO_TYPE, "mic", payload, base + 20_000, wire);
+        wire.flip();
+        frame = decoder.deserialize(wire);
+        FastLogger.logStatic(
+            "After reset: full header: %b, timestamp ok: %b",
+            frame.flags.get(PacketIO.FLAG_DELTA_BASE), frame.timestamp == base + 20_000
+        );
+
+        // The upper flag bits are free for other frameworks, and must survive in both
+        // full and delta headers. A full-size payload has no room for the slot, and
+        // goes out as a plain frame.
+        io.getFlags().set(12, true);
+        encoder.reset();
+        wire.clear();
+        for (int i = 0; i < 4; i++) {
+            encoder.serialize(ReservedPacketIDs.IRB_AUDIO_TYPE, "mic", payload, base + 30_000 + i, wire);
+        }
+        encoder.serialize(ReservedPacketIDs.IRB_VIDEO_TYPE, "cam", ByteBuffer.wrap(new byte[PacketIO.bodyMaxLength]), base + 30_000, wire);
+        wire.flip();
+        boolean flagKept = true;
+        int decoded = 0;
+        while ((frame = decoder.deserialize(wire)) != null) {
+            flagKept &= frame.flags.get(12);
+            decoded++;
+            if (frame.packetId == ReservedPacketIDs.IRB_AUDIO_TYPE) flagKept &= frame.payloadBuffer.remaining() == 1 && frame.payloadBuffer.get(0) == 42;
+            else flagKept &= frame.payloadBuffer.remaining() == PacketIO.bodyMaxLength;
+        }
+        FastLogger.logStatic("Decoded %d/5 with user flag and payloads intact: %b", decoded, flagKept);
+        io.getFlags().set(12, false);
+
+        // Junk full of would-be frame starts mustn't make resyncing quadratic.
+        ByteBuffer junk = ByteBuffer.allocate(2 * 1024 * 1024);
+        while (junk.remaining() > 1024) {
+            junk.put((byte) 0).put((byte) 'S').put((byte) 'M').put((byte) 'T');
+        }
+        junk.position(junk.position() + PacketIO.headerMaxLength); // Else the last magic looks like a truncated header.
+        encoder.reset();
+        encoder.serialize(ReservedPacketIDs.IRB_AUDIO_TYPE, "mic", payload, base, junk);
+        junk.flip();
+        long start = System.nanoTime();
+        frame = decoder.deserialize(junk);
+        FastLogger.logStatic(
+            "Found the frame after %d junk bytes: %b (%dms)",
+            frame == null ? -1 : frame.discardedBytes, frame != null && frame.payloadBuffer.get(0) == 42, (System.nanoTime() - start) / 1_000_000
+        );
+    }
+
+}
@@ -0,0 +1,61 @@
+package co.casterlabs.smt.packeteer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import co.casterlabs.smt.packeteer.io.CompressionPolicy;
+import co.casterlabs.smt.packeteer.io.LazyDeserializationResult;
+import co.casterlabs.smt.packeteer.io.PacketIO;
+import xyz.e3ndr.fastloggingframework.logging.FastLogger;
+
+public class Test_LazyDeserialization {
+
+    public static void main(String[] args) throws IOException {
+        PacketIO io = new PacketIO();
+        io.setCompressionPolicy(CompressionPolicy.DEFAULT);
+
+        ByteBuffer buffer = ByteBuffer.allocate(8192);
+        io.serialize(1, "video", ByteBuffer.wrap("Hello world!".getBytes(StandardCharsets.UTF_8)), 1000, buffer);
+        io.serialize(2, "chat", ByteBuffer.wrap("Compress me! ".repeat(50).getBytes(StandardCharsets.UTF_8)), 2000, buffer);
+        int corruptAt = buffer.position() - 1;
+        io.serialize(3, null, ByteBuffer.wrap("Last".getBytes(StandardCharsets.UTF_8)), 3000, buffer);
+        io.serialize(4, "chat", ByteBuffer.wrap("Compress me too! ".repeat(50).getBytes(StandardCharsets.UTF_8)), 4000, buffer);
+        buffer.flip();
+
+        buffer.put(corruptAt, (byte) (buffer.get(corruptAt) ^ 0x01)); // Corrupt the second frame's body.
+
+        // Relay: forward the raw frames without touching their bodies.
+        ByteBuffer relayed = ByteBuffer.allocate(8192);
+        LazyDeserializationResult result;
+        while ((result = io.deserializeLazy(buffer)) != null) {
+            FastLogger.logStatic("%s -> %d frame bytes", result, result.getFrame().remaining());
+            relayed.put(result.getFrame());
+        }
+        relayed.flip();
+
+        // Receiver: fully decode what was relayed, the corrupt frame gets dropped.
+        FastLogger.logStatic("Relayed %d bytes", relayed.remaining());
+        PacketIO.DeserializationResult full;
+        while ((full = io.deserialize(relayed)) != null) {
+            FastLogger.logStatic("Received %s", full);
+        }
+
+        // Lazy access to the body.
+        buffer.rewind();
+        while ((result = io.deserializeLazy(buffer)) != null) {
+            try {
+                ByteBuffer payload = result.getPayload();
+                FastLogger.logStatic(
+                    "id=%d, extId=%s, valid=%b, payload=%d bytes, same extId instance=%b",
+                    result.getPacketId(), result.getExtendedId(), result.isBodyValid(), payload.remaining(),
+                    result.getExtendedId() == result.getExtendedId()
+                );
+                FastLogger.logStatic("  %s", result.toResult());
+            } catch (IOException e) {
+                FastLogger.logStatic("id=%d, valid=%b: %s", result.getPacketId(), result.isBodyValid(), e.getMessage());
+            }
+        }
+    }
+
+}
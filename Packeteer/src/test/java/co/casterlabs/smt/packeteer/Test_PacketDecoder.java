@@ -0,0 +1,53 @@
+package co.casterlabs.smt.packeteer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import co.casterlabs.smt.packeteer.io.PacketDecoder;
+import co.casterlabs.smt.packeteer.io.PacketIO;
+import xyz.e3ndr.fastloggingframework.logging.FastLogger;
+
+public class Test_PacketDecoder {
+    private static PacketIO io = new PacketIO();
+
+    public static void main(String[] args) throws IOException {
+        byte[] bytes = getBytes();
+        bytes[300]++; // Corrupt the first packet.
+
+        PacketDecoder decoder = new PacketDecoder(io);
+        Random random = new Random(0);
+
+        // Feed the stream in random fragments, like a selector loop would.
+        int offset = 0;
+        int decoded = 0;
+        while (offset < bytes.length) {
+            int len = Math.min(bytes.length - offset, 1 + random.nextInt(64));
+            decoded += decoder.feed(bytes, offset, len, (result) -> {
+                try {
+                    TestPacket test = new TestPacket();
+                    test.deserialize(result.extendedId, result.payload);
+                    FastLogger.logStatic("%s -> %d", result, test.testNumber);
+                } catch (IOException e) {
+                    FastLogger.logException(e);
+                }
+            });
+            offset += len;
+        }
+
+        FastLogger.logStatic("Decoded %d packets, %d bytes left buffered.", decoded, decoder.getBufferedBytes());
+    }
+
+    private static byte[] getBytes() throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+
+        for (int i = 0; i < 10; i++) {
+            TestPacket test = new TestPacket();
+            test.testNumber = i;
+            io.serialize(test, baos);
+        }
+
+        return baos.toByteArray();
+    }
+
+}
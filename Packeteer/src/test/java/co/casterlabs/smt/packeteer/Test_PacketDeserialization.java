@@ -4,12 +4,8 @@ import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 
-import org.jetbrains.annotations.Nullable;
-
 import co.casterlabs.smt.packeteer.io.PacketIO;
 import co.casterlabs.smt.packeteer.io.PacketIO.DeserializationResult;
-import co.casterlabs.smt.packeteer.io.PacketeerInput;
-import co.casterlabs.smt.packeteer.io.PacketeerOutput;
 import xyz.e3ndr.fastloggingframework.logging.FastLogger;
 import xyz.e3ndr.fastloggingframework.logging.LogLevel;
 
@@ -53,23 +49,3 @@ public class Test_PacketDeserialization {
     }
 
 }
-
-class TestPacket extends Packet {
-    public int testNumber;
-
-    @Override
-    protected void readIn(@Nullable String extendedId, PacketeerInput in) throws IOException {
-        this.testNumber = in.readInt();
-    }
-
-    @Override
-    protected void writeOut(PacketeerOutput out) throws IOException {
-        out.writeInt(this.testNumber);
-    }
-
-    @Override
-    public int getId() {
-        return 42;
-    }
-
-}
@@ -0,0 +1,76 @@
+package co.casterlabs.smt.packeteer;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+
+import javax.management.ObjectName;
+
+import co.casterlabs.smt.packeteer.io.PacketIO;
+import co.casterlabs.smt.packeteer.metrics.PacketIOMetrics;
+import xyz.e3ndr.fastloggingframework.logging.FastLogger;
+
+public class Test_PacketIOMetrics {
+
+    public static void main(String[] args) throws Exception {
+        PacketIO writer = new PacketIO();
+        PacketIOMetrics writerMetrics = new PacketIOMetrics();
+        writer.setListener(writerMetrics);
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        baos.write(new byte[] {
+                1, 2, 3, 4, 5
+        }); // Garbage.
+        writer.serialize(1, null, "Hello".getBytes(), 1, baos);
+        writer.serialize(2, null, "World".getBytes(), 2, baos);
+        int corruptAt = baos.size() - 1;
+        writer.serialize(3, "ext", "!!!!!".getBytes(), 3, baos);
+
+        byte[] bytes = baos.toByteArray();
+        bytes[corruptAt] ^= 0x01; // Corrupt the second packet's body.
+        FastLogger.logStatic("Writer: %s", writerMetrics);
+
+        PacketIO reader = new PacketIO();
+        PacketIOMetrics readerMetrics = new PacketIOMetrics();
+        reader.setListener(readerMetrics);
+
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        while (reader.deserialize(buffer) != null);
+        FastLogger.logStatic("Reader (ByteBuffer): %s", readerMetrics);
+
+        readerMetrics.reset();
+        BufferedInputStream in = new BufferedInputStream(new ByteArrayInputStream(bytes));
+        try {
+            while (true) reader.deserialize(in);
+        } catch (IOException e) {
+            // End of stream.
+        }
+        FastLogger.logStatic("Reader (InputStream): %s", readerMetrics);
+
+        // Ignored body CRCs.
+        PacketIO lenient = new PacketIO();
+        lenient.getFlags().set(PacketIO.FLAG_IGNORE_PAYLOAD_CRC, true);
+        baos.reset();
+        lenient.serialize(4, null, "Hello".getBytes(), 4, baos);
+        bytes = baos.toByteArray();
+        bytes[bytes.length - 1] ^= 0x01;
+
+        readerMetrics.reset();
+        reader.deserialize(ByteBuffer.wrap(bytes));
+        FastLogger.logStatic("Ignored body CRCs: %d, corrupt bodies: %d", readerMetrics.getBodyCrcIgnored(), readerMetrics.getBodyCorrupt());
+
+        Closeable registration = readerMetrics.register("test");
+        try {
+            ObjectName name = new ObjectName(PacketIOMetrics.JMX_DOMAIN + ":type=PacketIO,name=\"test\"");
+            FastLogger.logStatic("JMX FramesIn: %s", ManagementFactory.getPlatformMBeanServer().getAttribute(name, "FramesIn"));
+        } finally {
+            registration.close();
+        }
+        FastLogger.logStatic("Unregistered: %b", ManagementFactory.getPlatformMBeanServer().queryNames(new ObjectName(PacketIOMetrics.JMX_DOMAIN + ":*"), null).isEmpty());
+    }
+
+}
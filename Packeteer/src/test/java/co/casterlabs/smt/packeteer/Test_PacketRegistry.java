@@ -0,0 +1,38 @@
+package co.casterlabs.smt.packeteer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import co.casterlabs.smt.packeteer.io.PacketIO;
+import co.casterlabs.smt.packeteer.io.PacketIO.DeserializationResult;
+import xyz.e3ndr.fastloggingframework.logging.FastLogger;
+
+public class Test_PacketRegistry {
+    private static PacketIO io = new PacketIO();
+
+    public static void main(String[] args) throws IOException {
+        PacketRegistry registry = new PacketRegistry()
+            .register(42, TestPacket::new, (packet, extendedId, timestamp) -> FastLogger.logStatic("TestPacket(%s) -> %d", extendedId, packet.testNumber))
+            .register(42, "special", TestPacket::new, (packet, extendedId, timestamp) -> FastLogger.logStatic("Special TestPacket -> %d", packet.testNumber), true)
+            .register(ReservedPacketIDs.IRB_AUDIO_TYPE, TestPacket::new, (packet, extendedId, timestamp) -> FastLogger.logStatic("Audio -> %d", packet.testNumber));
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        TestPacket test = new TestPacket();
+        test.testNumber = 1;
+        io.serialize(42, null, test.serialize(), 0, baos);
+        io.serialize(42, "other", test.serialize(), 0, baos);
+        io.serialize(42, "special", test.serialize(), 0, baos);
+        io.serialize(ReservedPacketIDs.IRB_AUDIO_TYPE, null, test.serialize(), 0, baos);
+        io.serialize(ReservedPacketIDs.IRB_VIDEO_TYPE, null, test.serialize(), 0, baos);
+
+        ByteBuffer buffer = ByteBuffer.wrap(baos.toByteArray());
+        DeserializationResult result;
+        while ((result = io.deserialize(buffer)) != null) {
+            if (!registry.dispatch(result)) {
+                FastLogger.logStatic("UNKNOWN PACKET ID: " + result.packetId);
+            }
+        }
+    }
+
+}
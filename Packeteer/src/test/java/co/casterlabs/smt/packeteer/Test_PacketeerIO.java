@@ -0,0 +1,118 @@
+package co.casterlabs.smt.packeteer;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import co.casterlabs.smt.packeteer.io.PacketeerInput;
+import co.casterlabs.smt.packeteer.io.PacketeerOutput;
+import xyz.e3ndr.fastloggingframework.logging.FastLogger;
+
+public class Test_PacketeerIO {
+    private static final long[] VALUES = {
+            0, 1, -1, 127, 128, 300, -300, 16383, 16384,
+            Integer.MAX_VALUE, Integer.MIN_VALUE, Long.MAX_VALUE, Long.MIN_VALUE
+    };
+
+    public static void main(String[] args) throws IOException {
+        // All three outputs must produce the exact same bytes.
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        write(new PacketeerOutput(baos));
+
+        PacketeerOutput array = new PacketeerOutput(1); // Forces it to grow.
+        write(array);
+
+        ByteBuffer buffer = ByteBuffer.allocate(1024);
+        write(new PacketeerOutput(buffer));
+        buffer.flip();
+
+        byte[] fromStream = baos.toByteArray();
+        byte[] fromArray = array.toByteArray();
+        byte[] fromBuffer = new byte[buffer.remaining()];
+        buffer.get(fromBuffer);
+
+        FastLogger.logStatic("Stream: %d bytes, array: %d bytes, buffer: %d bytes, identical: %b",
+            fromStream.length, fromArray.length, fromBuffer.length,
+            java.util.Arrays.equals(fromStream, fromArray) && java.util.Arrays.equals(fromStream, fromBuffer)
+        );
+
+        FastLogger.logStatic("-- Stream");
+        read(new PacketeerInput(new ByteArrayInputStream(fromStream)));
+        FastLogger.logStatic("-- Array");
+        read(new PacketeerInput(fromArray));
+        FastLogger.logStatic("-- Direct buffer");
+        ByteBuffer direct = ByteBuffer.allocateDirect(fromBuffer.length);
+        direct.put(fromBuffer).flip();
+        read(new PacketeerInput(direct));
+
+        // Varints vs fixed width for small values.
+        PacketeerOutput fixed = new PacketeerOutput();
+        PacketeerOutput varint = new PacketeerOutput();
+        for (int i = 0; i < 100; i++) {
+            fixed.writeInt(i);
+            varint.writeVarInt(i);
+        }
+        FastLogger.logStatic("100 small ints: %d bytes fixed, %d bytes varint", fixed.size(), varint.size());
+
+        try {
+            new PacketeerInput(new byte[] {
+                    0, 0, 0, 10, 'a'
+            }).readString();
+            FastLogger.logStatic("Truncated string was read?!");
+        } catch (IOException e) {
+            FastLogger.logStatic("Truncated string: %s", e.getMessage());
+        }
+
+        try {
+            new PacketeerInput(new byte[] {
+                    (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x01
+            }).readVarInt();
+            FastLogger.logStatic("Malformed varint was read?!");
+        } catch (IOException e) {
+            FastLogger.logStatic("Malformed varint: %s", e.getMessage());
+        }
+    }
+
+    private static void write(PacketeerOutput out) throws IOException {
+        out.writeByte((byte) 42)
+            .writeBoolean(true)
+            .writeShort((short) -2)
+            .writeInt(123456)
+            .writeLong(-1234567890123L)
+            .writeFloat(1.5f)
+            .writeDouble(Math.PI)
+            .writeString("Hello \u00e9\u4e16\ud83d\ude00")
+            .writeBytes(new byte[] {
+                    1, 2, 3
+            })
+            .writeVarString("var \u00e9")
+            .writeVarBytes(new byte[] {
+                    4, 5
+            });
+
+        for (long v : VALUES) {
+            out.writeVarInt((int) v)
+                .writeSignedVarInt((int) v)
+                .writeVarLong(v)
+                .writeSignedVarLong(v);
+        }
+    }
+
+    private static void read(PacketeerInput in) throws IOException {
+        FastLogger.logStatic("%d %b %d %d %d %s %s %s %s %s %s",
+            in.readByte(), in.readBoolean(), in.readShort(), in.readInt(), in.readLong(), in.readFloat(), in.readDouble(),
+            in.readString(), java.util.Arrays.toString(in.readBytes()), in.readVarString(), java.util.Arrays.toString(in.readVarBytes())
+        );
+
+        boolean ok = true;
+        for (long v : VALUES) {
+            ok &= in.readVarInt() == (int) v;
+            ok &= in.readSignedVarInt() == (int) v;
+            ok &= in.readVarLong() == v;
+            ok &= in.readSignedVarLong() == v;
+        }
+        FastLogger.logStatic("Varints round-tripped: %b, remaining: %d", ok, in.available());
+    }
+
+}
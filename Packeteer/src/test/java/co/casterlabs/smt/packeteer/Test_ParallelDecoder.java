@@ -0,0 +1,86 @@
+package co.casterlabs.smt.packeteer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import co.casterlabs.smt.packeteer.io.PacketIO;
+import co.casterlabs.smt.packeteer.io.ParallelDecoder;
+import co.casterlabs.smt.packeteer.io.ParallelDecoder.Ordering;
+import xyz.e3ndr.fastloggingframework.logging.FastLogger;
+
+public class Test_ParallelDecoder {
+    private static PacketIO io = new PacketIO();
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        for (int i = 0; i < 10_000; i++) {
+            TestPacket packet = new TestPacket();
+            packet.testNumber = i;
+            io.serialize(packet.getId(), null, packet.serialize(), i, baos);
+        }
+        byte[] bytes = baos.toByteArray();
+        int frameLength = bytes.length / 10_000;
+        bytes[frameLength * 5000 + frameLength - 1] ^= 0x01; // Corrupt the payload of one frame in the middle.
+
+        ExecutorService workers = Executors.newFixedThreadPool(4);
+
+        for (Ordering ordering : Ordering.values()) {
+            int[] last = {
+                    -1
+            };
+            int[] outOfOrder = {
+                    0
+            };
+
+            ParallelDecoder<TestPacket> decoder = new ParallelDecoder<>(
+                io, workers, ordering,
+                (result) -> {
+                    TestPacket packet = new TestPacket();
+                    try {
+                        packet.deserialize(result.extendedId, result.payloadBuffer);
+                    } catch (IOException e) {
+                        throw new RuntimeException(e);
+                    }
+                    return packet;
+                },
+                (packet) -> {
+                    if (packet.testNumber <= last[0]) outOfOrder[0]++;
+                    last[0] = packet.testNumber;
+                },
+                64
+            );
+
+            // Feed it in awkward chunks.
+            for (int offset = 0; offset < bytes.length; offset += 1000) {
+                decoder.feed(bytes, offset, Math.min(1000, bytes.length - offset));
+            }
+            decoder.awaitDelivery();
+
+            FastLogger.logStatic("%s: framed=%d, dropped=%d, last=%d, out of order=%d", ordering, decoder.getFramed(), decoder.getDropped(), last[0], outOfOrder[0]);
+        }
+
+        // A frame relaying another frame as its payload, with a corrupt body CRC. Only
+        // the outer frame may be considered, never the inner one.
+        ByteArrayOutputStream inner = new ByteArrayOutputStream();
+        io.serialize(99, "inner", new byte[16], 0, inner);
+        ByteBuffer outer = ByteBuffer.allocate(PacketIO.frameMaxLength);
+        io.serialize(1, null, ByteBuffer.wrap(inner.toByteArray()), 0, outer);
+        int bodyCrcOffset = outer.position() - inner.size() - 1;
+        outer.put(bodyCrcOffset, (byte) ~outer.get(bodyCrcOffset));
+        outer.flip();
+
+        List<Integer> delivered = new ArrayList<>();
+        ParallelDecoder<Integer> decoder = new ParallelDecoder<>(io, workers, Ordering.PER_PACKET_ID, (result) -> result.packetId, delivered::add);
+        decoder.feed(outer);
+        decoder.awaitDelivery();
+        FastLogger.logStatic("Relayed frame with a corrupt body: delivered=%s, dropped=%d", delivered, decoder.getDropped());
+
+        workers.shutdown();
+    }
+
+}
@@ -0,0 +1,69 @@
+package co.casterlabs.smt.packeteer;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import co.casterlabs.smt.packeteer.io.BufferPool;
+import co.casterlabs.smt.packeteer.io.PacketIO;
+import co.casterlabs.smt.packeteer.io.PooledBuffer;
+import co.casterlabs.smt.packeteer.io.PooledDeserializationResult;
+import xyz.e3ndr.fastloggingframework.logging.FastLogger;
+
+public class Test_PooledDeserialization {
+    private static PacketIO io = new PacketIO();
+    private static BufferPool pool = new BufferPool();
+
+    public static void main(String[] args) throws IOException {
+        pool.setLeakDetection(true);
+
+        byte[] bytes = getBytes();
+
+        BufferedInputStream in = new BufferedInputStream(new ByteArrayInputStream(bytes));
+        for (int i = 0; i < 5; i++) {
+            try (PooledDeserializationResult result = io.deserialize(in, pool)) {
+                TestPacket test = new TestPacket();
+                test.deserialize(result.getExtendedId(), result.getPayloadBuffer());
+                FastLogger.logStatic("%s -> %d", result, test.testNumber);
+            }
+        }
+
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        PooledDeserializationResult result;
+        while ((result = io.deserialize(buffer, pool)) != null) {
+            FastLogger.logStatic(result);
+
+            if (result.getPacketId() != 0) {
+                result.release();
+            } // Leak the first one on purpose.
+        }
+
+        FastLogger.logStatic("Outstanding buffers: %d, results: %d", pool.getOutstandingBuffers(), pool.getOutstandingResults());
+        for (Throwable leak : pool.getLeaks()) {
+            FastLogger.logException(leak);
+        }
+
+        // Oversized buffers aren't pooled, but are still accounted for.
+        BufferPool oversizedPool = new BufferPool();
+        oversizedPool.setLeakDetection(true);
+        PooledBuffer oversized = oversizedPool.lease(128 * 1024);
+        FastLogger.logStatic("Oversized outstanding: %d", oversizedPool.getOutstandingBuffers());
+        oversized.release();
+        FastLogger.logStatic("Oversized released, outstanding: %d, leaks: %d", oversizedPool.getOutstandingBuffers(), oversizedPool.getLeaks().size());
+    }
+
+    private static byte[] getBytes() throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+
+        for (int i = 0; i < 5; i++) {
+            TestPacket test = new TestPacket();
+            test.testNumber = i;
+            io.serialize(i, "pooled", test.serialize(), i, baos);
+        }
+
+        return baos.toByteArray();
+    }
+
+}
@@ -0,0 +1,90 @@
+package co.casterlabs.smt.packeteer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import co.casterlabs.smt.packeteer.io.PacketIO;
+import co.casterlabs.smt.packeteer.io.PacketIO.DeserializationResult;
+import co.casterlabs.smt.packeteer.transport.PrioritySendScheduler;
+import co.casterlabs.smt.packeteer.transport.PrioritySendScheduler.Priority;
+import xyz.e3ndr.fastloggingframework.logging.FastLogger;
+
+public class Test_PrioritySendScheduler {
+
+    public static void main(String[] args) throws Exception {
+        PacketIO io = new PacketIO();
+        SlowOutputStream link = new SlowOutputStream(); // ~1ms per frame.
+
+        PrioritySendScheduler scheduler = new PrioritySendScheduler(io, link, 64);
+        scheduler.setMaxAge(Priority.NORMAL, 30, TimeUnit.MILLISECONDS);
+
+        // A burst of video that takes the link ~100ms to get through, with audio
+        // trickling in alongside it.
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < 100; i++) {
+            scheduler.send(ReservedPacketIDs.IRB_VIDEO_TYPE, "cam", ByteBuffer.wrap(new byte[4000]), System.currentTimeMillis(), i % 10 != 0);
+            if (i % 10 == 5) {
+                scheduler.send(ReservedPacketIDs.IRB_AUDIO_TYPE, "mic", ByteBuffer.wrap(new byte[100]), System.currentTimeMillis(), true);
+            }
+        }
+        scheduler.close();
+        FastLogger.logStatic(
+            "Took %dms, written=%d, stale drops=%d, overflow drops=%d",
+            System.currentTimeMillis() - start, scheduler.getWrittenFrames(), scheduler.getStaleDrops(), scheduler.getOverflowDrops()
+        );
+
+        ByteBuffer written = ByteBuffer.wrap(link.toByteArray());
+        long maxAudioDelay = 0;
+        int audio = 0, reliableVideo = 0, unreliableVideo = 0;
+        DeserializationResult result;
+        while ((result = io.deserialize(written)) != null) {
+            long delay = link.writtenAt(audio + reliableVideo + unreliableVideo) - result.timestamp;
+            if (result.packetId == ReservedPacketIDs.IRB_AUDIO_TYPE) {
+                audio++;
+                maxAudioDelay = Math.max(maxAudioDelay, delay);
+            } else if (result.flags.get(PacketIO.FLAG_UNRELIABLE)) {
+                unreliableVideo++;
+            } else {
+                reliableVideo++;
+            }
+        }
+        FastLogger.logStatic("Audio: %d (max delay %dms), reliable video: %d, unreliable video: %d", audio, maxAudioDelay, reliableVideo, unreliableVideo);
+
+        try {
+            scheduler.send(1, null, ByteBuffer.allocate(1), 0, false);
+        } catch (IOException e) {
+            FastLogger.logStatic("After close: %s", e.getMessage());
+        }
+    }
+
+    private static class SlowOutputStream extends OutputStream {
+        private final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        private final java.util.List<Long> writes = new java.util.ArrayList<>();
+
+        @Override
+        public void write(int b) throws IOException {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public synchronized void write(byte[] b, int off, int len) throws IOException {
+            try {
+                Thread.sleep(1);
+            } catch (InterruptedException e) {}
+            this.baos.write(b, off, len);
+            this.writes.add(System.currentTimeMillis());
+        }
+
+        synchronized long writtenAt(int frame) {
+            return this.writes.get(frame);
+        }
+
+        synchronized byte[] toByteArray() {
+            return this.baos.toByteArray();
+        }
+    }
+
+}
@@ -0,0 +1,37 @@
+package co.casterlabs.smt.packeteer;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import co.casterlabs.smt.packeteer.io.PacketIO;
+import co.casterlabs.smt.packeteer.io.PacketIO.DeserializationResult;
+import xyz.e3ndr.fastloggingframework.logging.FastLogger;
+
+public class Test_Resync {
+    private static PacketIO io = new PacketIO();
+
+    public static void main(String[] args) throws IOException {
+        byte[] junk = new byte[4 * 1024 * 1024];
+        new Random(0).nextBytes(junk);
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        baos.write(junk);
+        io.serialize(new TestPacket(), baos);
+        byte[] bytes = baos.toByteArray();
+
+        long start = System.nanoTime();
+        DeserializationResult result = io.deserialize(new BufferedInputStream(new ByteArrayInputStream(bytes)));
+        long finish = System.nanoTime();
+        FastLogger.logStatic("(InputStream) Skipped %d bytes of junk in %d us.", result.discardedBytes, (finish - start) / 1000);
+
+        start = System.nanoTime();
+        result = io.deserialize(ByteBuffer.wrap(bytes));
+        finish = System.nanoTime();
+        FastLogger.logStatic("(ByteBuffer) Skipped %d bytes of junk in %d us.", result.discardedBytes, (finish - start) / 1000);
+    }
+
+}
@@ -0,0 +1,48 @@
+package co.casterlabs.smt.packeteer;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import co.casterlabs.smt.packeteer.io.PacketIO;
+import co.casterlabs.smt.packeteer.io.PacketIO.DeserializationResult;
+import co.casterlabs.smt.packeteer.recording.StreamIndex;
+import co.casterlabs.smt.packeteer.recording.StreamRecorder;
+import co.casterlabs.smt.packeteer.recording.StreamReplayer;
+import xyz.e3ndr.fastloggingframework.logging.FastLogger;
+
+public class Test_StreamIndex {
+    private static final int AUDIO = 1;
+    private static final int VIDEO = 2;
+
+    private static PacketIO io = new PacketIO();
+
+    public static void main(String[] args) throws IOException {
+        Path directory = Files.createTempDirectory("smt-index");
+
+        // 60 seconds of 50fps audio, with a video frame every 33ms.
+        try (StreamRecorder recorder = new StreamRecorder(io, directory, 256 * 1024)) {
+            for (long ts = 0; ts < 60_000; ts++) {
+                if (ts % 20 == 0) recorder.record(AUDIO, null, new byte[160], ts);
+                if (ts % 33 == 0) recorder.record(VIDEO, null, new byte[1200], ts);
+            }
+        }
+
+        StreamIndex index = StreamIndex.load(directory);
+        StreamIndex rebuilt = StreamIndex.rebuild(io, directory, StreamIndex.DEFAULT_INTERVAL_MILLIS);
+        FastLogger.logStatic("Index entries: %d, rebuilt: %d", index.size(), rebuilt.size());
+        FastLogger.logStatic("Floor(VIDEO, 42000): %s = %s", index.floor(VIDEO, 42_000), rebuilt.floor(VIDEO, 42_000));
+
+        StreamReplayer replayer = new StreamReplayer(io, directory);
+        DeserializationResult result = replayer.seek(index, VIDEO, 42_000);
+        FastLogger.logStatic("First VIDEO frame after 42000: %s (discarded=%d)", result, result.discardedBytes);
+        FastLogger.logStatic("Followed by: %s", replayer.next());
+
+        result = replayer.seek(index, 30_001);
+        FastLogger.logStatic("First frame after 30001: %s", result);
+
+        FastLogger.logStatic("Missing ID: %s", replayer.seek(index, 3, 0));
+        FastLogger.logStatic("Past the end: %s", replayer.seek(index, VIDEO, 70_000));
+    }
+
+}
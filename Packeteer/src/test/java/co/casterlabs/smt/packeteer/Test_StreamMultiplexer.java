@@ -0,0 +1,120 @@
+package co.casterlabs.smt.packeteer;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import co.casterlabs.smt.packeteer.io.PacketIO;
+import co.casterlabs.smt.packeteer.io.PacketIO.DeserializationResult;
+import co.casterlabs.smt.packeteer.transport.MultiplexedStream;
+import co.casterlabs.smt.packeteer.transport.StreamMultiplexer;
+import xyz.e3ndr.fastloggingframework.logging.FastLogger;
+
+public class Test_StreamMultiplexer {
+    private static PacketIO io = new PacketIO();
+
+    public static void main(String[] args) throws Exception {
+        // Two ends, connected over loopback.
+        ServerSocket server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+        Socket aSocket = new Socket(InetAddress.getLoopbackAddress(), server.getLocalPort());
+        Socket bSocket = server.accept();
+
+        StreamMultiplexer a = new StreamMultiplexer(io, aSocket.getOutputStream(), 64 * 1024, 16);
+        StreamMultiplexer b = new StreamMultiplexer(io, bSocket.getOutputStream(), 64 * 1024, 16);
+        startReader(a, new BufferedInputStream(aSocket.getInputStream()));
+        startReader(b, new BufferedInputStream(bSocket.getInputStream()));
+
+        MultiplexedStream video = a.stream("video");
+        MultiplexedStream audio = a.stream("audio");
+
+        // Nobody is reading video yet, so it should run out of credit...
+        int sent = 0;
+        while (video.send(ReservedPacketIDs.IRB_VIDEO_TYPE, new byte[8000], sent, 100, TimeUnit.MILLISECONDS)) {
+            sent++;
+        }
+        FastLogger.logStatic("Video stalled after %d frames with %d credit left.", sent, video.getCredit());
+
+        // ...whilst audio still flows.
+        audio.send(ReservedPacketIDs.IRB_AUDIO_TYPE, new byte[160], 0);
+        DeserializationResult result = b.stream("audio").take();
+        FastLogger.logStatic("Audio still flows: %s", result);
+
+        // A hostile peer handing out negative credit is rejected, not applied.
+        ByteArrayOutputStream hostile = new ByteArrayOutputStream();
+        io.serialize(ReservedPacketIDs.IRB_STREAM_CREDIT_TYPE, "audio", ByteBuffer.allocate(4).putInt(Integer.MIN_VALUE).array(), 0, hostile);
+        long audioCredit = audio.getCredit();
+        try {
+            a.receive(io.deserialize(new ByteArrayInputStream(hostile.toByteArray())));
+        } catch (IOException e) {
+            FastLogger.logStatic("Negative credit: %s (credit unchanged: %b)", e.getMessage(), audio.getCredit() == audioCredit);
+        }
+
+        // A payload that can never be sent is rejected before taking any credit.
+        try {
+            audio.send(ReservedPacketIDs.IRB_AUDIO_TYPE, new byte[PacketIO.bodyMaxLength + 1], 0);
+        } catch (IOException e) {
+            FastLogger.logStatic("Oversized payload: %s (credit unchanged: %b)", e.getMessage(), audio.getCredit() == audioCredit);
+        }
+
+        // Draining video on the other end hands the credit back.
+        MultiplexedStream remoteVideo = b.stream("video");
+        FastLogger.logStatic("Remote video queued: %d bytes", remoteVideo.getQueuedBytes());
+        for (int i = 0; i < sent; i++) {
+            remoteVideo.take();
+        }
+        Thread.sleep(100);
+        FastLogger.logStatic("Video credit after draining: %d", video.getCredit());
+
+        video.close();
+        FastLogger.logStatic("Remote video after close: %s", remoteVideo.take());
+        remoteVideo.close();
+        Thread.sleep(100);
+        FastLogger.logStatic("Streams: a=%d, b=%d", a.getStreams().size(), b.getStreams().size());
+
+        // With the smallest window, a full payload must still go through after a
+        // smaller one has been drained.
+        Socket cSocket = new Socket(InetAddress.getLoopbackAddress(), server.getLocalPort());
+        Socket dSocket = server.accept();
+        StreamMultiplexer c = new StreamMultiplexer(io, cSocket.getOutputStream(), StreamMultiplexer.MIN_INITIAL_WINDOW, 16);
+        StreamMultiplexer d = new StreamMultiplexer(io, dSocket.getOutputStream(), StreamMultiplexer.MIN_INITIAL_WINDOW, 16);
+        startReader(c, new BufferedInputStream(cSocket.getInputStream()));
+        startReader(d, new BufferedInputStream(dSocket.getInputStream()));
+
+        MultiplexedStream small = c.stream("small");
+        small.send(ReservedPacketIDs.IRB_VIDEO_TYPE, new byte[10000], 0);
+        MultiplexedStream remoteSmall = d.stream("small");
+        Thread drainer = new Thread(() -> {
+            try {
+                while (remoteSmall.take() != null);
+            } catch (Exception e) {}
+        });
+        drainer.setDaemon(true);
+        drainer.start();
+
+        int full = 0;
+        while (full < 10 && small.send(ReservedPacketIDs.IRB_VIDEO_TYPE, new byte[PacketIO.bodyMaxLength], full, 1, TimeUnit.SECONDS)) {
+            full++;
+        }
+        FastLogger.logStatic("Minimum window: sent %d/10 full payloads", full);
+        System.exit(0);
+    }
+
+    private static void startReader(StreamMultiplexer mux, BufferedInputStream in) {
+        Thread thread = new Thread(() -> {
+            try {
+                while (true) {
+                    mux.receive(io.deserialize(in));
+                }
+            } catch (IOException e) {}
+        });
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+}
@@ -0,0 +1,52 @@
+package co.casterlabs.smt.packeteer;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import co.casterlabs.smt.packeteer.io.PacketIO;
+import co.casterlabs.smt.packeteer.recording.StreamRecorder;
+import co.casterlabs.smt.packeteer.recording.StreamReplayer;
+import xyz.e3ndr.fastloggingframework.logging.FastLogger;
+
+public class Test_StreamRecording {
+    private static PacketIO io = new PacketIO();
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        Path directory = Files.createTempDirectory("smt-recording");
+
+        try (StreamRecorder recorder = new StreamRecorder(io, directory, 64 * 1024)) {
+            for (int i = 0; i < 500; i++) {
+                byte[] payload = new byte[1000];
+                payload[0] = (byte) i;
+                recorder.record(i, "video", payload, i * 10);
+            }
+            FastLogger.logStatic("Recorded %d frames (%d bytes) into %d segments.", recorder.getRecordedFrames(), recorder.getRecordedBytes(), recorder.getSegmentIndex() + 1);
+        }
+
+        StreamReplayer replayer = new StreamReplayer(io, directory);
+        int[] expected = {
+                0
+        };
+        long replayed = replayer.replay((result) -> {
+            if (result.packetId != expected[0] || result.payloadBuffer.get(0) != (byte) expected[0]) {
+                throw new IllegalStateException("Out of order or corrupt: " + result);
+            }
+            expected[0]++;
+        });
+        FastLogger.logStatic("Replayed %d frames from %d segments.", replayed, replayer.getSegmentCount());
+
+        // 50 frames, 10ms apart, at 10x speed should take ~49ms.
+        Path pacedDirectory = Files.createTempDirectory("smt-recording");
+        try (StreamRecorder recorder = new StreamRecorder(io, pacedDirectory, 64 * 1024)) {
+            for (int i = 0; i < 50; i++) {
+                recorder.record(i, null, new byte[16], i * 10);
+            }
+        }
+
+        long start = System.nanoTime();
+        new StreamReplayer(io, pacedDirectory).replay((result) -> {}, 10);
+        FastLogger.logStatic("Paced replay took %dms.", (System.nanoTime() - start) / 1_000_000);
+    }
+
+}
@@ -0,0 +1,308 @@
+/*
+ * Copyright 2023 Casterlabs
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+package co.casterlabs.smt.packeteer.processor;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic;
+
+/**
+ * Generates a {@code PacketCodec} for every class marked with
+ * {@code @GenerateCodec}. The annotations are referred to by name, so that
+ * this module doesn't need to depend on Packeteer itself.
+ */
+@SupportedAnnotationTypes(PacketCodecProcessor.GENERATE_CODEC)
+public class PacketCodecProcessor extends AbstractProcessor {
+    static final String GENERATE_CODEC = "co.casterlabs.smt.packeteer.codegen.GenerateCodec";
+    static final String PACKET_FIELD = "co.casterlabs.smt.packeteer.codegen.PacketField";
+    static final String PACKET = "co.casterlabs.smt.packeteer.Packet";
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        TypeElement generateCodec = this.processingEnv.getElementUtils().getTypeElement(GENERATE_CODEC);
+        if (generateCodec == null) return false;
+
+        TypeElement packet = this.processingEnv.getElementUtils().getTypeElement(PACKET);
+
+        for (Element element : roundEnv.getElementsAnnotatedWith(generateCodec)) {
+            if (element.getKind() != ElementKind.CLASS) {
+                this.error(element, "@GenerateCodec can only be used on classes.");
+                continue;
+            }
+
+            TypeElement type = (TypeElement) element;
+            if (packet != null && !this.isSubtype(type, packet)) {
+                // Otherwise the generated codec fails to compile, with a far less helpful error.
+                this.error(type, "@GenerateCodec classes must extend CodecPacket (or Packet).");
+                continue;
+            }
+
+            List<CodecField> fields = this.collectFields(type);
+            if (fields == null) continue; // Errors have already been reported.
+
+            try {
+                this.generate(type, fields);
+            } catch (IOException e) {
+                this.error(type, "Unable to write codec: " + e);
+            }
+        }
+
+        return true;
+    }
+
+    private boolean isSubtype(TypeElement type, TypeElement parent) {
+        Types types = this.processingEnv.getTypeUtils();
+        return types.isSubtype(types.erasure(type.asType()), types.erasure(parent.asType()));
+    }
+
+    /**
+     * @return the annotated fields in declaration order, or null if any of them
+     *         are invalid.
+     */
+    private List<CodecField> collectFields(TypeElement type) {
+        List<CodecField> fields = new ArrayList<>();
+        boolean valid = true;
+
+        if (type.getModifiers().contains(Modifier.PRIVATE)) {
+            this.error(type, "@GenerateCodec classes cannot be private.");
+            valid = false;
+        }
+
+        for (VariableElement field : ElementFilter.fieldsIn(type.getEnclosedElements())) {
+            if (!hasAnnotation(field, PACKET_FIELD)) continue;
+
+            Set<Modifier> modifiers = field.getModifiers();
+            if (modifiers.contains(Modifier.PRIVATE) || modifiers.contains(Modifier.STATIC) || modifiers.contains(Modifier.FINAL)) {
+                this.error(field, "@PacketField fields cannot be private, static or final.");
+                valid = false;
+                continue;
+            }
+
+            FieldKind kind = FieldKind.of(field.asType());
+            if (kind == null) {
+                this.error(field, "@PacketField doesn't support " + field.asType() + ", only primitives, String and byte[].");
+                valid = false;
+                continue;
+            }
+
+            fields.add(new CodecField(field.getSimpleName().toString(), kind));
+        }
+
+        return valid ? fields : null;
+    }
+
+    private void generate(TypeElement type, List<CodecField> fields) throws IOException {
+        String packageName = this.processingEnv.getElementUtils().getPackageOf(type).getQualifiedName().toString();
+        String typeName = type.getQualifiedName().toString();
+        String codecName = codecNameOf(type);
+
+        int fixedSize = 0;
+        for (CodecField field : fields) {
+            if (field.kind.size > 0) {
+                field.offset = fixedSize;
+                fixedSize += field.kind.size;
+            }
+        }
+
+        StringBuilder sizeOf = new StringBuilder();
+        StringBuilder write = new StringBuilder();
+        StringBuilder read = new StringBuilder();
+
+        for (CodecField field : fields) {
+            if (field.kind.size > 0) {
+                write.append(String.format("        %s;\n", field.kind.write(field.name, field.offset)));
+                read.append(String.format("        %s;\n", field.kind.read(field.name, field.offset)));
+            }
+        }
+
+        write.append("        out.position(base + FIXED_SIZE);\n");
+        read.append("        in.position(base + FIXED_SIZE);\n");
+
+        for (CodecField field : fields) {
+            if (field.kind.size == 0) {
+                sizeOf.append(String.format("        size += CodecUtil.sizeOf(packet.%s);\n", field.name));
+                write.append(String.format("        %s;\n", field.kind.write(field.name, 0)));
+                read.append(String.format("        %s;\n", field.kind.read(field.name, 0)));
+            }
+        }
+
+        StringBuilder source = new StringBuilder();
+        source.append("// Generated by Packeteer-Processor from ").append(typeName).append(", do not edit.\n");
+        if (!packageName.isEmpty()) {
+            source.append("package ").append(packageName).append(";\n\n");
+        }
+        source.append("import java.nio.BufferOverflowException;\n");
+        source.append("import java.nio.BufferUnderflowException;\n");
+        source.append("import java.nio.ByteBuffer;\n\n");
+        source.append("import co.casterlabs.smt.packeteer.codegen.CodecUtil;\n");
+        source.append("import co.casterlabs.smt.packeteer.codegen.PacketCodec;\n\n");
+
+        source.append("public final class ").append(codecName).append(" implements PacketCodec<").append(typeName).append("> {\n");
+        source.append("    public static final ").append(codecName).append(" INSTANCE = new ").append(codecName).append("();\n\n");
+        source.append("    /**\n     * The size of the fixed-width fields, which come first.\n     */\n");
+        source.append("    public static final int FIXED_SIZE = ").append(fixedSize).append(";\n\n");
+        source.append("    private ").append(codecName).append("() {}\n\n");
+
+        source.append("    @Override\n");
+        source.append("    public int sizeOf(").append(typeName).append(" packet) {\n");
+        source.append("        int size = FIXED_SIZE;\n");
+        source.append(sizeOf);
+        source.append("        return size;\n");
+        source.append("    }\n\n");
+
+        source.append("    @Override\n");
+        source.append("    public void write(").append(typeName).append(" packet, ByteBuffer out) {\n");
+        source.append("        int base = out.position();\n");
+        source.append("        if (out.remaining() < FIXED_SIZE) throw new BufferOverflowException();\n\n");
+        source.append(write);
+        source.append("    }\n\n");
+
+        source.append("    @Override\n");
+        source.append("    public void read(").append(typeName).append(" packet, ByteBuffer in) {\n");
+        source.append("        int base = in.position();\n");
+        source.append("        if (in.remaining() < FIXED_SIZE) throw new BufferUnderflowException();\n\n");
+        source.append(read);
+        source.append("    }\n\n");
+
+        source.append("}\n");
+
+        String qualifiedCodecName = packageName.isEmpty() ? codecName : packageName + '.' + codecName;
+        try (Writer writer = this.processingEnv.getFiler().createSourceFile(qualifiedCodecName, type).openWriter()) {
+            writer.write(source.toString());
+        }
+    }
+
+    /**
+     * Nested classes are flattened, e.g Outer.Inner becomes Outer_InnerCodec.
+     */
+    private static String codecNameOf(TypeElement type) {
+        StringBuilder name = new StringBuilder(type.getSimpleName());
+        Element enclosing = type.getEnclosingElement();
+        while (!(enclosing instanceof PackageElement)) {
+            name.insert(0, '_').insert(0, enclosing.getSimpleName());
+            enclosing = enclosing.getEnclosingElement();
+        }
+        return name.append("Codec").toString();
+    }
+
+    private static boolean hasAnnotation(Element element, String annotation) {
+        for (AnnotationMirror mirror : element.getAnnotationMirrors()) {
+            TypeElement annotationType = (TypeElement) mirror.getAnnotationType().asElement();
+            if (annotationType.getQualifiedName().contentEquals(annotation)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void error(Element element, String message) {
+        this.processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+    }
+
+    private static class CodecField {
+        private final String name;
+        private final FieldKind kind;
+        private int offset;
+
+        private CodecField(String name, FieldKind kind) {
+            this.name = name;
+            this.kind = kind;
+        }
+    }
+
+    private enum FieldKind {
+        BOOLEAN(1, "out.put(base + %2$d, (byte) (packet.%1$s ? 1 : 0))", "packet.%1$s = in.get(base + %2$d) != 0"),
+        BYTE(1, "out.put(base + %2$d, packet.%1$s)", "packet.%1$s = in.get(base + %2$d)"),
+        SHORT(2, "out.putShort(base + %2$d, packet.%1$s)", "packet.%1$s = in.getShort(base + %2$d)"),
+        CHAR(2, "out.putChar(base + %2$d, packet.%1$s)", "packet.%1$s = in.getChar(base + %2$d)"),
+        INT(4, "out.putInt(base + %2$d, packet.%1$s)", "packet.%1$s = in.getInt(base + %2$d)"),
+        LONG(8, "out.putLong(base + %2$d, packet.%1$s)", "packet.%1$s = in.getLong(base + %2$d)"),
+        FLOAT(4, "out.putFloat(base + %2$d, packet.%1$s)", "packet.%1$s = in.getFloat(base + %2$d)"),
+        DOUBLE(8, "out.putDouble(base + %2$d, packet.%1$s)", "packet.%1$s = in.getDouble(base + %2$d)"),
+
+        // Variable width, these go after the fixed-width fields.
+        STRING(0, "CodecUtil.putString(out, packet.%1$s)", "packet.%1$s = CodecUtil.getString(in)"),
+        BYTES(0, "CodecUtil.putBytes(out, packet.%1$s)", "packet.%1$s = CodecUtil.getBytes(in)"),
+        ;
+
+        private final int size;
+        private final String writeFormat;
+        private final String readFormat;
+
+        private FieldKind(int size, String writeFormat, String readFormat) {
+            this.size = size;
+            this.writeFormat = writeFormat;
+            this.readFormat = readFormat;
+        }
+
+        String write(String field, int offset) {
+            return String.format(this.writeFormat, field, offset);
+        }
+
+        String read(String field, int offset) {
+            return String.format(this.readFormat, field, offset);
+        }
+
+        static FieldKind of(TypeMirror type) {
+            switch (type.getKind()) {
+                case BOOLEAN:
+                    return BOOLEAN;
+                case BYTE:
+                    return BYTE;
+                case SHORT:
+                    return SHORT;
+                case CHAR:
+                    return CHAR;
+                case INT:
+                    return INT;
+                case LONG:
+                    return LONG;
+                case FLOAT:
+                    return FLOAT;
+                case DOUBLE:
+                    return DOUBLE;
+                case ARRAY:
+                    return ((ArrayType) type).getComponentType().getKind() == TypeKind.BYTE ? BYTES : null;
+                case DECLARED:
+                    return type.toString().equals("java.lang.String") ? STRING : null;
+                default:
+                    return null;
+            }
+        }
+    }
+
+}